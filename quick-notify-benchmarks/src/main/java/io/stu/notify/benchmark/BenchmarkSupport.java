@@ -0,0 +1,87 @@
+package io.stu.notify.benchmark;
+
+import io.stu.notify.model.AckRetryPolicy;
+import io.stu.notify.model.MessageTypeRegistry;
+import io.stu.notify.model.NotifyMessage;
+import io.stu.notify.repository.NotifyMessageLog;
+import io.stu.notify.stomp.StompWebSocketHandler;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.lang.reflect.Field;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 基准测试公共方法：构造消息、不依赖 Spring 容器地组装 {@link StompWebSocketHandler}
+ */
+final class BenchmarkSupport {
+
+    static final String ORDER_TYPE = "BENCH_ORDER";
+
+    // 测量期间预置的 ACK 记录不会到期，推进时间轮只涉及空槽位
+    static final AckRetryPolicy IDLE_RETRY_POLICY = AckRetryPolicy.fixed(3_600_000, 7_200_000, 12);
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * 与业务消息大小相近的数据（约 300 字节 JSON）
+     */
+    static Map<String, Object> orderData(int seq) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("orderId", "ORD-" + seq);
+        data.put("status", "SHIPPED");
+        data.put("amount", 12_345L + seq);
+        data.put("currency", "CNY");
+        data.put("title", "您的订单已发货，预计 2 天内送达");
+        data.put("sku", "SKU-0000" + (seq % 100));
+        data.put("warehouse", "SH-01");
+        data.put("carrier", "SF");
+        data.put("trackingNo", "SF" + (1_000_000_000L + seq));
+        return data;
+    }
+
+    static NotifyMessage message(String id, String receiver, int seq) {
+        return NotifyMessage.builder()
+                .id(id)
+                .type(ORDER_TYPE)
+                .receiver(receiver)
+                .data(orderData(seq))
+                .created(System.currentTimeMillis())
+                .build();
+    }
+
+    static NotifyMessageLog messageLog(String id, String receiver, int seq, long created) {
+        NotifyMessageLog log = new NotifyMessageLog(id, ORDER_TYPE, receiver, orderData(seq));
+        log.setCreated(created);
+        return log;
+    }
+
+    /**
+     * 单节点模式的处理器：消息发往空通道，ACK 记录保存在本地时间轮。
+     * 时间轮线程被停止，由基准方法显式推进。
+     */
+    static StompWebSocketHandler localAckHandler() {
+        SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> true);
+        template.setMessageConverter(new MappingJackson2MessageConverter());
+        MessageTypeRegistry.registerRetryPolicy(ORDER_TYPE, IDLE_RETRY_POLICY);
+        StompWebSocketHandler handler = new StompWebSocketHandler();
+        handler.setSimpMessagingTemplate(template);
+        setField(handler, "enableLocalAck", true);
+        handler.init();
+        // 停止后台时间轮线程，时间轮本身保留
+        handler.destroy();
+        return handler;
+    }
+
+    static void setField(Object target, String name, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("无法设置字段 " + name, e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package io.stu.notify.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.stu.notify.repository.JdbcNotifyRepository;
+import io.stu.notify.repository.NotifyMessageLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link JdbcNotifyRepository} 在内嵌 H2 上的读写开销。
+ * <p>
+ * 表中预置 rows 条消息，平均分布在 1000 个接收者上（与 schema.sql 的索引一致）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class JdbcNotifyRepositoryBenchmark {
+
+    private static final int USERS = 1000;
+    private static final int PAGE_SIZE = 20;
+    private static final int SEED_BATCH = 1000;
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcNotifyRepository repository;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong nextId = new AtomicLong();
+    private long baseCreated;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:bench_" + rows + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "", true);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        repository = new JdbcNotifyRepository(new JdbcTemplate(dataSource));
+
+        baseCreated = System.currentTimeMillis() - rows;
+        List<NotifyMessageLog> batch = new ArrayList<>(SEED_BATCH);
+        for (int i = 0; i < rows; i++) {
+            batch.add(BenchmarkSupport.messageLog(seedId(i), user(i % USERS), i, baseCreated + i));
+            if (batch.size() == SEED_BATCH) {
+                repository.saveAll(batch);
+                batch.clear();
+            }
+        }
+        repository.saveAll(batch);
+        nextId.set(rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        new JdbcTemplate(dataSource).execute("DROP ALL OBJECTS");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public void save() {
+        long seq = nextId.getAndIncrement();
+        repository.save(BenchmarkSupport.messageLog("new-" + seq, user((int) (seq % USERS)), (int) seq,
+                System.currentTimeMillis()));
+    }
+
+    /**
+     * 接收者最近一页消息
+     */
+    @Benchmark
+    public List<NotifyMessageLog> findByReceiverBeforeFirstPage() {
+        return repository.findByReceiverBefore(user(ThreadLocalRandom.current().nextInt(USERS)),
+                Long.MAX_VALUE, 0, PAGE_SIZE);
+    }
+
+    /**
+     * 历史接口：查一页并序列化为 JSON，data 先解码再编码
+     */
+    @Benchmark
+    public byte[] historyPageJson() throws Exception {
+        return objectMapper.writeValueAsBytes(repository.findByReceiverBefore(
+                user(ThreadLocalRandom.current().nextInt(USERS)), Long.MAX_VALUE, 0, PAGE_SIZE)
+                .stream().map(NotifyMessageLog::toNotifyMessage).toList());
+    }
+
+    /**
+     * 历史接口：查一页并序列化为 JSON，data 为 JSON 原文直接写出
+     */
+    @Benchmark
+    public byte[] historyPageRawJson() throws Exception {
+        return objectMapper.writeValueAsBytes(repository.findRawByReceiverBefore(
+                user(ThreadLocalRandom.current().nextInt(USERS)), Long.MAX_VALUE, 0, PAGE_SIZE)
+                .stream().map(NotifyMessageLog::toNotifyMessage).toList());
+    }
+
+    /**
+     * 接收者中间位置的一页消息
+     */
+    @Benchmark
+    public List<NotifyMessageLog> findByReceiverBeforeMiddle() {
+        return repository.findByReceiverBefore(user(ThreadLocalRandom.current().nextInt(USERS)),
+                baseCreated + rows / 2, 0, PAGE_SIZE);
+    }
+
+    /**
+     * 一个接收者的 10 条消息标记已读
+     */
+    @Benchmark
+    public int markAsRead() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int userIndex = random.nextInt(USERS);
+        int perUser = rows / USERS;
+        List<String> ids = new ArrayList<>(10);
+        for (int i = 0; i < 10; i++) {
+            ids.add(seedId(random.nextInt(perUser) * USERS + userIndex));
+        }
+        return repository.markAsReadCount(user(userIndex), ids);
+    }
+
+    private static String seedId(int i) {
+        return "seed-" + i;
+    }
+
+    private static String user(int i) {
+        return "user-" + i;
+    }
+}
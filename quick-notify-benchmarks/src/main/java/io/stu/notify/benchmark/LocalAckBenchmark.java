@@ -0,0 +1,73 @@
+package io.stu.notify.benchmark;
+
+import io.stu.notify.model.NotifyMessage;
+import io.stu.notify.stomp.EncodedMessage;
+import io.stu.notify.stomp.StompWebSocketHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单节点模式下 ACK 记录的入队、确认和时间轮推进开销，已有 pending 条待确认记录。
+ * <p>
+ * 预置记录使用 1 小时的重试间隔，测量期间不会到期，推进只涉及当前 tick 的槽位。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LocalAckBenchmark {
+
+    private static final int USERS = 10_000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int pending;
+
+    private StompWebSocketHandler handler;
+    private NotifyMessage message;
+    private EncodedMessage encoded;
+    private final AtomicLong nextSession = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        handler = BenchmarkSupport.localAckHandler();
+        message = BenchmarkSupport.message("msg-bench", "user-bench", 1);
+        encoded = handler.encode(message);
+        for (int i = 0; i < pending; i++) {
+            NotifyMessage seeded = BenchmarkSupport.message("seed-" + i, "user-" + (i % USERS), i);
+            handler.addAckMessageRecord(seeded, encoded, "session-" + (i % USERS));
+        }
+    }
+
+    /**
+     * 新增一条记录并立即确认，待确认记录数保持不变
+     */
+    @Benchmark
+    public boolean addAndAck() {
+        String sessionId = "bench-" + nextSession.getAndIncrement();
+        handler.addAckMessageRecord(message, encoded, sessionId);
+        return handler.acknowledge(message.getReceiver(), message.getId(), sessionId);
+    }
+
+    /**
+     * 时间轮推进一次（无到期记录）
+     */
+    @Benchmark
+    public void retryTick() {
+        handler.retryLocalCache();
+    }
+}
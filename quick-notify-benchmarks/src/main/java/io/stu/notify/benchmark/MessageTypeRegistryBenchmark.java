@@ -0,0 +1,54 @@
+package io.stu.notify.benchmark;
+
+import io.stu.notify.model.MessageTypeRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MessageTypeRegistry#checkDataType} 的开销，每次 saveAndPublish 都会调用
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageTypeRegistryBenchmark {
+
+    private Map<String, Object> orderData;
+    private MessageTypeRegistry.NotifyUpdateRsp updateData;
+
+    @Setup
+    public void setup() {
+        MessageTypeRegistry.register(BenchmarkSupport.ORDER_TYPE, Map.class);
+        orderData = BenchmarkSupport.orderData(1);
+        updateData = new MessageTypeRegistry.NotifyUpdateRsp(List.of("a", "b", "c"));
+    }
+
+    @Benchmark
+    public void registeredMapType() {
+        MessageTypeRegistry.checkDataType(BenchmarkSupport.ORDER_TYPE, orderData);
+    }
+
+    @Benchmark
+    public void builtInRecordType() {
+        MessageTypeRegistry.checkDataType(MessageTypeRegistry.NOTIFY_VIEWED, updateData);
+    }
+
+    @Benchmark
+    public void stringType() {
+        MessageTypeRegistry.checkDataType(MessageTypeRegistry.STRING_MSG, "hello");
+    }
+}
@@ -0,0 +1,48 @@
+package io.stu.notify.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.stu.notify.model.NotifyMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NotifyMessage} 的 Jackson 编解码，即每次推送和客户端解析的消息体
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NotifyMessageCodecBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private NotifyMessage message;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws Exception {
+        message = BenchmarkSupport.message("msg-1", "user-1", 1);
+        encoded = objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public NotifyMessage decode() throws Exception {
+        return objectMapper.readValue(encoded, NotifyMessage.class);
+    }
+}
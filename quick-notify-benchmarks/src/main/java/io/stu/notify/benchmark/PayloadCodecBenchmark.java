@@ -0,0 +1,74 @@
+package io.stu.notify.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 仓储 data 列的编解码：按 Object.class 读成 JSON 树（旧实现），
+ * 与按注册数据类使用缓存的 ObjectReader / ObjectWriter（当前实现）对比
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadCodecBenchmark {
+
+    /**
+     * 与 {@link BenchmarkSupport#orderData(int)} 字段一致的数据类
+     */
+    public record Order(String orderId, String status, long amount, String currency, String title,
+                        String sku, String warehouse, String carrier, String trackingNo) {
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ObjectReader orderReader;
+    private ObjectWriter orderWriter;
+    private Map<String, Object> tree;
+    private Order order;
+    private String json;
+
+    @Setup
+    public void setup() throws Exception {
+        orderReader = objectMapper.readerFor(Order.class);
+        orderWriter = objectMapper.writerFor(Order.class);
+        tree = BenchmarkSupport.orderData(1);
+        json = objectMapper.writeValueAsString(tree);
+        order = orderReader.readValue(json);
+    }
+
+    @Benchmark
+    public Object readUntyped() throws Exception {
+        return objectMapper.readValue(json, Object.class);
+    }
+
+    @Benchmark
+    public Order readTyped() throws Exception {
+        return orderReader.readValue(json);
+    }
+
+    @Benchmark
+    public String writeUntyped() throws Exception {
+        return objectMapper.writeValueAsString(tree);
+    }
+
+    @Benchmark
+    public String writeTyped() throws Exception {
+        return orderWriter.writeValueAsString(order);
+    }
+}
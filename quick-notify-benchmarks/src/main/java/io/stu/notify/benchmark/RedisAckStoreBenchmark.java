@@ -0,0 +1,113 @@
+package io.stu.notify.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.stu.notify.model.AckRetryPolicy;
+import io.stu.notify.model.NotifyMessage;
+import io.stu.notify.stomp.EncodedMessage;
+import io.stu.notify.stomp.PendingAck;
+import io.stu.notify.stomp.RedisAckStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.util.MimeTypeUtils;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 集群模式下 {@link RedisAckStore} 的脚本调用开销，已有 pending 条待确认记录。
+ * <p>
+ * 每次运行启动一个本地 redis-server 进程（embedded-redis），结束后停止，不依赖外部环境。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisAckStoreBenchmark {
+
+    // 测量期间预置记录不会到期
+    private static final AckRetryPolicy POLICY = AckRetryPolicy.fixed(3_600_000, 7_200_000, 12);
+
+    @Param({"10000", "100000"})
+    public int pending;
+
+    private RedisServer server;
+    private RedissonClient redisson;
+    private RedisAckStore store;
+    private EncodedMessage encoded;
+    private final AtomicLong nextSession = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        int port = freePort();
+        server = new RedisServer(port);
+        server.start();
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + port);
+        redisson = Redisson.create(config);
+        store = new RedisAckStore(redisson, "bench", m -> POLICY);
+
+        NotifyMessage message = BenchmarkSupport.message("seed", "user", 1);
+        encoded = new EncodedMessage(new ObjectMapper().writeValueAsBytes(message), MimeTypeUtils.APPLICATION_JSON);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < pending; i++) {
+            store.add(pendingAck("seed-" + i, "user-" + i, "session-" + i, now), now);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        redisson.shutdown();
+        server.stop();
+    }
+
+    /**
+     * 新增一条记录并立即确认（两次脚本调用）
+     */
+    @Benchmark
+    public RedisAckStore.Acked addAndAck() {
+        long now = System.currentTimeMillis();
+        String sessionId = "bench-" + nextSession.getAndIncrement();
+        PendingAck ack = pendingAck("msg-bench", "user-bench", sessionId, now);
+        store.add(ack, now);
+        return store.ack(ack.getAckKey(), "user-bench");
+    }
+
+    /**
+     * 轮询到期记录（无到期记录），即每个节点每 stomp.ack.redis.poll-ms 的固定开销
+     */
+    @Benchmark
+    public List<PendingAck> pollDueIdle() {
+        return store.pollDue(System.currentTimeMillis(), 500);
+    }
+
+    private PendingAck pendingAck(String messageId, String receiver, String sessionId, long now) {
+        NotifyMessage message = BenchmarkSupport.message(messageId, receiver, 1);
+        return new PendingAck(messageId + "::" + sessionId, sessionId, message, encoded, POLICY, now);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
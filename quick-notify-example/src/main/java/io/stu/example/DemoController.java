@@ -14,6 +14,8 @@ import org.springframework.messaging.support.GenericMessage;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 /**
  * 测试控制器
  */
@@ -70,7 +72,7 @@ public class DemoController {
         msg.setLastModified(System.currentTimeMillis());
 
         if (receiver == null || receiver.isBlank()) {
-            webSocketHandler.broadcastMessage(msg.toNotifyMessage());
+            notifyManager.broadcast(msg);
         } else {
             notifyManager.saveAndPublish(msg);
         }
@@ -89,4 +91,16 @@ public class DemoController {
         notifyManager.saveAndPublish(msg);
         return "Message pushed successfully";
     }
+
+    @ResponseBody
+    @PostMapping("/vh-stomp-wsend/cluster/notify_all")
+    public String notifyAll(@RequestParam("receivers") List<String> receivers,
+                            @RequestBody String message) {
+        NotifyMessageLog msg = new NotifyMessageLog();
+        msg.setData(message);
+        msg.setType(MessageTypeRegistry.STRING_MSG);
+        msg.setViewed(false);
+        int count = notifyManager.saveAndPublishAll(msg, receivers);
+        return "Message pushed successfully, count " + count;
+    }
 }
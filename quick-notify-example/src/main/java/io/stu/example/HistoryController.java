@@ -1,26 +1,43 @@
 package io.stu.example;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.stu.notify.NotifyManager;
 import io.stu.notify.model.NotifyMessage;
 import io.stu.notify.repository.NotifyMessageLog;
+import io.stu.notify.repository.NotifyPage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.stream.Collectors;
 
 /**
- * 历史消息接口
+ * 历史消息接口。
+ * data 直接使用数据库中的 JSON 原文写入响应，不做解码和再编码。
  */
 @Slf4j
 @RestController
 @RequestMapping("/api/notify")
 public class HistoryController {
 
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int EXPORT_FLUSH_ROWS = 500;
+
     @Autowired
     private NotifyManager notifyManager;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @GetMapping("/history")
     public WebResponse<List<NotifyMessage>> history(
             @RequestParam(name = "created", required = false) Long created,
@@ -33,7 +50,7 @@ public class HistoryController {
 
         // 使用当前用户作为 receiver（实际项目中从认证上下文获取）
         String userId = getCurrentUserId();
-        List<NotifyMessageLog> logs = notifyManager.getHistoryNotifyByCreated(userId, created, pageNum * pageSize, pageSize);
+        List<NotifyMessageLog> logs = notifyManager.getRawHistoryNotifyByCreated(userId, created, pageNum * pageSize, pageSize);
 
         List<NotifyMessage> messages = logs.stream()
                 .map(NotifyMessageLog::toNotifyMessage)
@@ -42,11 +59,70 @@ public class HistoryController {
         return WebResponse.success(messages);
     }
 
+    /**
+     * 游标分页：首页不传 cursor，后续传上一页返回的 next_cursor
+     */
+    @GetMapping("/history/cursor")
+    public WebResponse<HistoryPage> historyByCursor(
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "page_size", defaultValue = "20") int pageSize) {
+
+        String userId = getCurrentUserId();
+        NotifyPage page = notifyManager.getRawHistoryNotifyByCursor(userId, cursor, pageSize);
+
+        List<NotifyMessage> messages = page.items().stream()
+                .map(NotifyMessageLog::toNotifyMessage)
+                .collect(Collectors.toList());
+
+        return WebResponse.success(new HistoryPage(messages, page.nextCursor()));
+    }
+
+    /**
+     * 导出 [from, to) 内的历史消息，NDJSON 格式（每行一条消息），边查边写，内存占用与导出条数无关
+     */
+    @GetMapping(value = "/export", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(name = "from", defaultValue = "0") long from,
+            @RequestParam(name = "to", required = false) Long to) {
+
+        String userId = getCurrentUserId();
+        long toCreated = to != null ? to : System.currentTimeMillis();
+        ObjectWriter writer = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        StreamingResponseBody body = out -> {
+            long[] written = {0};
+            long count = notifyManager.scanRawHistoryNotify(userId, from, toCreated, msg -> {
+                try {
+                    writer.writeValue(out, msg.toNotifyMessage());
+                    out.write('\n');
+                    // 定期刷出，客户端可以边收边处理
+                    if (++written[0] % EXPORT_FLUSH_ROWS == 0) {
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // 客户端断开时抛出，中止数据库扫描
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+            log.debug("[EXPORT] 导出完成, userId {}, from {}, to {}, count {}", userId, from, toCreated, count);
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    @GetMapping("/unread")
+    public WebResponse<Long> unread() {
+        return WebResponse.success(notifyManager.countUnread(getCurrentUserId()));
+    }
+
     private String getCurrentUserId() {
         // 实际项目中从 SecurityContext 或认证 Token 中获取
         return "test1";
     }
 
+    public record HistoryPage(List<NotifyMessage> items,
+                              @JsonProperty("next_cursor") String nextCursor) {
+    }
+
     public record WebResponse<T>(int code, T data) {
         public static <T> WebResponse<T> success(T data) {
             return new WebResponse<>(200, data);
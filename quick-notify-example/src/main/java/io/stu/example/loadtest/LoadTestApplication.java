@@ -0,0 +1,242 @@
+package io.stu.example.loadtest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.stu.example.ExampleApplication;
+import io.stu.notify.NotifyManager;
+import io.stu.notify.metrics.MicrometerNotifyMetrics;
+import io.stu.notify.metrics.NotifyMetrics;
+import io.stu.notify.model.MessageTypeRegistry;
+import io.stu.notify.repository.NotifyMessageLog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 端到端压测：内嵌启动示例应用（H2 + 本地 ACK，不依赖 Redis），建立 N 条 STOMP 连接，
+ * 按目标速率调用 saveAndPublish，客户端收到后自动通过 /app/ack 确认，最后输出延迟与资源报告。
+ * <p>
+ * 参数（--key=value）：
+ * <ul>
+ *   <li>{@code loadtest.clients}：连接数，默认 1000，每个连接一个用户</li>
+ *   <li>{@code loadtest.rate}：每秒 saveAndPublish 次数，默认 500</li>
+ *   <li>{@code loadtest.duration-seconds}：发送时长，默认 30</li>
+ *   <li>{@code loadtest.sockjs}：是否走 SockJS，默认 false（直连 /stomp-ws/websocket）</li>
+ *   <li>{@code loadtest.payload-bytes}：消息体字节数，默认 256</li>
+ *   <li>{@code loadtest.publishers}：发送线程数，默认 8</li>
+ *   <li>{@code loadtest.drain-seconds}：发送结束后等待投递完成的最长时间，默认 10</li>
+ * </ul>
+ * 其它应用配置（如 notify.delivery.mode、stomp.ack.retry-interval-ms）同样可通过命令行覆盖。
+ */
+@Slf4j
+public class LoadTestApplication {
+
+    private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+
+    public static void main(String[] args) throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ExampleApplication.class)
+                .initializers(ctx -> ctx.getBeanFactory().registerSingleton("loadTestPercentiles", percentiles()))
+                .run(withDefaults(args));
+        int exitCode = 0;
+        try {
+            log.info("[LOADTEST] 压测结束\n{}", run(context).format());
+        } catch (Exception e) {
+            log.error("[LOADTEST] 压测失败", e);
+            exitCode = 1;
+        } finally {
+            context.close();
+        }
+        System.exit(exitCode);
+    }
+
+    private static LoadTestReport run(ConfigurableApplicationContext context) throws Exception {
+        Environment env = context.getEnvironment();
+        int clients = env.getProperty("loadtest.clients", Integer.class, 1000);
+        int rate = env.getProperty("loadtest.rate", Integer.class, 500);
+        int durationSeconds = env.getProperty("loadtest.duration-seconds", Integer.class, 30);
+        boolean sockJs = env.getProperty("loadtest.sockjs", Boolean.class, false);
+        int payloadBytes = env.getProperty("loadtest.payload-bytes", Integer.class, 256);
+        int publishers = env.getProperty("loadtest.publishers", Integer.class, 8);
+        int drainSeconds = env.getProperty("loadtest.drain-seconds", Integer.class, 10);
+
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        NotifyManager notifyManager = context.getBean(NotifyManager.class);
+        MeterRegistry registry = ((MicrometerNotifyMetrics) context.getBean(NotifyMetrics.class)).getRegistry();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        AtomicLong heapMaxUsed = new AtomicLong();
+
+        StompLoadClients loadClients = new StompLoadClients(port, sockJs);
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        ExecutorService publisherPool = Executors.newFixedThreadPool(publishers);
+        try {
+            long connectStart = System.currentTimeMillis();
+            int connected = loadClients.connect(clients, TimeUnit.MINUTES.toMillis(2));
+            log.warn("[LOADTEST] 连接完成 {}/{}, {}, 耗时 {} ms", connected, clients,
+                    sockJs ? "SockJS" : "WebSocket", System.currentTimeMillis() - connectStart);
+            if (connected == 0) {
+                throw new IllegalStateException("没有建立任何连接");
+            }
+
+            scheduler.scheduleAtFixedRate(() -> heapMaxUsed.accumulateAndGet(
+                    memory.getHeapMemoryUsage().getUsed(), Math::max), 0, 1, TimeUnit.SECONDS);
+
+            String payload = "x".repeat(Math.max(1, payloadBytes));
+            AtomicLong submitted = new AtomicLong();
+            AtomicLong sent = new AtomicLong();
+            AtomicLong publishErrors = new AtomicLong();
+            AtomicInteger nextUser = new AtomicInteger();
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+            // 每 10ms 按已过去的时间补齐应发数量，避免调度抖动累积成速率偏差
+            scheduler.scheduleAtFixedRate(() -> {
+                long now = Math.min(System.nanoTime(), end);
+                long due = (now - start) * rate / TimeUnit.SECONDS.toNanos(1);
+                while (submitted.get() < due) {
+                    long seq = submitted.incrementAndGet();
+                    String receiver = StompLoadClients.userId(Math.floorMod(nextUser.getAndIncrement(), connected));
+                    publisherPool.execute(() -> {
+                        try {
+                            notifyManager.saveAndPublish(new NotifyMessageLog("lt-" + seq,
+                                    MessageTypeRegistry.STRING_MSG, receiver, payload));
+                            sent.incrementAndGet();
+                        } catch (Exception e) {
+                            publishErrors.incrementAndGet();
+                            log.debug("[LOADTEST] saveAndPublish 失败: {}", e.getMessage());
+                        }
+                    });
+                }
+            }, 0, 10, TimeUnit.MILLISECONDS);
+
+            TimeUnit.NANOSECONDS.sleep(end - System.nanoTime());
+            // 停止调度后等待已提交的发送完成
+            scheduler.shutdown();
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            publisherPool.shutdown();
+            publisherPool.awaitTermination(drainSeconds, TimeUnit.SECONDS);
+
+            long drainDeadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(drainSeconds);
+            while (loadClients.getReceived() < sent.get() && System.currentTimeMillis() < drainDeadline) {
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+            heapMaxUsed.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+            System.gc();
+            long heapAfterGc = memory.getHeapMemoryUsage().getUsed();
+
+            double[] delivery = percentiles(loadClients.getDeliveryLatency());
+            double[] save = percentiles(busiest(registry.find("quick_notify.save_and_publish").timers()));
+            double[] push = percentiles(busiest(registry.find("quick_notify.pipeline").tag("stage", "send").timers()));
+            double[] ack = percentiles(busiest(registry.find("quick_notify.ack.latency").timers()));
+            return new LoadTestReport(connected, sockJs, rate, durationSeconds,
+                    sent.get(), publishErrors.get(), loadClients.getReceived(), loadClients.getDuplicates(),
+                    delivery[0], delivery[1], delivery[2],
+                    loadClients.getDeliveryLatency().max(TimeUnit.MILLISECONDS),
+                    save[1], push[1],
+                    ack[0], ack[1], ack[2],
+                    count(registry, "quick_notify.ack.retries"),
+                    count(registry, "quick_notify.ack.expired"),
+                    count(registry, "quick_notify.ack.not_online"),
+                    heapMaxUsed.get() >> 20, heapAfterGc >> 20);
+        } finally {
+            scheduler.shutdownNow();
+            publisherPool.shutdownNow();
+            loadClients.disconnect();
+        }
+    }
+
+    /**
+     * 压测默认配置：随机端口、本地 ACK、不连 Redis、日志降到 WARN；命令行已指定的 key 不覆盖
+     */
+    private static String[] withDefaults(String[] args) {
+        Map<String, String> defaults = new LinkedHashMap<>();
+        defaults.put("server.port", "0");
+        defaults.put("stomp.enable-local-ack", "true");
+        defaults.put("spring.autoconfigure.exclude", "org.redisson.spring.starter.RedissonAutoConfigurationV2");
+        defaults.put("spring.h2.console.enabled", "false");
+        defaults.put("logging.level.root", "WARN");
+        defaults.put("logging.level.io.stu", "WARN");
+        defaults.put("logging.level.org.springframework.web.socket", "WARN");
+        defaults.put("logging.level.org.springframework.messaging", "WARN");
+        defaults.put("logging.level.org.springframework.web.socket.messaging", "WARN");
+        defaults.put("logging.level.org.springframework.web.socket.server", "WARN");
+        defaults.put("logging.level.org.springframework.web.socket.server.standard", "WARN");
+        defaults.put("logging.level.io.stu.example.loadtest", "INFO");
+
+        List<String> merged = new ArrayList<>(Arrays.asList(args));
+        defaults.forEach((key, value) -> {
+            if (merged.stream().noneMatch(arg -> arg.startsWith("--" + key + "="))) {
+                merged.add("--" + key + "=" + value);
+            }
+        });
+        return merged.toArray(String[]::new);
+    }
+
+    /**
+     * 为 quick_notify.* 计时器开启 p50/p99/p999，统计窗口覆盖整个压测过程
+     */
+    private static MeterFilter percentiles() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (id.getType() != Meter.Type.TIMER || !id.getName().startsWith("quick_notify.")) {
+                    return config;
+                }
+                return DistributionStatisticConfig.builder()
+                        .percentiles(PERCENTILES)
+                        .expiry(Duration.ofHours(1))
+                        .bufferLength(1)
+                        .build()
+                        .merge(config);
+            }
+        };
+    }
+
+    /**
+     * 按消息类型打标签的计时器中取样本最多的一个
+     */
+    private static Timer busiest(Collection<Timer> timers) {
+        return timers.stream().max(Comparator.comparingLong(Timer::count)).orElse(null);
+    }
+
+    /**
+     * 计时器的 p50/p99/p999，单位毫秒
+     */
+    private static double[] percentiles(Timer timer) {
+        double[] result = new double[PERCENTILES.length];
+        if (timer == null) {
+            return result;
+        }
+        ValueAtPercentile[] values = timer.takeSnapshot().percentileValues();
+        for (int i = 0; i < values.length && i < result.length; i++) {
+            result[i] = values[i].value(TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+    private static double count(MeterRegistry registry, String name) {
+        return registry.find(name).counters().stream().mapToDouble(Counter::count).sum();
+    }
+}
@@ -0,0 +1,69 @@
+package io.stu.example.loadtest;
+
+import java.util.Locale;
+
+/**
+ * 压测结果
+ *
+ * @param clients         成功建立的连接数
+ * @param sockJs          是否走 SockJS
+ * @param targetRate      目标发送速率（条/秒）
+ * @param durationSeconds 发送时长（秒）
+ * @param sent            saveAndPublish 成功次数
+ * @param publishErrors   saveAndPublish 失败次数
+ * @param received        客户端收到的不重复消息数
+ * @param duplicates      客户端重复收到的次数（ACK 重发）
+ * @param deliveryP50     投递延迟 p50（毫秒，created -> 客户端收到）
+ * @param deliveryP99     投递延迟 p99
+ * @param deliveryP999    投递延迟 p999
+ * @param deliveryMax     投递延迟最大值
+ * @param saveP99         服务端 saveAndPublish 耗时 p99（毫秒）
+ * @param pushP99         服务端 created -> 推送到 session 的耗时 p99（毫秒）
+ * @param ackP50          ACK 往返 p50（毫秒，created -> 服务端收到 ACK）
+ * @param ackP99          ACK 往返 p99
+ * @param ackP999         ACK 往返 p999
+ * @param retries         服务端 ACK 重发次数
+ * @param expired         服务端 ACK 过期次数
+ * @param notOnline       服务端 ACK 不在线次数
+ * @param heapMaxUsedMb   压测期间堆使用峰值
+ * @param heapAfterGcMb   结束后 GC 的堆使用
+ */
+public record LoadTestReport(int clients, boolean sockJs, int targetRate, int durationSeconds,
+                             long sent, long publishErrors, long received, long duplicates,
+                             double deliveryP50, double deliveryP99, double deliveryP999, double deliveryMax,
+                             double saveP99, double pushP99,
+                             double ackP50, double ackP99, double ackP999,
+                             double retries, double expired, double notOnline,
+                             long heapMaxUsedMb, long heapAfterGcMb) {
+
+    public double achievedRate() {
+        return durationSeconds > 0 ? (double) sent / durationSeconds : 0;
+    }
+
+    public double retryRate() {
+        return sent > 0 ? retries / sent : 0;
+    }
+
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("========== quick-notify 压测报告 ==========\n");
+        line(sb, "连接", "%d (%s)", clients, sockJs ? "SockJS" : "WebSocket");
+        line(sb, "速率", "目标 %d/s, 实际 %.1f/s, 时长 %ds", targetRate, achievedRate(), durationSeconds);
+        line(sb, "发送", "%d, 失败 %d", sent, publishErrors);
+        line(sb, "收到", "%d (%.2f%%), 重复 %d", received, sent > 0 ? received * 100.0 / sent : 0, duplicates);
+        line(sb, "投递延迟 ms", "p50 %.1f, p99 %.1f, p999 %.1f, max %.1f",
+                deliveryP50, deliveryP99, deliveryP999, deliveryMax);
+        line(sb, "服务端 ms", "saveAndPublish p99 %.1f, 推送 p99 %.1f", saveP99, pushP99);
+        line(sb, "ACK 往返 ms", "p50 %.1f, p99 %.1f, p999 %.1f", ackP50, ackP99, ackP999);
+        line(sb, "ACK 重发", "%.0f (重发率 %.4f%%), 过期 %.0f, 不在线 %.0f",
+                retries, retryRate() * 100, expired, notOnline);
+        line(sb, "堆内存 MB", "峰值 %d, GC 后 %d", heapMaxUsedMb, heapAfterGcMb);
+        sb.append("==========================================");
+        return sb.toString();
+    }
+
+    private static void line(StringBuilder sb, String name, String format, Object... args) {
+        sb.append(String.format(Locale.ROOT, "%-12s", name)).append(": ")
+                .append(String.format(Locale.ROOT, format, args)).append('\n');
+    }
+}
@@ -0,0 +1,192 @@
+package io.stu.example.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 压测客户端：每个用户一条 STOMP 连接，Authorization 头即用户ID。
+ * <p>
+ * 订阅 /user/queue/msg，收到消息后记录投递延迟（当前时间 - created）并立即向 /app/ack 回 ACK。
+ * 同一消息重复收到（ACK 重发）只记为重复，不重复计入延迟。
+ */
+@Slf4j
+public class StompLoadClients {
+
+    private static final String USER_PREFIX = "load-";
+    // 同时进行中的握手数，避免瞬间打满 Tomcat 的 accept 队列
+    private static final int CONNECT_CONCURRENCY = 200;
+
+    private final WebSocketStompClient stompClient;
+    private final String url;
+    private final List<StompSession> sessions = new ArrayList<>();
+    private final Timer deliveryLatency = Timer.builder("loadtest.delivery")
+            .publishPercentiles(0.5, 0.99, 0.999)
+            .distributionStatisticExpiry(Duration.ofHours(1))
+            .distributionStatisticBufferLength(1)
+            .register(new SimpleMeterRegistry());
+    private final Map<String, Boolean> received = new ConcurrentHashMap<>();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong transportErrors = new AtomicLong();
+
+    /**
+     * @param port   服务端口
+     * @param sockJs true 走 SockJS（WebSocket 传输），false 直连 /stomp-ws/websocket
+     */
+    public StompLoadClients(int port, boolean sockJs) {
+        WebSocketClient webSocketClient = new StandardWebSocketClient();
+        if (sockJs) {
+            this.stompClient = new WebSocketStompClient(new SockJsClient(List.of(new WebSocketTransport(webSocketClient))));
+            this.url = "http://127.0.0.1:" + port + "/stomp-ws";
+        } else {
+            this.stompClient = new WebSocketStompClient(webSocketClient);
+            this.url = "ws://127.0.0.1:" + port + "/stomp-ws/websocket";
+        }
+        // ACK 以纯文本发送，推送消息按 JSON 解析
+        this.stompClient.setMessageConverter(new CompositeMessageConverter(
+                List.of(new StringMessageConverter(), new MappingJackson2MessageConverter())));
+        // 压测期间不发心跳，避免心跳帧干扰延迟
+        this.stompClient.setDefaultHeartbeat(new long[]{0, 0});
+        this.stompClient.setInboundMessageSizeLimit(1024 * 1024);
+    }
+
+    public static String userId(int index) {
+        return USER_PREFIX + index;
+    }
+
+    /**
+     * 建立 clients 条连接并完成订阅，阻塞至全部完成
+     *
+     * @return 成功建立的连接数
+     */
+    public int connect(int clients, long timeoutMs) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(CONNECT_CONCURRENCY);
+        List<CompletableFuture<StompSession>> futures = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            inFlight.acquire();
+            WebSocketHttpHeaders handshakeHeaders = new WebSocketHttpHeaders();
+            StompHeaders connectHeaders = new StompHeaders();
+            connectHeaders.add("Authorization", userId(i));
+            CompletableFuture<StompSession> future = stompClient
+                    .connectAsync(url, handshakeHeaders, connectHeaders, new SessionHandler())
+                    .whenComplete((session, e) -> inFlight.release());
+            futures.add(future);
+        }
+
+        int connected = 0;
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (CompletableFuture<StompSession> future : futures) {
+            try {
+                StompSession session = future.get(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                session.subscribe("/user/queue/msg", new MessageHandler(session));
+                sessions.add(session);
+                connected++;
+            } catch (Exception e) {
+                transportErrors.incrementAndGet();
+                log.warn("[LOADTEST] 连接失败: {}", e.getMessage());
+            }
+        }
+        return connected;
+    }
+
+    public void disconnect() {
+        for (StompSession session : sessions) {
+            try {
+                session.disconnect();
+            } catch (Exception ignored) {
+                // 关闭阶段忽略
+            }
+        }
+        stompClient.stop();
+    }
+
+    public Timer getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+    public long getReceived() {
+        return received.size();
+    }
+
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    public long getTransportErrors() {
+        return transportErrors.get();
+    }
+
+    private class MessageHandler implements StompFrameHandler {
+
+        private final StompSession session;
+
+        MessageHandler(StompSession session) {
+            this.session = session;
+        }
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return JsonNode.class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            long now = System.currentTimeMillis();
+            JsonNode message = (JsonNode) payload;
+            String id = message.path("id").asText(null);
+            if (id == null) {
+                return;
+            }
+            if (received.putIfAbsent(id, Boolean.TRUE) == null) {
+                long created = message.path("created").asLong(0);
+                if (created > 0) {
+                    deliveryLatency.record(Math.max(0, now - created), TimeUnit.MILLISECONDS);
+                }
+            } else {
+                duplicates.incrementAndGet();
+            }
+            session.send("/app/ack", id);
+        }
+    }
+
+    private class SessionHandler extends StompSessionHandlerAdapter {
+
+        @Override
+        public void handleException(StompSession session, StompCommand command, StompHeaders headers,
+                                    byte[] payload, Throwable exception) {
+            log.warn("[LOADTEST] 处理帧异常: {}", exception.getMessage());
+        }
+
+        @Override
+        public void handleTransportError(StompSession session, Throwable exception) {
+            transportErrors.incrementAndGet();
+            log.debug("[LOADTEST] 传输异常: {}", exception.getMessage());
+        }
+    }
+}
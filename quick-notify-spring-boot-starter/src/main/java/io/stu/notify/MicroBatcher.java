@@ -0,0 +1,222 @@
+package io.stu.notify;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 微批循环：元素先进入有界缓冲队列，单个后台线程在 linger 时间窗口内或攒满 batch 后交给 {@link Handler#flush} 处理。
+ * 供 {@link NotifyGroupCommitter} 与 {@link io.stu.notify.cluster.ClusterEventBus} 共用。
+ * <p>
+ * 停止时先处理完队列中剩余的元素，最多等待 joinTimeoutMs。后台线程因中断或停止超时而退出时不再接收新元素，
+ * 手中的批次与队列中剩余的元素交给 {@link Handler#abandon}，不会被静默丢弃。
+ *
+ * @param <E> 元素类型
+ */
+@Slf4j
+public class MicroBatcher<E> {
+
+    private static final long IDLE_POLL_MS = 100;
+    private static final long OFFER_POLL_MS = 100;
+
+    /**
+     * 批次处理
+     *
+     * @param <E> 元素类型
+     */
+    public interface Handler<E> {
+
+        /**
+         * 处理一个批次，抛出异常时该批次交给 {@link #abandon}
+         *
+         * @param batch 按入队顺序排列，处理结束后被清空复用，不要持有引用
+         */
+        void flush(List<E> batch) throws Exception;
+
+        /**
+         * 元素未能处理：批次处理异常、后台线程被中断，或停止后仍留在队列中
+         *
+         * @param elements 未处理的元素
+         * @param cause    原因
+         */
+        void abandon(List<E> elements, Throwable cause);
+    }
+
+    private final String name;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final BlockingQueue<E> queue;
+    private final Handler<E> handler;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    /**
+     * @param name          后台线程名，同时用于日志
+     * @param maxBatchSize  单批最大元素数
+     * @param lingerMs      收到第一个元素后最多再等待的时间
+     * @param queueCapacity 缓冲队列容量
+     * @param handler       批次处理
+     */
+    public MicroBatcher(String name, int maxBatchSize, long lingerMs, int queueCapacity, Handler<E> handler) {
+        if (maxBatchSize <= 0 || lingerMs < 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("MicroBatcher: 非法参数, maxBatchSize=" + maxBatchSize
+                    + ", lingerMs=" + lingerMs + ", queueCapacity=" + queueCapacity);
+        }
+        this.name = name;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.handler = handler;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::runLoop, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 停止接收新元素，等待后台线程处理完队列；超时后剩余元素交给 {@link Handler#abandon}
+     *
+     * @param joinTimeoutMs 最长等待时间
+     * @return 未处理而被放弃的元素数
+     */
+    public synchronized int stop(long joinTimeoutMs) {
+        if (worker == null) {
+            return 0;
+        }
+        running = false;
+        try {
+            worker.join(joinTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        worker = null;
+        return abandonQueued(new IllegalStateException(name + ": 已停止, 元素未处理"));
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getLingerMs() {
+        return TimeUnit.NANOSECONDS.toMillis(lingerNanos);
+    }
+
+    /**
+     * 当前排队的元素数
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * 非阻塞入队
+     *
+     * @return 未运行或队列已满时返回 false
+     */
+    public boolean offer(E element) {
+        return running && queue.offer(element);
+    }
+
+    /**
+     * 入队，队列满时阻塞等待，直到入队成功或停止
+     *
+     * @throws IllegalStateException 未运行或已停止，元素未入队
+     * @throws InterruptedException  等待时被中断，元素未入队
+     */
+    public void put(E element) throws InterruptedException {
+        while (!queue.offer(element, OFFER_POLL_MS, TimeUnit.MILLISECONDS)) {
+            if (!running) {
+                throw new IllegalStateException(name + ": 未启动");
+            }
+        }
+        // 入队后再检查：与 stop 并发时后台线程可能已退出，取回成功说明没有人会处理这个元素；
+        // 取回失败说明已被后台线程或 stop 取走，一定会被 flush 或 abandon
+        if (!running && queue.remove(element)) {
+            throw new IllegalStateException(name + ": 未启动");
+        }
+    }
+
+    private void runLoop() {
+        try {
+            drainLoop();
+        } finally {
+            // 被中断等异常退出时不再接收新元素，已入队的交给 abandon
+            running = false;
+            int abandoned = abandonQueued(new IllegalStateException(name + ": 后台线程已退出, 元素未处理"));
+            if (abandoned > 0) {
+                log.warn("[{}] 后台线程退出, 未处理 {}", name, abandoned);
+            }
+        }
+    }
+
+    private void drainLoop() {
+        List<E> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                E first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    E next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                handler.flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("[{}] 后台线程被中断, 剩余未处理 {}", name, batch.size() + queue.size());
+                abandon(batch, e);
+                return;
+            } catch (Throwable e) {
+                // 兜底，避免后台线程退出
+                log.error("[{}] 批次处理异常, batch {}", name, batch.size(), e);
+                abandon(batch, e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private int abandonQueued(Throwable cause) {
+        List<E> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        abandon(remaining, cause);
+        return remaining.size();
+    }
+
+    private void abandon(List<E> elements, Throwable cause) {
+        if (elements.isEmpty()) {
+            return;
+        }
+        try {
+            handler.abandon(List.copyOf(elements), cause);
+        } catch (Throwable e) {
+            log.error("[{}] 放弃元素时异常, count {}", name, elements.size(), e);
+        }
+    }
+}
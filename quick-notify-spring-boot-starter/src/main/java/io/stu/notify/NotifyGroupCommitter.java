@@ -0,0 +1,163 @@
+package io.stu.notify;
+
+import io.stu.notify.event.NotifyDeliveryExecutor;
+import io.stu.notify.event.NotifyMessageEvent;
+import io.stu.notify.repository.NotifyMessageLog;
+import io.stu.notify.repository.NotifyRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 组提交写入器（可选，配置 notify.group-commit.enabled=true 开启）。
+ * <p>
+ * 并发调用方的消息先进入缓冲队列，后台线程（{@link MicroBatcher}）在 linger 时间窗口内或攒满 batch 后，
+ * 在同一个事务中通过一次 {@link NotifyRepository#saveAll(List)} 批量写入，
+ * 并在该事务内发布 {@link NotifyMessageEvent}，事件在事务提交后才会被监听器处理。
+ * 调用方阻塞等待所在批次提交完成，最多等待 waitTimeoutMs。
+ * 停止或刷写线程异常退出后，队列中尚未提交的消息以异常结束，调用方不会一直等待。
+ */
+@Slf4j
+public class NotifyGroupCommitter {
+
+    private final NotifyRepository repository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final MicroBatcher<PendingWrite> batcher;
+
+    private long waitTimeoutMs = 30_000;
+
+    public NotifyGroupCommitter(NotifyRepository repository, ApplicationEventPublisher eventPublisher,
+                                TransactionTemplate transactionTemplate,
+                                int maxBatchSize, long lingerMs, int queueCapacity) {
+        if (maxBatchSize <= 0 || lingerMs < 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("GroupCommit: 非法参数, maxBatchSize=" + maxBatchSize
+                    + ", lingerMs=" + lingerMs + ", queueCapacity=" + queueCapacity);
+        }
+        this.repository = repository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.batcher = new MicroBatcher<>("quick-notify-group-commit", maxBatchSize, lingerMs, queueCapacity,
+                new MicroBatcher.Handler<>() {
+                    @Override
+                    public void flush(List<PendingWrite> batch) {
+                        NotifyGroupCommitter.this.flush(batch);
+                    }
+
+                    @Override
+                    public void abandon(List<PendingWrite> writes, Throwable cause) {
+                        writes.forEach(w -> w.future().completeExceptionally(cause));
+                    }
+                });
+    }
+
+    /**
+     * {@link #saveAndWait} 等待所在批次提交的最长时间，超时后消息仍可能在之后提交
+     */
+    public void setWaitTimeoutMs(long waitTimeoutMs) {
+        if (waitTimeoutMs <= 0) {
+            throw new IllegalArgumentException("GroupCommit: 非法参数, waitTimeoutMs=" + waitTimeoutMs);
+        }
+        this.waitTimeoutMs = waitTimeoutMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        batcher.start();
+        log.info("[GROUP-COMMIT] 启动, maxBatchSize {}, lingerMs {}", batcher.getMaxBatchSize(), batcher.getLingerMs());
+    }
+
+    @PreDestroy
+    public void stop() {
+        // 刷写线程未在时限内处理完的消息不再提交，以异常结束
+        int abandoned = batcher.stop(TimeUnit.SECONDS.toMillis(10));
+        log.info("[GROUP-COMMIT] 已停止, 未提交 {}", abandoned);
+    }
+
+    /**
+     * 提交消息到缓冲队列，队列满时阻塞调用方
+     *
+     * @param msg 消息
+     * @return 所在批次提交后完成的 Future
+     * @throws IllegalStateException 写入器未启动或已停止
+     */
+    public CompletableFuture<NotifyMessageLog> submit(NotifyMessageLog msg) {
+        PendingWrite write = new PendingWrite(msg, new CompletableFuture<>());
+        try {
+            batcher.put(write);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("GroupCommit: 等待入队时被中断", e);
+        } catch (IllegalStateException e) {
+            throw new IllegalStateException("GroupCommit: 写入器未启动", e);
+        }
+        return write.future();
+    }
+
+    /**
+     * 提交消息并等待所在批次提交完成
+     *
+     * @param msg 消息
+     * @return 保存的消息
+     */
+    public NotifyMessageLog saveAndWait(NotifyMessageLog msg) {
+        try {
+            return submit(msg).get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("GroupCommit: 等待提交时被中断", e);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("GroupCommit: 等待提交超时, waitTimeoutMs=" + waitTimeoutMs, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException("GroupCommit: 提交失败", e.getCause());
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        List<NotifyMessageLog> msgs = batch.stream().map(PendingWrite::msg).toList();
+        try {
+            commit(msgs);
+            batch.forEach(w -> w.future().complete(w.msg()));
+            log.debug("[GROUP-COMMIT] 批次提交完成, size {}", msgs.size());
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).future().completeExceptionally(e);
+                return;
+            }
+            // 批次失败时逐条重试，避免一条坏数据拖垮整批调用方
+            log.warn("[GROUP-COMMIT] 批次提交失败, 逐条重试, size {}, error {}", msgs.size(), e.getMessage());
+            for (PendingWrite w : batch) {
+                try {
+                    commit(List.of(w.msg()));
+                    w.future().complete(w.msg());
+                } catch (RuntimeException single) {
+                    w.future().completeExceptionally(single);
+                }
+            }
+        }
+    }
+
+    private void commit(List<NotifyMessageLog> msgs) {
+        // 提交后的推送任务不阻塞刷写线程：车道满时转入补救投递（ACK 重试或离线收件箱），持久化不被投递拖慢
+        NotifyDeliveryExecutor.runNonBlocking(() -> transactionTemplate.executeWithoutResult(status -> {
+            repository.saveAll(msgs);
+            for (NotifyMessageLog msg : msgs) {
+                eventPublisher.publishEvent(new NotifyMessageEvent(msg));
+            }
+        }));
+    }
+
+    private record PendingWrite(NotifyMessageLog msg, CompletableFuture<NotifyMessageLog> future) {
+    }
+}
@@ -1,14 +1,28 @@
 package io.stu.notify;
 
+import io.stu.notify.counter.UnreadCounter;
+import io.stu.notify.event.NotifyBatchEvent;
+import io.stu.notify.event.NotifyBroadcastEvent;
 import io.stu.notify.event.NotifyMessageEvent;
+import io.stu.notify.metrics.NotifyMetrics;
 import io.stu.notify.model.MessageTypeRegistry;
+import io.stu.notify.model.RawJson;
+import io.stu.notify.repository.NotifyCursor;
 import io.stu.notify.repository.NotifyMessageLog;
+import io.stu.notify.repository.NotifyPage;
 import io.stu.notify.repository.NotifyRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * 消息管理器。
@@ -17,36 +31,203 @@ import java.util.List;
 @Slf4j
 public class NotifyManager {
 
+    /**
+     * notify_log.id 的列长度
+     */
+    static final int MAX_ID_LENGTH = 64;
+
     private final NotifyRepository repository;
     private final ApplicationEventPublisher eventPublisher;
+    private TransactionTemplate transactionTemplate;
+    private NotifyGroupCommitter groupCommitter;
+    private int bulkChunkSize = 500;
+    private UnreadCounter unreadCounter;
+    private boolean pushUnreadCount;
+    private NotifyUpdateDebouncer updateDebouncer;
+    private NotifyMetrics metrics = NotifyMetrics.NOOP;
 
     public NotifyManager(NotifyRepository repository, ApplicationEventPublisher eventPublisher) {
         this.repository = repository;
         this.eventPublisher = eventPublisher;
     }
 
+    public void setTransactionTemplate(TransactionTemplate transactionTemplate) {
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * 设置组提交写入器，为 null 时每次调用单独写入
+     */
+    public void setGroupCommitter(NotifyGroupCommitter groupCommitter) {
+        this.groupCommitter = groupCommitter;
+    }
+
+    /**
+     * 设置批量发送时每批的接收者数量
+     */
+    public void setBulkChunkSize(int bulkChunkSize) {
+        if (bulkChunkSize <= 0) {
+            throw new IllegalArgumentException("bulkChunkSize 必须大于 0");
+        }
+        this.bulkChunkSize = bulkChunkSize;
+    }
+
+    /**
+     * 设置未读计数器，为 null 时每次查询数据库
+     */
+    public void setUnreadCounter(UnreadCounter unreadCounter) {
+        this.unreadCounter = unreadCounter;
+    }
+
     /**
-     * 保存并发布消息（持久化 + 推送）
+     * 是否在推送的消息中附带接收者最新未读数（需要设置未读计数器）
+     */
+    public void setPushUnreadCount(boolean pushUnreadCount) {
+        this.pushUnreadCount = pushUnreadCount;
+    }
+
+    /**
+     * 设置状态变更防抖，为 null 时每次已读 / 删除立即发布
+     */
+    public void setUpdateDebouncer(NotifyUpdateDebouncer updateDebouncer) {
+        this.updateDebouncer = updateDebouncer;
+        if (updateDebouncer != null) {
+            updateDebouncer.setFlusher(this::publishUpdates);
+        }
+    }
+
+    public void setMetrics(NotifyMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 保存并发布消息（持久化 + 推送）。
+     * <p>
+     * 开启组提交且调用方不在事务中时，消息交由 {@link NotifyGroupCommitter} 批量提交；
+     * 否则在当前事务（或新事务）中单条写入。
      *
      * @param msg 消息
      * @return 保存的消息
      */
-    @Transactional
     public NotifyMessageLog saveAndPublish(NotifyMessageLog msg) {
+        long start = System.nanoTime();
         MessageTypeRegistry.checkDataType(msg.getType(), msg.getData());
 
         if (msg.getCreated() == 0) {
             msg.setCreated(System.currentTimeMillis());
         }
 
-        repository.save(msg);
-        eventPublisher.publishEvent(new NotifyMessageEvent(msg));
+        boolean counted = incrementUnread(msg);
+        if (counted) {
+            evictUnreadUnlessCommitted(List.of(msg.getReceiver()));
+        }
+        try {
+            if (groupCommitter != null && !TransactionSynchronizationManager.isActualTransactionActive()) {
+                groupCommitter.saveAndWait(msg);
+            } else {
+                inTransaction(() -> {
+                    repository.save(msg);
+                    eventPublisher.publishEvent(new NotifyMessageEvent(msg));
+                });
+            }
+        } catch (RuntimeException e) {
+            if (counted) {
+                unreadCounter.add(msg.getReceiver(), -1);
+            }
+            throw e;
+        }
 
+        metrics.recordSaveAndPublish(msg.getType(), start);
         log.debug("消息已保存并发布, id={}, receiver={}, type={}",
                 msg.getId(), msg.getReceiver(), msg.getType());
         return msg;
     }
 
+    /**
+     * 同一消息批量发送给多个接收者（持久化 + 推送）。
+     * <p>
+     * 接收者按 chunk 分批，每批一次 JDBC 批量写入、一个 {@link NotifyBatchEvent}，
+     * 集群中只广播一份消息内容和接收者列表，各节点只投递给本地在线的接收者。
+     * 第 i 个接收者的消息 ID 为 {@code template.id + "-" + i}，template.id 为空时自动生成；
+     * 生成的 ID 超过 {@value #MAX_ID_LENGTH} 个字符时拒绝发送。template 本身不会被修改。
+     * <p>
+     * 调用方不在事务中时每批单独提交，不是原子操作：某一批失败时之前的批次已提交并推送，
+     * 失败日志中记录已提交的接收者数，异常原样抛出。需要整体提交或回滚时在调用方事务中调用。
+     *
+     * @param template  消息模板（receiver 字段忽略）
+     * @param receivers 接收者列表，重复和空白的接收者会被忽略
+     * @return 保存的消息数量
+     * @throws IllegalArgumentException 如果生成的消息 ID 过长
+     */
+    public int saveAndPublishAll(NotifyMessageLog template, Collection<String> receivers) {
+        MessageTypeRegistry.checkDataType(template.getType(), template.getData());
+        if (receivers == null || receivers.isEmpty()) {
+            return 0;
+        }
+
+        List<String> targets = new ArrayList<>(new LinkedHashSet<>(receivers));
+        targets.removeIf(r -> r == null || r.isBlank());
+        if (targets.isEmpty()) {
+            return 0;
+        }
+
+        NotifyMessageLog base = copyTemplate(template);
+        if (base.getId() == null || base.getId().isBlank()) {
+            base.setId(UUID.randomUUID().toString().replace("-", ""));
+        }
+        if (base.getCreated() == 0) {
+            base.setCreated(System.currentTimeMillis());
+        }
+        // 最长的 ID 为最后一个接收者的 "id-序号"
+        int maxIdLength = base.getId().length() + 1 + String.valueOf(targets.size() - 1).length();
+        if (maxIdLength > MAX_ID_LENGTH) {
+            throw new IllegalArgumentException("BulkSend: 非法参数, id 过长, id=" + base.getId()
+                    + ", receivers=" + targets.size() + ", maxIdLength=" + MAX_ID_LENGTH);
+        }
+
+        int committed = 0;
+        for (int from = 0; from < targets.size(); from += bulkChunkSize) {
+            List<String> chunk = new ArrayList<>(targets.subList(from, Math.min(from + bulkChunkSize, targets.size())));
+            NotifyBatchEvent event = new NotifyBatchEvent(base, from, chunk);
+            List<NotifyMessageLog> rows = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                rows.add(event.messageAt(i));
+            }
+            try {
+                inTransaction(() -> {
+                    repository.saveAll(rows);
+                    eventPublisher.publishEvent(event);
+                });
+            } catch (RuntimeException e) {
+                log.error("批量消息部分发送失败, id={}, type={}, committed={}, receivers={}",
+                        base.getId(), base.getType(), committed, targets.size(), e);
+                throw e;
+            }
+            committed += chunk.size();
+            if (unreadCounter != null && !base.isViewed()) {
+                unreadCounter.addAll(chunk, 1);
+                evictUnreadUnlessCommitted(chunk);
+            }
+        }
+
+        log.debug("批量消息已保存并发布, id={}, type={}, receivers={}",
+                base.getId(), base.getType(), targets.size());
+        return committed;
+    }
+
+    /**
+     * 复制模板的持久化字段，批量发送只修改副本
+     */
+    private static NotifyMessageLog copyTemplate(NotifyMessageLog template) {
+        NotifyMessageLog copy = new NotifyMessageLog();
+        copy.setId(template.getId());
+        copy.setType(template.getType());
+        copy.setData(template.getData());
+        copy.setViewed(template.isViewed());
+        copy.setCreated(template.getCreated());
+        return copy;
+    }
+
     /**
      * 仅发布消息（不持久化）
      *
@@ -59,6 +240,22 @@ public class NotifyManager {
         return msg;
     }
 
+    /**
+     * 广播消息到集群内全部在线用户（不持久化，不追踪 ACK）。
+     * 各节点只编码一次并并行推送本节点的 session，推送结果记录在各节点日志中。
+     *
+     * @param msg 消息，receiver 忽略
+     * @return 发布的消息
+     */
+    public NotifyMessageLog broadcast(NotifyMessageLog msg) {
+        MessageTypeRegistry.checkDataType(msg.getType(), msg.getData());
+        if (msg.getId() == null || msg.getId().isBlank()) {
+            msg.setId(UUID.randomUUID().toString());
+        }
+        eventPublisher.publishEvent(new NotifyBroadcastEvent(msg.toNotifyMessage()));
+        return msg;
+    }
+
     /**
      * 获取用户历史消息（按创建时间倒序）
      *
@@ -72,6 +269,74 @@ public class NotifyManager {
         return repository.findByReceiverBefore(userId, created, offset, limit);
     }
 
+    /**
+     * 游标分页获取用户历史消息（按创建时间倒序）。
+     * 每页代价与翻页深度无关，适合替代 offset 分页。
+     *
+     * @param userId 用户ID
+     * @param cursor 上一页返回的 {@link NotifyPage#nextCursor()}，为空表示第一页
+     * @param limit  每页数量
+     * @return 当前页消息及下一页游标
+     * @throws IllegalArgumentException 如果游标非法
+     */
+    public NotifyPage getHistoryNotifyByCursor(String userId, String cursor, int limit) {
+        return historyPage(userId, cursor, limit, false);
+    }
+
+    /**
+     * 同 {@link #getHistoryNotifyByCreated}，但消息的 data 为数据库中的 JSON 原文（{@link RawJson}），
+     * 序列化时原样写出。适合只把历史消息转发给前端的接口，省去每行的解码和再编码。
+     */
+    public List<NotifyMessageLog> getRawHistoryNotifyByCreated(String userId, long created, int offset, int limit) {
+        return repository.findRawByReceiverBefore(userId, created, offset, limit);
+    }
+
+    /**
+     * 同 {@link #getHistoryNotifyByCursor}，但消息的 data 为数据库中的 JSON 原文（{@link RawJson}）
+     */
+    public NotifyPage getRawHistoryNotifyByCursor(String userId, String cursor, int limit) {
+        return historyPage(userId, cursor, limit, true);
+    }
+
+    /**
+     * 按时间正序逐条导出用户在 [fromCreated, toCreated) 内的历史消息，不把结果整体加载到内存
+     *
+     * @param userId      用户ID
+     * @param fromCreated 起始时间（含）
+     * @param toCreated   结束时间（不含）
+     * @param action      逐条回调，抛出异常时中止导出
+     * @return 导出的消息数
+     */
+    public long scanHistoryNotify(String userId, long fromCreated, long toCreated, Consumer<NotifyMessageLog> action) {
+        return repository.scanByReceiver(userId, fromCreated, toCreated, action);
+    }
+
+    /**
+     * 同 {@link #scanHistoryNotify}，但消息的 data 为数据库中的 JSON 原文（{@link RawJson}）
+     */
+    public long scanRawHistoryNotify(String userId, long fromCreated, long toCreated, Consumer<NotifyMessageLog> action) {
+        return repository.scanRawByReceiver(userId, fromCreated, toCreated, action);
+    }
+
+    private NotifyPage historyPage(String userId, String cursor, int limit, boolean rawData) {
+        if (limit <= 0) {
+            return new NotifyPage(List.of(), null);
+        }
+        NotifyCursor current = NotifyCursor.decode(cursor);
+        long created = current != null ? current.created() : Long.MAX_VALUE;
+        String id = current != null ? current.id() : null;
+
+        // 多取一条用于判断是否还有下一页
+        List<NotifyMessageLog> rows = rawData
+                ? repository.findRawByReceiverAfterCursor(userId, created, id, limit + 1)
+                : repository.findByReceiverAfterCursor(userId, created, id, limit + 1);
+        if (rows.size() <= limit) {
+            return new NotifyPage(rows, null);
+        }
+        List<NotifyMessageLog> items = rows.subList(0, limit);
+        return new NotifyPage(new ArrayList<>(items), NotifyCursor.of(items.get(limit - 1)).encode());
+    }
+
     /**
      * 标记消息为已读
      *
@@ -79,14 +344,27 @@ public class NotifyManager {
      * @param ids    消息ID列表
      */
     public void markMessagesAsRead(String userId, List<String> ids) {
-        repository.markAsRead(userId, ids);
+        int updated = repository.markAsReadCount(userId, ids);
+        Long unread = null;
+        if (unreadCounter != null && updated > 0) {
+            unread = unreadCounter.add(userId, -updated);
+            evictUnreadUnlessCommitted(List.of(userId));
+        } else if (unreadCounter != null && updated < 0) {
+            // 仓储未返回条数，失效重建
+            evictUnread(userId);
+        }
 
-        // 发布已读状态变更通知
-        NotifyMessageLog notify = new NotifyMessageLog();
-        notify.setType(MessageTypeRegistry.NOTIFY_VIEWED);
-        notify.setReceiver(userId);
-        notify.setData(new MessageTypeRegistry.NotifyUpdateRsp(ids));
-        publish(notify);
+        // 发布已读状态变更通知，开启防抖时在事务提交后合并到窗口结束再发布
+        if (updateDebouncer != null) {
+            Long latest = unread;
+            afterCommit(() -> {
+                if (!updateDebouncer.viewed(userId, ids)) {
+                    publishUpdate(MessageTypeRegistry.NOTIFY_VIEWED, userId, ids, latest);
+                }
+            });
+            return;
+        }
+        publishUpdate(MessageTypeRegistry.NOTIFY_VIEWED, userId, ids, unread);
     }
 
     /**
@@ -97,12 +375,142 @@ public class NotifyManager {
      */
     public void deleteByUserId(String userId, List<String> ids) {
         repository.delete(userId, ids);
+        if (unreadCounter != null) {
+            // 删除的消息中未读条数未知，直接失效重建
+            evictUnread(userId);
+        }
+
+        // 发布删除状态变更通知，开启防抖时在事务提交后合并到窗口结束再发布
+        if (updateDebouncer != null) {
+            afterCommit(() -> {
+                if (!updateDebouncer.deleted(userId, ids)) {
+                    publishUpdate(MessageTypeRegistry.NOTIFY_DELETED, userId, ids, null);
+                }
+            });
+            return;
+        }
+        publishUpdate(MessageTypeRegistry.NOTIFY_DELETED, userId, ids, null);
+    }
 
-        // 发布删除状态变更通知
+    /**
+     * 获取用户未读消息数，开启未读计数器时优先读取计数
+     *
+     * @param userId 用户ID
+     * @return 未读消息数
+     */
+    public long countUnread(String userId) {
+        if (unreadCounter == null) {
+            return repository.countUnread(userId);
+        }
+        return unreadCounter.get(userId, () -> repository.countUnread(userId));
+    }
+
+    /**
+     * 新消息写入前增加接收者未读数，需要推送未读数时写入消息
+     *
+     * @return 是否已增加计数（写入失败时需回退）
+     */
+    private boolean incrementUnread(NotifyMessageLog msg) {
+        if (unreadCounter == null || msg.isViewed()) {
+            return false;
+        }
+        String receiver = msg.getReceiver();
+        Long unread = unreadCounter.add(receiver, 1);
+        if (unread == null && pushUnreadCount) {
+            // 计数未命中时先从数据库重建（不含本条），再计入本条
+            unreadCounter.get(receiver, () -> repository.countUnread(receiver));
+            unread = unreadCounter.add(receiver, 1);
+        }
+        if (pushUnreadCount) {
+            msg.setUnreadCount(unread);
+        }
+        return unread != null;
+    }
+
+    /**
+     * 计数已在调用方事务提交前变更：事务未提交（回滚）时使这些用户的计数失效，下次读取时从数据库重建。
+     * 不在事务中时变更已随写入生效，无需处理
+     */
+    private void evictUnreadUnlessCommitted(Collection<String> userIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        List<String> users = List.copyOf(userIds);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    users.forEach(unreadCounter::evict);
+                }
+            }
+        });
+    }
+
+    /**
+     * 使用户的计数失效；在调用方事务中时事务结束后再失效一次，
+     * 以免事务未结束期间从数据库重建的计数（不含本事务的变更）留在计数器中
+     */
+    private void evictUnread(String userId) {
+        unreadCounter.evict(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    unreadCounter.evict(userId);
+                }
+            });
+        }
+    }
+
+    /**
+     * 发布防抖合并后的更新，未读数取发布时的最新值
+     */
+    private void publishUpdates(String userId, List<String> viewedIds, List<String> deletedIds) {
+        if (!viewedIds.isEmpty()) {
+            publishUpdate(MessageTypeRegistry.NOTIFY_VIEWED, userId, viewedIds, null);
+        }
+        if (!deletedIds.isEmpty()) {
+            publishUpdate(MessageTypeRegistry.NOTIFY_DELETED, userId, deletedIds, null);
+        }
+    }
+
+    /**
+     * 发布状态变更通知
+     *
+     * @param unread 已知的最新未读数，为 null 且需要推送未读数时重新查询
+     */
+    private void publishUpdate(String type, String userId, List<String> ids, Long unread) {
         NotifyMessageLog notify = new NotifyMessageLog();
-        notify.setType(MessageTypeRegistry.NOTIFY_DELETED);
+        notify.setType(type);
         notify.setReceiver(userId);
         notify.setData(new MessageTypeRegistry.NotifyUpdateRsp(ids));
+        if (pushUnreadCount && unreadCounter != null) {
+            notify.setUnreadCount(unread != null ? unread : countUnread(userId));
+        }
         publish(notify);
     }
+
+    /**
+     * 在调用方事务中时等提交后执行（回滚则不执行），否则立即执行
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private void inTransaction(Runnable action) {
+        if (transactionTemplate == null) {
+            action.run();
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> action.run());
+    }
 }
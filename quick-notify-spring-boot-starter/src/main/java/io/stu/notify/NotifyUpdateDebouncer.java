@@ -0,0 +1,225 @@
+package io.stu.notify;
+
+import io.stu.notify.metrics.NotifyMetrics;
+import io.stu.notify.model.MessageTypeRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 状态变更防抖（可选，配置 notify.update-debounce.enabled=true 开启）。
+ * <p>
+ * 同一用户在 windowMs 内的多次已读 / 删除只发布一次：ids 按出现顺序合并去重，
+ * 窗口结束时依次发布一条 NOTIFY_VIEWED 和一条 NOTIFY_DELETED，已删除的 id 不再出现在 NOTIFY_VIEWED 中。
+ * 窗口从用户的第一次变更开始计时，不随后续变更顺延，推送最多延迟 windowMs；
+ * 合并的 id 数达到 maxIds 时立即发布。用户 session 断开时立即发布，合并后的更新按离线路径处理。
+ * 数据库在调用时已更新，防抖只影响推送；{@link NotifyManager} 在调用方事务提交后才交给防抖，回滚的变更不会被发布。
+ */
+@Slf4j
+public class NotifyUpdateDebouncer {
+
+    /**
+     * 发布合并后的更新
+     */
+    @FunctionalInterface
+    public interface Flusher {
+
+        /**
+         * @param userId     用户ID
+         * @param viewedIds  已读的消息ID，可能为空
+         * @param deletedIds 已删除的消息ID，可能为空
+         */
+        void flush(String userId, List<String> viewedIds, List<String> deletedIds);
+    }
+
+    private final long windowMs;
+    private final int maxIds;
+    private final int maxUsers;
+    private final ConcurrentHashMap<String, Pending> pending = new ConcurrentHashMap<>();
+
+    private Flusher flusher;
+    private NotifyMetrics metrics = NotifyMetrics.NOOP;
+    private volatile boolean running;
+    private ScheduledExecutorService scheduler;
+
+    public NotifyUpdateDebouncer(long windowMs, int maxIds, int maxUsers) {
+        if (windowMs <= 0 || maxIds <= 0 || maxUsers <= 0) {
+            throw new IllegalArgumentException("UpdateDebounce: 非法参数, windowMs=" + windowMs
+                    + ", maxIds=" + maxIds + ", maxUsers=" + maxUsers);
+        }
+        this.windowMs = windowMs;
+        this.maxIds = maxIds;
+        this.maxUsers = maxUsers;
+    }
+
+    /**
+     * 由 {@link NotifyManager#setUpdateDebouncer} 设置
+     */
+    void setFlusher(Flusher flusher) {
+        this.flusher = flusher;
+    }
+
+    public void setMetrics(NotifyMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "quick-notify-update-debounce");
+            t.setDaemon(true);
+            return t;
+        });
+        running = true;
+        log.info("[UPDATE-DEBOUNCE] 启动, windowMs {}, maxIds {}, maxUsers {}", windowMs, maxIds, maxUsers);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        scheduler.shutdownNow();
+        int users = pending.size();
+        pending.keySet().forEach(this::flush);
+        log.info("[UPDATE-DEBOUNCE] 已停止, 发布剩余更新, users {}", users);
+    }
+
+    /**
+     * 合并一次已读
+     *
+     * @return 是否已接收，false 时调用方应直接发布
+     */
+    public boolean viewed(String userId, List<String> ids) {
+        return offer(userId, ids, MessageTypeRegistry.NOTIFY_VIEWED);
+    }
+
+    /**
+     * 合并一次删除
+     *
+     * @return 是否已接收，false 时调用方应直接发布
+     */
+    public boolean deleted(String userId, List<String> ids) {
+        return offer(userId, ids, MessageTypeRegistry.NOTIFY_DELETED);
+    }
+
+    /**
+     * 立即发布用户尚未发出的更新
+     *
+     * @param userId 用户ID
+     */
+    public void flush(String userId) {
+        Pending current = pending.get(userId);
+        if (current != null) {
+            flush(userId, current);
+        }
+    }
+
+    /**
+     * 当前等待发布的用户数
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        Principal user = event.getUser();
+        if (user != null) {
+            flush(user.getName());
+        }
+    }
+
+    private boolean offer(String userId, List<String> ids, String type) {
+        if (!running || userId == null) {
+            return false;
+        }
+        if (!pending.containsKey(userId) && pending.size() >= maxUsers) {
+            log.debug("[UPDATE-DEBOUNCE] 等待发布的用户数超出容量 {}, 直接发布, receiver {}", maxUsers, userId);
+            return false;
+        }
+        Pending[] created = new Pending[1];
+        boolean[] full = new boolean[1];
+        Pending current = pending.compute(userId, (k, p) -> {
+            if (p == null) {
+                p = new Pending();
+                created[0] = p;
+            } else {
+                metrics.updateMerged(type);
+            }
+            p.add(ids, MessageTypeRegistry.NOTIFY_DELETED.equals(type));
+            full[0] = p.size() >= maxIds;
+            return p;
+        });
+
+        if (full[0]) {
+            flush(userId, current);
+        } else if (created[0] != null) {
+            try {
+                scheduler.schedule(() -> flush(userId, created[0]), windowMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // 已停止，stop 可能已遍历过，这里自行发布
+                flush(userId, created[0]);
+            }
+        }
+        return true;
+    }
+
+    private void flush(String userId, Pending expected) {
+        // 只发布仍在表中的那一份，已被提前发布后新建的不受旧的定时任务影响
+        if (!pending.remove(userId, expected)) {
+            return;
+        }
+        try {
+            flusher.flush(userId, new ArrayList<>(expected.viewedIds), new ArrayList<>(expected.deletedIds));
+        } catch (Exception e) {
+            log.error("[UPDATE-DEBOUNCE] 发布失败, receiver {}, viewed {}, deleted {}",
+                    userId, expected.viewedIds.size(), expected.deletedIds.size(), e);
+        }
+    }
+
+    /**
+     * 只在 ConcurrentHashMap.compute 中修改，移出表后只读
+     */
+    private static final class Pending {
+        final Set<String> viewedIds = new LinkedHashSet<>();
+        final Set<String> deletedIds = new LinkedHashSet<>();
+
+        void add(List<String> ids, boolean deleted) {
+            if (ids == null) {
+                return;
+            }
+            if (deleted) {
+                deletedIds.addAll(ids);
+                ids.forEach(viewedIds::remove);
+                return;
+            }
+            for (String id : ids) {
+                if (!deletedIds.contains(id)) {
+                    viewedIds.add(id);
+                }
+            }
+        }
+
+        int size() {
+            return viewedIds.size() + deletedIds.size();
+        }
+    }
+}
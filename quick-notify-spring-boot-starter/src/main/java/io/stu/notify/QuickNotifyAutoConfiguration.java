@@ -1,17 +1,48 @@
 package io.stu.notify;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.stu.notify.cluster.ClusterEventBus;
+import io.stu.notify.cluster.PresenceDirectory;
+import io.stu.notify.counter.LocalUnreadCounter;
+import io.stu.notify.counter.RedisUnreadCounter;
+import io.stu.notify.counter.UnreadCounter;
+import io.stu.notify.event.NotifyDeliveryExecutor;
+import io.stu.notify.inbox.LocalOfflineInbox;
+import io.stu.notify.inbox.OfflineInbox;
+import io.stu.notify.inbox.RedisOfflineInbox;
 import io.stu.notify.event.NotifyEventListener;
+import io.stu.notify.metrics.MicrometerNotifyMetrics;
+import io.stu.notify.metrics.NotifyMetrics;
+import io.stu.notify.model.RetentionPolicy;
+import io.stu.notify.repository.CachingNotifyRepository;
 import io.stu.notify.repository.JdbcNotifyRepository;
+import io.stu.notify.repository.LocalReadMarkBuffer;
+import io.stu.notify.repository.LocalRecentMessageCache;
 import io.stu.notify.repository.NotifyRepository;
+import io.stu.notify.repository.NotifyRepositoryDecorator;
+import io.stu.notify.repository.ReadMarkBuffer;
+import io.stu.notify.repository.RecentMessageCache;
+import io.stu.notify.repository.RedisReadMarkBuffer;
+import io.stu.notify.repository.RedisRecentMessageCache;
+import io.stu.notify.repository.WriteBehindNotifyRepository;
+import io.stu.notify.retention.GzipNdjsonArchiver;
+import io.stu.notify.retention.NotifyArchiver;
+import io.stu.notify.retention.NotifyPurger;
+import io.stu.notify.stomp.SessionOutbox;
 import io.stu.notify.stomp.StompWebSocketHandler;
 import io.stu.notify.stomp.StompWebsocketConfig;
 import io.stu.notify.stomp.StompWebsocketInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -20,9 +51,15 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.user.SimpUserRegistry;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.function.Function;
+
 /**
  * Quick Notify 自动配置。
  * <p>
@@ -61,24 +98,276 @@ public class QuickNotifyAutoConfiguration {
                 jdbcTemplate != null, redisson != null);
     }
 
+    /**
+     * 消息仓储，缓存与已读延迟写入由 {@link #notifyRepositoryDecorator} 包装，对自定义仓储同样生效
+     */
     @Bean
     @ConditionalOnMissingBean(NotifyRepository.class)
-    public NotifyRepository notifyRepository() {
+    public NotifyRepository notifyRepository(ObjectProvider<ObjectMapper> objectMapperProvider,
+                                             @Value("${notify.export.fetch-size:500}") int exportFetchSize) {
         log.info("[QuickNotifyAutoConfiguration] 创建 NotifyRepository Bean");
-        return new JdbcNotifyRepository(jdbcTemplate);
+        // 复用应用的 ObjectMapper，历史消息与接口返回使用相同的序列化配置
+        ObjectMapper objectMapper = objectMapperProvider.getIfAvailable(ObjectMapper::new);
+        JdbcNotifyRepository jdbcRepository = new JdbcNotifyRepository(jdbcTemplate, objectMapper);
+        jdbcRepository.setScanFetchSize(exportFetchSize);
+        return jdbcRepository;
     }
 
+    /**
+     * 包装容器中的 {@link NotifyRepository}（包括自定义仓储）：
+     * <ul>
+     *   <li>notify.history-cache.enabled=true 时包装为 {@link CachingNotifyRepository}</li>
+     *   <li>notify.write-behind.enabled=true 时再包装为 {@link WriteBehindNotifyRepository}，
+     *       已读先进入缓冲，写库时经过缓存层更新缓存</li>
+     * </ul>
+     * 单节点模式（stomp.enable-local-ack=true 或未配置 Redisson）缓冲和缓存在本地内存，否则在 Redis。
+     * BeanPostProcessor 需声明为 static，依赖在包装时才解析
+     */
     @Bean
-    public NotifyManager notifyManager(NotifyRepository repository) {
+    public static NotifyRepositoryDecorator notifyRepositoryDecorator(
+            ObjectProvider<org.redisson.api.RedissonClient> redissonProvider,
+            ObjectProvider<ObjectMapper> objectMapperProvider,
+            ObjectProvider<NotifyMetrics> metricsProvider,
+            ObjectProvider<PlatformTransactionManager> transactionManagerProvider,
+            @Value("${stomp.enable-local-ack:false}") boolean enableLocalAck,
+            @Value("${notify.history-cache.enabled:false}") boolean historyCache,
+            @Value("${notify.history-cache.max-messages:50}") int cacheMaxMessages,
+            @Value("${notify.history-cache.max-local-users:10000}") int cacheMaxLocalUsers,
+            @Value("${notify.history-cache.ttl-ms:600000}") long cacheTtlMs,
+            @Value("${notify.write-behind.enabled:false}") boolean writeBehind,
+            @Value("${notify.write-behind.flush-interval-ms:1000}") long flushIntervalMs,
+            @Value("${notify.write-behind.flush-batch-users:500}") int flushBatchUsers,
+            @Value("${notify.write-behind.max-local-ids:100000}") int maxLocalIds,
+            @Value("${notify.write-behind.max-redis-ids:1000000}") int maxRedisIds,
+            @Value("${notify.write-behind.redis-ttl-ms:86400000}") long redisTtlMs) {
+        Function<NotifyRepository, CachingNotifyRepository> caching = !historyCache ? null : repository -> {
+            org.redisson.api.RedissonClient redisson = redissonProvider.getIfAvailable();
+            ObjectMapper objectMapper = objectMapperProvider.getIfAvailable(ObjectMapper::new);
+            RecentMessageCache cache = enableLocalAck || redisson == null
+                    ? new LocalRecentMessageCache(cacheMaxMessages, cacheMaxLocalUsers)
+                    : new RedisRecentMessageCache(redisson, objectMapper, cacheMaxMessages, cacheTtlMs);
+            log.info("[QuickNotifyAutoConfiguration] 历史消息缓存, cache {}", cache.getClass().getSimpleName());
+            CachingNotifyRepository cachingRepository = new CachingNotifyRepository(repository, cache,
+                    cacheMaxMessages, objectMapper);
+            cachingRepository.setMetrics(metricsProvider.getIfAvailable(() -> NotifyMetrics.NOOP));
+            return cachingRepository;
+        };
+        Function<NotifyRepository, WriteBehindNotifyRepository> writeBehindLayer = !writeBehind ? null : repository -> {
+            org.redisson.api.RedissonClient redisson = redissonProvider.getIfAvailable();
+            ReadMarkBuffer buffer = enableLocalAck || redisson == null
+                    ? new LocalReadMarkBuffer(maxLocalIds) : new RedisReadMarkBuffer(redisson, maxRedisIds, redisTtlMs);
+            log.info("[QuickNotifyAutoConfiguration] 已读延迟写入, buffer {}", buffer.getClass().getSimpleName());
+            WriteBehindNotifyRepository writeBehindRepository = new WriteBehindNotifyRepository(repository, buffer,
+                    flushIntervalMs, flushBatchUsers);
+            PlatformTransactionManager transactionManager = transactionManagerProvider.getIfAvailable();
+            if (transactionManager != null) {
+                writeBehindRepository.setTransactionTemplate(new TransactionTemplate(transactionManager));
+            }
+            return writeBehindRepository;
+        };
+        return new NotifyRepositoryDecorator(caching, writeBehindLayer);
+    }
+
+    /**
+     * 推送链路指标：micrometer-core 不在类路径上时不记录（{@link MicrometerMetricsConfiguration} 优先注册）
+     */
+    @Bean
+    @ConditionalOnMissingBean(NotifyMetrics.class)
+    public NotifyMetrics noopNotifyMetrics() {
+        log.info("[QuickNotifyAutoConfiguration] 未引入 Micrometer, 使用空 NotifyMetrics");
+        return NotifyMetrics.NOOP;
+    }
+
+    /**
+     * Micrometer 指标，仅在 micrometer-core 存在时加载，外层配置类不引用 Micrometer 类型
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(MeterRegistry.class)
+    static class MicrometerMetricsConfiguration {
+
+        /**
+         * 推送链路指标，未配置 MeterRegistry 时注册到 Metrics.globalRegistry
+         */
+        @Bean
+        @ConditionalOnMissingBean(NotifyMetrics.class)
+        public NotifyMetrics notifyMetrics(ObjectProvider<MeterRegistry> meterRegistryProvider) {
+            log.info("[QuickNotifyAutoConfiguration] 创建 NotifyMetrics Bean");
+            return new MicrometerNotifyMetrics(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry));
+        }
+    }
+
+    @Bean
+    public NotifyManager notifyManager(NotifyRepository repository,
+                                       NotifyMetrics metrics,
+                                       ObjectProvider<PlatformTransactionManager> transactionManagerProvider,
+                                       ObjectProvider<NotifyGroupCommitter> groupCommitterProvider,
+                                       ObjectProvider<UnreadCounter> unreadCounterProvider,
+                                       ObjectProvider<NotifyUpdateDebouncer> updateDebouncerProvider,
+                                       @Value("${notify.bulk.chunk-size:500}") int bulkChunkSize,
+                                       @Value("${notify.unread-counter.push-count:false}") boolean pushUnreadCount) {
         log.info("[QuickNotifyAutoConfiguration] 创建 NotifyManager Bean");
-        return new NotifyManager(repository, eventPublisher);
+        NotifyManager manager = new NotifyManager(repository, eventPublisher);
+        PlatformTransactionManager transactionManager = transactionManagerProvider.getIfAvailable();
+        if (transactionManager != null) {
+            manager.setTransactionTemplate(new TransactionTemplate(transactionManager));
+        }
+        manager.setGroupCommitter(groupCommitterProvider.getIfAvailable());
+        manager.setBulkChunkSize(bulkChunkSize);
+        manager.setUnreadCounter(unreadCounterProvider.getIfAvailable());
+        manager.setPushUnreadCount(pushUnreadCount);
+        manager.setUpdateDebouncer(updateDebouncerProvider.getIfAvailable());
+        manager.setMetrics(metrics);
+        return manager;
+    }
+
+    /**
+     * 组提交写入器，配置 notify.group-commit.enabled=true 时生效
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "notify.group-commit", name = "enabled", havingValue = "true")
+    public NotifyGroupCommitter notifyGroupCommitter(
+            NotifyRepository repository,
+            ObjectProvider<PlatformTransactionManager> transactionManagerProvider,
+            @Value("${notify.group-commit.max-batch-size:200}") int maxBatchSize,
+            @Value("${notify.group-commit.linger-ms:0}") long lingerMs,
+            @Value("${notify.group-commit.queue-capacity:10000}") int queueCapacity,
+            @Value("${notify.group-commit.wait-timeout-ms:30000}") long waitTimeoutMs) {
+        PlatformTransactionManager transactionManager = transactionManagerProvider.getIfAvailable();
+        if (transactionManager == null) {
+            throw new IllegalStateException("notify.group-commit 需要 PlatformTransactionManager");
+        }
+        log.info("[QuickNotifyAutoConfiguration] 创建 NotifyGroupCommitter Bean");
+        NotifyGroupCommitter committer = new NotifyGroupCommitter(repository, eventPublisher,
+                new TransactionTemplate(transactionManager), maxBatchSize, lingerMs, queueCapacity);
+        committer.setWaitTimeoutMs(waitTimeoutMs);
+        return committer;
+    }
+
+    /**
+     * 已读 / 删除状态变更防抖，配置 notify.update-debounce.enabled=true 时生效
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "notify.update-debounce", name = "enabled", havingValue = "true")
+    public NotifyUpdateDebouncer notifyUpdateDebouncer(
+            NotifyMetrics metrics,
+            @Value("${notify.update-debounce.window-ms:200}") long windowMs,
+            @Value("${notify.update-debounce.max-ids:500}") int maxIds,
+            @Value("${notify.update-debounce.max-users:100000}") int maxUsers) {
+        log.info("[QuickNotifyAutoConfiguration] 创建 NotifyUpdateDebouncer Bean");
+        NotifyUpdateDebouncer debouncer = new NotifyUpdateDebouncer(windowMs, maxIds, maxUsers);
+        debouncer.setMetrics(metrics);
+        return debouncer;
+    }
+
+    /**
+     * 过期消息清理，配置 notify.retention.enabled=true 时生效。
+     * 配置 notify.retention.archive-dir 或定义 {@link NotifyArchiver} Bean 时删除前先归档；
+     * 集群模式（未配置 stomp.enable-local-ack=true 且存在 Redisson）同一时间只有一个节点清理
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "notify.retention", name = "enabled", havingValue = "true")
+    public NotifyPurger notifyPurger(
+            NotifyRepository repository,
+            NotifyMetrics metrics,
+            ObjectProvider<NotifyArchiver> archiverProvider,
+            ObjectProvider<UnreadCounter> unreadCounterProvider,
+            ObjectProvider<PlatformTransactionManager> transactionManagerProvider,
+            ObjectProvider<ObjectMapper> objectMapperProvider,
+            @Value("${stomp.enable-local-ack:false}") boolean enableLocalAck,
+            @Value("${notify.retention.read-ttl-days:30}") long readTtlDays,
+            @Value("${notify.retention.unread-ttl-days:180}") long unreadTtlDays,
+            @Value("${notify.retention.interval-ms:3600000}") long intervalMs,
+            @Value("${notify.retention.chunk-size:500}") int chunkSize,
+            @Value("${notify.retention.pause-ms:200}") long pauseMs,
+            @Value("${notify.retention.archive-dir:}") String archiveDir) {
+        log.info("[QuickNotifyAutoConfiguration] 创建 NotifyPurger Bean");
+        NotifyPurger purger = new NotifyPurger(repository, RetentionPolicy.ofDays(readTtlDays, unreadTtlDays),
+                intervalMs, chunkSize, pauseMs);
+        purger.setArchiver(archiverProvider.getIfAvailable(() -> archiveDir.isBlank() ? null
+                : new GzipNdjsonArchiver(Path.of(archiveDir), objectMapperProvider.getIfAvailable(ObjectMapper::new))));
+        purger.setUnreadCounter(unreadCounterProvider.getIfAvailable());
+        PlatformTransactionManager transactionManager = transactionManagerProvider.getIfAvailable();
+        if (transactionManager != null) {
+            purger.setTransactionTemplate(new TransactionTemplate(transactionManager));
+        }
+        if (!enableLocalAck && redisson != null) {
+            purger.setRedisson(redisson);
+        }
+        purger.setMetrics(metrics);
+        return purger;
+    }
+
+    /**
+     * 未读计数器，配置 notify.unread-counter.enabled=true 时生效。
+     * 单节点模式（stomp.enable-local-ack=true 或未配置 Redisson）使用本地内存，否则使用 Redis。
+     */
+    @Bean
+    @ConditionalOnMissingBean(UnreadCounter.class)
+    @ConditionalOnProperty(prefix = "notify.unread-counter", name = "enabled", havingValue = "true")
+    public UnreadCounter unreadCounter(
+            @Value("${stomp.enable-local-ack:false}") boolean enableLocalAck,
+            @Value("${notify.unread-counter.ttl-ms:300000}") long ttlMs,
+            @Value("${notify.unread-counter.max-local-entries:100000}") int maxLocalEntries) {
+        if (enableLocalAck || redisson == null) {
+            log.info("[QuickNotifyAutoConfiguration] 创建 LocalUnreadCounter Bean");
+            return new LocalUnreadCounter(ttlMs, maxLocalEntries);
+        }
+        log.info("[QuickNotifyAutoConfiguration] 创建 RedisUnreadCounter Bean");
+        return new RedisUnreadCounter(redisson, ttlMs);
+    }
+
+    /**
+     * 离线收件箱，配置 stomp.offline-inbox.enabled=true 时生效。
+     * 单节点模式（stomp.enable-local-ack=true 或未配置 Redisson）使用本地内存；
+     * 集群模式使用 Redis，并需要在线目录判断用户是否在所有节点都不在线
+     */
+    @Bean
+    @ConditionalOnMissingBean(OfflineInbox.class)
+    @ConditionalOnProperty(prefix = "stomp.offline-inbox", name = "enabled", havingValue = "true")
+    public OfflineInbox offlineInbox(
+            ObjectProvider<ObjectMapper> objectMapperProvider,
+            @Value("${stomp.enable-local-ack:false}") boolean enableLocalAck,
+            @Value("${stomp.presence.enabled:false}") boolean presenceEnabled,
+            @Value("${stomp.offline-inbox.max-messages:100}") int maxMessages,
+            @Value("${stomp.offline-inbox.ttl-ms:86400000}") long ttlMs,
+            @Value("${stomp.offline-inbox.max-local-users:100000}") int maxLocalUsers) {
+        if (enableLocalAck || redisson == null) {
+            log.info("[QuickNotifyAutoConfiguration] 创建 LocalOfflineInbox Bean");
+            return new LocalOfflineInbox(maxMessages, ttlMs, maxLocalUsers);
+        }
+        if (!presenceEnabled) {
+            throw new IllegalStateException("stomp.offline-inbox 集群模式需要 stomp.presence.enabled=true");
+        }
+        log.info("[QuickNotifyAutoConfiguration] 创建 RedisOfflineInbox Bean");
+        return new RedisOfflineInbox(redisson, objectMapperProvider.getIfAvailable(ObjectMapper::new),
+                maxMessages, ttlMs);
+    }
+
+    /**
+     * 每个 session 的出站队列，配置 stomp.outbound.enabled=true 时生效
+     */
+    @Bean
+    @ConditionalOnMissingBean(SessionOutbox.class)
+    @ConditionalOnProperty(prefix = "stomp.outbound", name = "enabled", havingValue = "true")
+    public SessionOutbox sessionOutbox(
+            NotifyMetrics metrics,
+            @Value("${stomp.outbound.max-in-flight:16}") int maxInFlight,
+            @Value("${stomp.outbound.queue-capacity:256}") int queueCapacity,
+            @Value("${stomp.outbound.overflow-policy:DROP_NEWEST}") SessionOutbox.OverflowPolicy overflowPolicy,
+            @Value("${stomp.outbound.low-priority-types:}") Set<String> lowPriorityTypes) {
+        log.info("[QuickNotifyAutoConfiguration] 创建 SessionOutbox Bean, maxInFlight {}, queueCapacity {}, policy {}",
+                maxInFlight, queueCapacity, overflowPolicy);
+        return new SessionOutbox(maxInFlight, queueCapacity, overflowPolicy, lowPriorityTypes, metrics);
     }
 
     @Bean
     @ConditionalOnMissingBean(ChannelInterceptor.class)
-    public StompWebsocketInterceptor stompWebsocketInterceptor() {
+    public StompWebsocketInterceptor stompWebsocketInterceptor(ObjectProvider<StompWebSocketHandler> handlerProvider) {
         log.info("[QuickNotifyAutoConfiguration] 创建 StompWebsocketInterceptor Bean");
-        return new StompWebsocketInterceptor(userRegistryProvider);
+        StompWebsocketInterceptor interceptor = new StompWebsocketInterceptor(userRegistryProvider);
+        interceptor.setStompWebSocketHandlerProvider(handlerProvider);
+        return interceptor;
     }
 
     @Bean
@@ -91,6 +380,62 @@ public class QuickNotifyAutoConfiguration {
         return handler;
     }
 
+    /**
+     * 在线目录，配置 stomp.presence.enabled=true 时生效（需要 Redisson），
+     * 集群事件只发往接收者所在节点
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "stomp.presence", name = "enabled", havingValue = "true")
+    public PresenceDirectory presenceDirectory(@Value("${stomp.presence.lease-ms:60000}") long leaseMs) {
+        if (redisson == null) {
+            throw new IllegalStateException("stomp.presence 需要 RedissonClient");
+        }
+        log.info("[QuickNotifyAutoConfiguration] 创建 PresenceDirectory Bean");
+        return new PresenceDirectory(redisson, stompWebSocketHandler().getNodeId(), leaseMs);
+    }
+
+    /**
+     * 微批集群事件总线，配置 stomp.cluster-bus.enabled=true 时生效（需要 Redisson）
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "stomp.cluster-bus", name = "enabled", havingValue = "true")
+    public ClusterEventBus clusterEventBus(
+            NotifyMetrics metrics,
+            @Value("${stomp.cluster-bus.max-batch-size:100}") int maxBatchSize,
+            @Value("${stomp.cluster-bus.linger-ms:5}") long lingerMs,
+            @Value("${stomp.cluster-bus.queue-capacity:10000}") int queueCapacity,
+            @Value("${stomp.cluster-bus.max-attempts:3}") int maxAttempts,
+            @Value("${stomp.cluster-bus.retry-backoff-ms:100}") long retryBackoffMs) {
+        if (redisson == null) {
+            throw new IllegalStateException("stomp.cluster-bus 需要 RedissonClient");
+        }
+        log.info("[QuickNotifyAutoConfiguration] 创建 ClusterEventBus Bean");
+        ClusterEventBus bus = new ClusterEventBus(redisson, maxBatchSize, lingerMs, queueCapacity);
+        bus.setMetrics(metrics);
+        bus.setRetry(maxAttempts, retryBackoffMs);
+        return bus;
+    }
+
+    /**
+     * 消息投递执行器：virtual（虚拟线程）或 pool（平台线程池），有界，满时拖慢发布方；
+     * 同一接收者的推送在同一车道内按顺序执行
+     */
+    @Bean
+    @ConditionalOnMissingBean(NotifyDeliveryExecutor.class)
+    public NotifyDeliveryExecutor notifyDeliveryExecutor(
+            NotifyMetrics metrics,
+            @Value("${notify.delivery.mode:virtual}") String mode,
+            @Value("${notify.delivery.threads:16}") int threads,
+            @Value("${notify.delivery.lanes:256}") int lanes,
+            @Value("${notify.delivery.queue-capacity:10000}") int queueCapacity,
+            @Value("${notify.delivery.block-timeout-ms:1000}") long blockTimeoutMs) {
+        log.info("[QuickNotifyAutoConfiguration] 创建 NotifyDeliveryExecutor Bean");
+        NotifyDeliveryExecutor executor = new NotifyDeliveryExecutor(
+                NotifyDeliveryExecutor.Mode.valueOf(mode.trim().toUpperCase()), threads, lanes, queueCapacity, blockTimeoutMs);
+        metrics.bindDelivery(executor);
+        return executor;
+    }
+
     @Bean
     public NotifyEventListener stompNotifyEventListener() {
         log.info("[QuickNotifyAutoConfiguration] 创建 NotifyEventListener Bean");
@@ -107,11 +452,13 @@ public class QuickNotifyAutoConfiguration {
      */
     @Bean
     @ConditionalOnMissingBean(WebSocketMessageBrokerConfigurer.class)
-    public WebSocketMessageBrokerConfigurer stompWebsocketConfig() {
+    public WebSocketMessageBrokerConfigurer stompWebsocketConfig(ObjectProvider<StompWebSocketHandler> handlerProvider,
+                                                                 ObjectProvider<SessionOutbox> sessionOutboxProvider) {
         log.info("[QuickNotifyAutoConfiguration] 创建 StompWebsocketConfig Bean");
         StompWebsocketConfig config = new StompWebsocketConfig();
         // 注入拦截器
-        config.setChannelInterceptor(stompWebsocketInterceptor());
+        config.setChannelInterceptor(stompWebsocketInterceptor(handlerProvider));
+        config.setSessionOutbox(sessionOutboxProvider.getIfAvailable());
         return config;
     }
 
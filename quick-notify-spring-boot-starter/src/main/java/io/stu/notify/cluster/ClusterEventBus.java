@@ -0,0 +1,163 @@
+package io.stu.notify.cluster;
+
+import io.stu.notify.MicroBatcher;
+import io.stu.notify.metrics.NotifyMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RFuture;
+import org.redisson.api.RedissonClient;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 微批集群事件总线（可选，配置 stomp.cluster-bus.enabled=true 开启）。
+ * <p>
+ * 发送端：事件先进入缓冲队列，后台线程（{@link MicroBatcher}）在 linger 时间窗口内或攒满 batch 后按主题合并，
+ * 每个主题一次 PUBLISH 发出 {@link ClusterEventEnvelope}；窗口内只有一条事件时直接发出原事件。
+ * 各主题的 PUBLISH 异步发出、一起等待，失败的主题按 retryBackoffMs 递增退避重发，最多 maxAttempts 次，
+ * 仍失败则丢弃该主题的事件并计入 {@code quick_notify.cluster.events{outcome=dropped}}；成功的主题不会重发。
+ * 接收端：在 Redisson 的监听线程中按顺序拆开信封逐条回调，回调方负责把耗时的推送交给投递执行器，
+ * 这样同一主题上的事件保持发布顺序。
+ */
+@Slf4j
+public class ClusterEventBus {
+
+    private final RedissonClient redisson;
+    private final MicroBatcher<Outbound> batcher;
+
+    private NotifyMetrics metrics = NotifyMetrics.NOOP;
+    private int maxAttempts = 3;
+    private long retryBackoffMs = 100;
+
+    public ClusterEventBus(RedissonClient redisson, int maxBatchSize, long lingerMs, int queueCapacity) {
+        if (maxBatchSize <= 0 || lingerMs < 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("ClusterEventBus: 非法参数, maxBatchSize=" + maxBatchSize
+                    + ", lingerMs=" + lingerMs + ", queueCapacity=" + queueCapacity);
+        }
+        this.redisson = redisson;
+        this.batcher = new MicroBatcher<>("quick-notify-cluster-bus", maxBatchSize, lingerMs, queueCapacity,
+                new MicroBatcher.Handler<>() {
+                    @Override
+                    public void flush(List<Outbound> batch) throws InterruptedException {
+                        ClusterEventBus.this.flush(batch);
+                    }
+
+                    @Override
+                    public void abandon(List<Outbound> events, Throwable cause) {
+                        dropped(events.size(), cause);
+                    }
+                });
+    }
+
+    public void setMetrics(NotifyMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 每个主题的最多发送次数（含首次）与重试退避基数
+     */
+    public void setRetry(int maxAttempts, long retryBackoffMs) {
+        if (maxAttempts <= 0 || retryBackoffMs < 0) {
+            throw new IllegalArgumentException("ClusterEventBus: 非法参数, maxAttempts=" + maxAttempts
+                    + ", retryBackoffMs=" + retryBackoffMs);
+        }
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMs = retryBackoffMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        batcher.start();
+        log.info("[CLUSTER-BUS] 启动, maxBatchSize {}, lingerMs {}, maxAttempts {}",
+                batcher.getMaxBatchSize(), batcher.getLingerMs(), maxAttempts);
+    }
+
+    @PreDestroy
+    public void stop() {
+        int abandoned = batcher.stop(TimeUnit.SECONDS.toMillis(10));
+        log.info("[CLUSTER-BUS] 已停止, 未发送 {}", abandoned);
+    }
+
+    /**
+     * 发布事件到主题，队列满或总线未启动时直接发送
+     *
+     * @param topic 主题名
+     * @param event 事件
+     */
+    public void publish(String topic, Object event) {
+        if (!batcher.offer(new Outbound(topic, event))) {
+            redisson.getTopic(topic).publish(event);
+        }
+    }
+
+    /**
+     * 订阅主题上的信封，拆开后按顺序逐条回调
+     *
+     * @param topic   主题名
+     * @param handler 单条事件处理
+     */
+    public void subscribe(String topic, Consumer<Object> handler) {
+        redisson.getTopic(topic).addListener(ClusterEventEnvelope.class,
+                (channel, envelope) -> dispatch(envelope, handler));
+    }
+
+    private void dispatch(ClusterEventEnvelope envelope, Consumer<Object> handler) {
+        for (Object event : envelope.events()) {
+            try {
+                handler.accept(event);
+            } catch (Exception e) {
+                log.error("[CLUSTER-BUS] 事件处理异常, event {}", event.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    private void flush(List<Outbound> batch) throws InterruptedException {
+        Map<String, List<Object>> byTopic = new LinkedHashMap<>();
+        for (Outbound outbound : batch) {
+            byTopic.computeIfAbsent(outbound.topic(), k -> new ArrayList<>()).add(outbound.event());
+        }
+        // 各主题异步发出后一起等待，只重发失败的主题；本批次完成后才处理下一批，批次之间保持顺序
+        for (int attempt = 1; ; attempt++) {
+            Map<String, RFuture<Long>> futures = new LinkedHashMap<>();
+            byTopic.forEach((topic, events) -> futures.put(topic,
+                    redisson.getTopic(topic).publishAsync(events.size() == 1 ? events.get(0) : new ClusterEventEnvelope(events))));
+            Throwable lastError = null;
+            for (Map.Entry<String, RFuture<Long>> entry : futures.entrySet()) {
+                try {
+                    entry.getValue().toCompletableFuture().join();
+                    byTopic.remove(entry.getKey());
+                } catch (Exception e) {
+                    lastError = e;
+                }
+            }
+            if (byTopic.isEmpty()) {
+                log.debug("[CLUSTER-BUS] 批次发送完成, events {}, topics {}, attempts {}",
+                        batch.size(), futures.size(), attempt);
+                return;
+            }
+            int failed = byTopic.values().stream().mapToInt(List::size).sum();
+            if (attempt >= maxAttempts) {
+                log.error("[CLUSTER-BUS] 重试 {} 次后仍失败, topics {}", attempt, byTopic.keySet());
+                dropped(failed, lastError);
+                return;
+            }
+            log.warn("[CLUSTER-BUS] 发送失败, 准备重试, topics {}, events {}, attempt {}: {}",
+                    byTopic.size(), failed, attempt, lastError.getMessage());
+            Thread.sleep(retryBackoffMs * attempt);
+        }
+    }
+
+    private void dropped(int count, Throwable cause) {
+        metrics.clusterEventDropped(count);
+        log.error("[CLUSTER-BUS] 事件未能发送, 丢弃 {}: {}", count, cause != null ? cause.getMessage() : null);
+    }
+
+    private record Outbound(String topic, Object event) {
+    }
+}
@@ -0,0 +1,11 @@
+package io.stu.notify.cluster;
+
+import java.util.List;
+
+/**
+ * 集群事件信封：同一主题在一个 linger 窗口内的多条事件合并为一次 PUBLISH。
+ *
+ * @param events 事件列表，保持发布顺序
+ */
+public record ClusterEventEnvelope(List<Object> events) {
+}
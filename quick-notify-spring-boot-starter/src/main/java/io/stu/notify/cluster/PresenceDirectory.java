@@ -0,0 +1,249 @@
+package io.stu.notify.cluster;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.BatchResult;
+import org.redisson.api.RBatch;
+import org.redisson.api.RMapAsync;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在线目录（集群模式）：记录用户的 session 分布在哪些节点上。
+ * <p>
+ * 每个用户一个 Hash {@code stomp::presence::{userId}}，field 为节点 ID，value 为租约到期时间。
+ * 节点在用户连接/断开时立即更新，并定时续租当前节点上的全部在线用户；
+ * 节点异常退出后其租约自然过期，查询时顺带清理。
+ */
+@Slf4j
+public class PresenceDirectory {
+
+    private static final String KEY_PREFIX = "stomp::presence::";
+
+    private static final String LOOKUP_SCRIPT = """
+            local all = redis.call('hgetall', KEYS[1])
+            local now = tonumber(ARGV[1])
+            local result = {}
+            for i = 1, #all, 2 do
+                if tonumber(all[i + 1]) > now then
+                    result[#result + 1] = all[i]
+                else
+                    redis.call('hdel', KEYS[1], all[i])
+                end
+            end
+            return result
+            """;
+
+    private final RedissonClient redisson;
+    private final String nodeId;
+    private final long leaseMs;
+
+    // 当前节点在线用户 -> session 集合
+    private final ConcurrentHashMap<String, Set<String>> localUsers = new ConcurrentHashMap<>();
+    private ScheduledExecutorService renewer;
+
+    /**
+     * @param redisson Redisson 客户端
+     * @param nodeId   当前节点 ID
+     * @param leaseMs  租约时长，每 leaseMs/3 续租一次
+     */
+    public PresenceDirectory(RedissonClient redisson, String nodeId, long leaseMs) {
+        this.redisson = redisson;
+        this.nodeId = nodeId;
+        this.leaseMs = leaseMs;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (renewer != null) {
+            return;
+        }
+        renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "quick-notify-presence");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(leaseMs / 3, 1);
+        renewer.scheduleWithFixedDelay(this::renewAll, period, period, TimeUnit.MILLISECONDS);
+        log.info("[PRESENCE] 启动, node {}, leaseMs {}", nodeId, leaseMs);
+    }
+
+    /**
+     * 停止续租并从目录中移除当前节点上的全部用户
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (renewer == null) {
+            return;
+        }
+        renewer.shutdownNow();
+        renewer = null;
+        try {
+            RBatch batch = redisson.createBatch();
+            localUsers.keySet().forEach(userId -> batch.getMap(KEY_PREFIX + userId, StringCodec.INSTANCE).fastRemoveAsync(nodeId));
+            batch.execute();
+        } catch (Exception e) {
+            log.warn("[PRESENCE] 下线清理失败, node {}: {}", nodeId, e.getMessage());
+        }
+        localUsers.clear();
+    }
+
+    @EventListener
+    public void onSessionConnected(SessionConnectedEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        Principal user = event.getUser();
+        if (sessionId == null || user == null) {
+            return;
+        }
+        userConnected(user.getName(), sessionId);
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        Principal user = event.getUser();
+        if (user != null) {
+            userDisconnected(user.getName(), event.getSessionId());
+        }
+    }
+
+    /**
+     * 用户在当前节点新增 session，首个 session 时立即写入目录
+     */
+    public void userConnected(String userId, String sessionId) {
+        boolean[] first = new boolean[1];
+        localUsers.compute(userId, (k, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+                first[0] = true;
+            }
+            sessions.add(sessionId);
+            return sessions;
+        });
+        if (first[0]) {
+            renew(userId);
+        }
+    }
+
+    /**
+     * 用户在当前节点的 session 断开，最后一个 session 断开时立即从目录移除
+     */
+    public void userDisconnected(String userId, String sessionId) {
+        boolean[] last = new boolean[1];
+        localUsers.computeIfPresent(userId, (k, sessions) -> {
+            sessions.remove(sessionId);
+            last[0] = sessions.isEmpty();
+            return last[0] ? null : sessions;
+        });
+        if (last[0]) {
+            // 与同一用户的并发重连交错时可能误删，下一次续租即恢复
+            redisson.getMap(KEY_PREFIX + userId, StringCodec.INSTANCE).fastRemove(nodeId);
+        }
+    }
+
+    /**
+     * 查询用户所在节点
+     *
+     * @return 节点 ID 集合，目录中没有记录时为空
+     */
+    public Set<String> nodesOf(String userId) {
+        String key = KEY_PREFIX + userId;
+        List<Object> nodes = redisson.getScript(StringCodec.INSTANCE).eval(key, RScript.Mode.READ_WRITE, LOOKUP_SCRIPT,
+                RScript.ReturnType.MULTI, List.of(key), System.currentTimeMillis());
+        return toSet(nodes);
+    }
+
+    /**
+     * 批量查询用户所在节点，一次 pipeline 提交
+     *
+     * @return 用户 -> 节点 ID 集合，目录中没有记录的用户不在结果中
+     */
+    public Map<String, Set<String>> nodesOf(Collection<String> userIds) {
+        List<String> users = new ArrayList<>(new LinkedHashSet<>(userIds));
+        Map<String, Set<String>> result = new HashMap<>();
+        if (users.isEmpty()) {
+            return result;
+        }
+        long now = System.currentTimeMillis();
+        RBatch batch = redisson.createBatch();
+        for (String userId : users) {
+            String key = KEY_PREFIX + userId;
+            batch.getScript(StringCodec.INSTANCE).evalAsync(key, RScript.Mode.READ_WRITE, LOOKUP_SCRIPT,
+                    RScript.ReturnType.MULTI, List.of(key), now);
+        }
+        BatchResult<?> responses = batch.execute();
+        for (int i = 0; i < users.size(); i++) {
+            Set<String> nodes = toSet((List<?>) responses.getResponses().get(i));
+            if (!nodes.isEmpty()) {
+                result.put(users.get(i), nodes);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 续租当前节点上的全部在线用户
+     */
+    public void renewAll() {
+        try {
+            if (localUsers.isEmpty()) {
+                return;
+            }
+            long expireAt = System.currentTimeMillis() + leaseMs;
+            RBatch batch = redisson.createBatch();
+            for (String userId : localUsers.keySet()) {
+                putLease(batch, userId, expireAt);
+            }
+            batch.execute();
+            log.debug("[PRESENCE] 续租完成, node {}, users {}", nodeId, localUsers.size());
+        } catch (Exception e) {
+            log.error("[PRESENCE] 续租异常, node {}", nodeId, e);
+        }
+    }
+
+    private void renew(String userId) {
+        RBatch batch = redisson.createBatch();
+        putLease(batch, userId, System.currentTimeMillis() + leaseMs);
+        batch.execute();
+    }
+
+    private void putLease(RBatch batch, String userId, long expireAt) {
+        RMapAsync<String, String> map = batch.getMap(KEY_PREFIX + userId, StringCodec.INSTANCE);
+        map.fastPutAsync(nodeId, String.valueOf(expireAt));
+        map.expireAsync(Duration.ofMillis(leaseMs));
+    }
+
+    private static Set<String> toSet(List<?> nodes) {
+        if (nodes == null || nodes.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> result = new LinkedHashSet<>(nodes.size());
+        for (Object node : nodes) {
+            result.add(String.valueOf(node));
+        }
+        return result;
+    }
+}
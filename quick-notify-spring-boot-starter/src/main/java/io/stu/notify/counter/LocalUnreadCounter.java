@@ -0,0 +1,62 @@
+package io.stu.notify.counter;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * 本地内存未读计数器（单节点模式）。
+ * 计数在 ttlMs 后过期重建，以修正并发重建与增量更新交错带来的漂移。
+ */
+@Slf4j
+public class LocalUnreadCounter implements UnreadCounter {
+
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final long ttlMs;
+    private final int maxEntries;
+
+    public LocalUnreadCounter(long ttlMs, int maxEntries) {
+        this.ttlMs = ttlMs;
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    public long get(String userId, LongSupplier loader) {
+        Counter counter = counters.get(userId);
+        if (counter != null && !counter.isExpired(System.currentTimeMillis())) {
+            return counter.value;
+        }
+        if (counters.size() >= maxEntries) {
+            // 超出容量时整体清空，计数按需重建
+            log.info("[UNREAD-LOCAL] 计数缓存超出容量 {}, 清空重建", maxEntries);
+            counters.clear();
+        }
+        long loaded = loader.getAsLong();
+        counters.put(userId, new Counter(loaded, System.currentTimeMillis() + ttlMs));
+        return loaded;
+    }
+
+    @Override
+    public Long add(String userId, long delta) {
+        Counter counter = counters.computeIfPresent(userId, (k, c) -> {
+            long next = c.value + delta;
+            return next < 0 ? null : new Counter(next, c.expireAt);
+        });
+        if (counter == null || counter.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+        return counter.value;
+    }
+
+    @Override
+    public void evict(String userId) {
+        counters.remove(userId);
+    }
+
+    private record Counter(long value, long expireAt) {
+        boolean isExpired(long now) {
+            return now >= expireAt;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package io.stu.notify.counter;
+
+import org.redisson.api.RBatch;
+import org.redisson.api.RBucket;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Redis 未读计数器（集群模式）。
+ * <p>
+ * 每个用户一个计数 key，重建时写入并设置 TTL，增量更新通过脚本仅在 key 存在时执行，
+ * 计数变为负数视为漂移并删除，TTL 到期后自动从数据库重建。
+ */
+public class RedisUnreadCounter implements UnreadCounter {
+
+    private static final String KEY_PREFIX = "notify::unread::";
+
+    private static final String ADD_IF_EXISTS_SCRIPT = """
+            if redis.call('exists', KEYS[1]) == 0 then
+                return nil
+            end
+            local v = redis.call('incrby', KEYS[1], ARGV[1])
+            if v < 0 then
+                redis.call('del', KEYS[1])
+                return nil
+            end
+            return v
+            """;
+
+    private final RedissonClient redisson;
+    private final Duration ttl;
+
+    public RedisUnreadCounter(RedissonClient redisson, long ttlMs) {
+        this.redisson = redisson;
+        this.ttl = Duration.ofMillis(ttlMs);
+    }
+
+    @Override
+    public long get(String userId, LongSupplier loader) {
+        RBucket<Long> bucket = redisson.getBucket(KEY_PREFIX + userId, LongCodec.INSTANCE);
+        Long cached = bucket.get();
+        if (cached != null) {
+            return cached;
+        }
+        long loaded = loader.getAsLong();
+        bucket.setIfAbsent(loaded, ttl);
+        return loaded;
+    }
+
+    @Override
+    public Long add(String userId, long delta) {
+        String key = KEY_PREFIX + userId;
+        return redisson.getScript(LongCodec.INSTANCE).eval(key, RScript.Mode.READ_WRITE, ADD_IF_EXISTS_SCRIPT,
+                RScript.ReturnType.INTEGER, List.of(key), delta);
+    }
+
+    @Override
+    public void addAll(Collection<String> userIds, long delta) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        // 一次 pipeline 提交，避免批量发送时逐个往返
+        RBatch batch = redisson.createBatch();
+        for (String userId : userIds) {
+            String key = KEY_PREFIX + userId;
+            batch.getScript(LongCodec.INSTANCE).evalAsync(key, RScript.Mode.READ_WRITE, ADD_IF_EXISTS_SCRIPT,
+                    RScript.ReturnType.INTEGER, List.of(key), delta);
+        }
+        batch.execute();
+    }
+
+    @Override
+    public void evict(String userId) {
+        redisson.getBucket(KEY_PREFIX + userId, LongCodec.INSTANCE).delete();
+    }
+}
@@ -0,0 +1,50 @@
+package io.stu.notify.counter;
+
+import java.util.Collection;
+import java.util.function.LongSupplier;
+
+/**
+ * 用户未读数计数器。
+ * <p>
+ * 计数由 {@link io.stu.notify.NotifyManager} 在写入、已读、删除时增量维护；
+ * 未命中、过期或检测到漂移（计数为负）时通过 loader 从数据库重建。
+ */
+public interface UnreadCounter {
+
+    /**
+     * 获取用户未读数，未命中时调用 loader 加载并缓存
+     *
+     * @param userId 用户ID
+     * @param loader 从数据库统计未读数
+     * @return 未读数
+     */
+    long get(String userId, LongSupplier loader);
+
+    /**
+     * 仅在计数已存在时增加 delta（可为负数）
+     *
+     * @param userId 用户ID
+     * @param delta  增量
+     * @return 更新后的未读数，计数不存在或已失效时返回 null
+     */
+    Long add(String userId, long delta);
+
+    /**
+     * 批量为多个用户增加 delta，仅对已存在的计数生效
+     *
+     * @param userIds 用户ID列表
+     * @param delta   增量
+     */
+    default void addAll(Collection<String> userIds, long delta) {
+        for (String userId : userIds) {
+            add(userId, delta);
+        }
+    }
+
+    /**
+     * 使用户计数失效，下次读取时重建
+     *
+     * @param userId 用户ID
+     */
+    void evict(String userId);
+}
@@ -0,0 +1,73 @@
+package io.stu.notify.event;
+
+import io.stu.notify.repository.NotifyMessageLog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量消息事件：同一份消息内容发送给一批接收者。
+ * <p>
+ * 只携带一份 {@code template}（共享的 type/data/created）和接收者列表，
+ * 第 i 个接收者的消息 ID 为 {@code template.id + "-" + (offset + i)}，各节点按需在本地还原单条消息。
+ * 按节点拆分后的子批次接收者不再连续，由 {@code seqs} 给出每个接收者的序号。
+ */
+public record NotifyBatchEvent(NotifyMessageLog template, int offset, List<String> receivers, List<Integer> seqs) {
+
+    public NotifyBatchEvent(NotifyMessageLog template, int offset, List<String> receivers) {
+        this(template, offset, receivers, null);
+    }
+
+    /**
+     * 还原第 index 个接收者的消息
+     *
+     * @param index 在 {@link #receivers()} 中的下标
+     * @return 消息
+     */
+    public NotifyMessageLog messageAt(int index) {
+        return messageOf(template, seqAt(index), receivers.get(index));
+    }
+
+    /**
+     * 第 index 个接收者在整个批次中的序号
+     */
+    public int seqAt(int index) {
+        return seqs != null ? seqs.get(index) : offset + index;
+    }
+
+    /**
+     * 取出部分接收者组成子批次
+     *
+     * @param indexes 在 {@link #receivers()} 中的下标
+     * @return 子批次
+     */
+    public NotifyBatchEvent subset(List<Integer> indexes) {
+        List<String> subReceivers = new ArrayList<>(indexes.size());
+        List<Integer> subSeqs = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            subReceivers.add(receivers.get(index));
+            subSeqs.add(seqAt(index));
+        }
+        return new NotifyBatchEvent(template, offset, subReceivers, subSeqs);
+    }
+
+    /**
+     * 根据模板构造单个接收者的消息
+     *
+     * @param template 消息模板
+     * @param seq      接收者在整个批次中的序号
+     * @param receiver 接收者
+     * @return 消息
+     */
+    public static NotifyMessageLog messageOf(NotifyMessageLog template, int seq, String receiver) {
+        NotifyMessageLog msg = new NotifyMessageLog();
+        msg.setId(template.getId() + "-" + seq);
+        msg.setType(template.getType());
+        msg.setReceiver(receiver);
+        msg.setData(template.getData());
+        msg.setViewed(template.isViewed());
+        msg.setCreated(template.getCreated());
+        msg.setLastModified(template.getCreated());
+        return msg;
+    }
+}
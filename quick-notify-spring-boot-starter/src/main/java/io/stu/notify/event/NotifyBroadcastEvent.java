@@ -0,0 +1,9 @@
+package io.stu.notify.event;
+
+import io.stu.notify.model.NotifyMessage;
+
+/**
+ * 广播事件：推送给集群内全部在线用户，每个节点只推送本节点的 session，不持久化
+ */
+public record NotifyBroadcastEvent(NotifyMessage message) {
+}
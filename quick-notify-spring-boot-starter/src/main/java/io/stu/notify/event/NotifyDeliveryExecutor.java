@@ -0,0 +1,333 @@
+package io.stu.notify.event;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 消息投递执行器：{@link NotifyEventListener} 在事务提交后把推送任务交给它执行。
+ * <p>
+ * 两种模式（notify.delivery.mode）：
+ * <ul>
+ *   <li>{@code virtual}：每个任务一个虚拟线程</li>
+ *   <li>{@code pool}：固定大小的平台线程池</li>
+ * </ul>
+ * 排队 + 执行中的任务数不超过 queue-capacity。满时提交方最多等待 block-timeout-ms，
+ * 仍无空位则由提交方线程自己执行，从而拖慢 saveAndPublish 调用方，而不是无限堆积内存。
+ * <p>
+ * 带 key 的任务（{@link #execute(String, Runnable)}）按 key 的哈希进入固定数量的车道（notify.delivery.lanes），
+ * 同一车道内严格按提交顺序串行执行，不同车道并行。车道是无锁队列 + 调度标记，空闲的车道不占线程。
+ * 车道任务同样受 queue-capacity 约束：满时提交方一直等待到有空位，不越过已排队的任务。
+ * 在 {@link #runNonBlocking} 中提交（组提交刷写线程、集群事件监听线程）时不等待：没有空位的车道任务被拒绝，
+ * 计入 rejected 并返回 false，由提交方转入补救投递（ACK 重试或离线收件箱），消息不会丢弃。
+ * <p>
+ * 车道任务不能再向车道提交任务（占着一个空位等待另一个），否则满载时互相等待。
+ */
+@Slf4j
+public class NotifyDeliveryExecutor {
+
+    // 当前线程处于不阻塞提交模式
+    private static final ThreadLocal<Boolean> NON_BLOCKING = new ThreadLocal<>();
+
+    public enum Mode {
+        VIRTUAL, POOL
+    }
+
+    /**
+     * 任务耗时记录，由指标实现注册
+     */
+    @FunctionalInterface
+    public interface TaskTimer {
+
+        /**
+         * @param waitNanos 从提交到开始执行的耗时
+         * @param execNanos 执行耗时
+         */
+        void record(long waitNanos, long execNanos);
+    }
+
+    private final Mode mode;
+    private final int queueCapacity;
+    private final long blockTimeoutMs;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final Lane[] lanes;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong callerRuns = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile TaskTimer taskTimer;
+
+    /**
+     * @param mode           执行模式
+     * @param threads        pool 模式的线程数，virtual 模式忽略
+     * @param lanes          有序车道数，向上取整为 2 的幂
+     * @param queueCapacity  排队 + 执行中的任务上限
+     * @param blockTimeoutMs 满时无序任务的提交方等待空位的最长时间，超时后由提交方线程执行
+     */
+    public NotifyDeliveryExecutor(Mode mode, int threads, int lanes, int queueCapacity, long blockTimeoutMs) {
+        if (lanes <= 0 || queueCapacity <= 0 || blockTimeoutMs < 0 || (mode == Mode.POOL && threads <= 0)) {
+            throw new IllegalArgumentException("Delivery: 非法参数, mode=" + mode + ", threads=" + threads
+                    + ", lanes=" + lanes + ", queueCapacity=" + queueCapacity + ", blockTimeoutMs=" + blockTimeoutMs);
+        }
+        this.mode = mode;
+        this.queueCapacity = queueCapacity;
+        this.blockTimeoutMs = blockTimeoutMs;
+        this.permits = new Semaphore(queueCapacity);
+        this.lanes = new Lane[lanes == 1 ? 1 : Integer.highestOneBit(lanes - 1) << 1];
+        for (int i = 0; i < this.lanes.length; i++) {
+            this.lanes[i] = new Lane();
+        }
+        if (mode == Mode.VIRTUAL) {
+            this.executor = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("quick-notify-delivery-", 1).factory());
+        } else {
+            AtomicInteger seq = new AtomicInteger();
+            // 容量由 permits 控制，这里的队列不会超过 queueCapacity
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "quick-notify-delivery-" + seq.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        log.info("[DELIVERY] 启动, mode {}, threads {}, lanes {}, queueCapacity {}, blockTimeoutMs {}",
+                mode, mode == Mode.POOL ? threads : "virtual", this.lanes.length, queueCapacity, blockTimeoutMs);
+    }
+
+    /**
+     * 在不阻塞的提交模式下执行 action：期间当前线程提交的车道任务没有空位时直接拒绝（由提交方补救投递），
+     * 无序任务没有空位时由当前线程立即执行，都不等待
+     *
+     * @param action 一次组提交事务（AFTER_COMMIT 监听器在同一线程中提交推送任务），或一条集群事件的处理
+     */
+    public static void runNonBlocking(Runnable action) {
+        Boolean previous = NON_BLOCKING.get();
+        NON_BLOCKING.set(Boolean.TRUE);
+        try {
+            action.run();
+        } finally {
+            if (previous == null) {
+                NON_BLOCKING.remove();
+            }
+        }
+    }
+
+    /**
+     * 提交推送任务，满时阻塞提交方，等待超时后由提交方线程执行；不阻塞模式下不等待，直接由提交方线程执行
+     *
+     * @param task 推送任务
+     */
+    public void execute(Runnable task) {
+        long submitted = System.nanoTime();
+        if (!acquire(blockTimeoutMs)) {
+            callerRuns.incrementAndGet();
+            log.debug("[DELIVERY] 队列已满, 由调用方线程执行, queued {}, active {}", queued.get(), active.get());
+            run(task, submitted);
+            return;
+        }
+        queued.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                queued.decrementAndGet();
+                try {
+                    run(task, submitted);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 执行器已关闭
+            queued.decrementAndGet();
+            permits.release();
+            callerRuns.incrementAndGet();
+            run(task, submitted);
+        }
+    }
+
+    /**
+     * 按 key 有序提交：同一 key 的任务按提交顺序串行执行，不同 key 的任务可以并行。
+     * <p>
+     * 满时一直阻塞提交方直到有空位，不由调用方执行（以免越过已排队的任务），也不超额排队，保证内存有界。
+     * 不阻塞模式下或等待被中断时拒绝（计入 rejected），由调用方补救投递。
+     *
+     * @param key  有序键，通常是接收者
+     * @param task 推送任务
+     * @return 已进入车道返回 true，被拒绝返回 false
+     */
+    public boolean execute(String key, Runnable task) {
+        long submitted = System.nanoTime();
+        if (!acquire(-1)) {
+            rejected.incrementAndGet();
+            log.warn("[DELIVERY] 车道已满, 拒绝推送任务, 转入补救投递, key {}, queued {}", key, queued.get());
+            return false;
+        }
+        queued.incrementAndGet();
+        laneOf(key).offer(new LaneTask(task, submitted));
+        return true;
+    }
+
+    private Lane laneOf(String key) {
+        int h = key == null ? 0 : key.hashCode();
+        return lanes[(h ^ (h >>> 16)) & (lanes.length - 1)];
+    }
+
+    private static boolean isNonBlocking() {
+        return NON_BLOCKING.get() != null;
+    }
+
+    /**
+     * @param timeoutMs 等待空位的最长时间，小于 0 时一直等待；不阻塞模式下不等待
+     */
+    private boolean acquire(long timeoutMs) {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        if (isNonBlocking()) {
+            return false;
+        }
+        try {
+            if (timeoutMs < 0) {
+                permits.acquire();
+                return true;
+            }
+            return permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void run(Runnable task, long submitted) {
+        long start = System.nanoTime();
+        active.incrementAndGet();
+        try {
+            task.run();
+        } catch (Throwable e) {
+            log.error("[DELIVERY] 推送任务异常", e);
+        } finally {
+            active.decrementAndGet();
+            completed.incrementAndGet();
+            TaskTimer timer = taskTimer;
+            if (timer != null) {
+                timer.record(start - submitted, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private record LaneTask(Runnable task, long submitted) {
+    }
+
+    /**
+     * 有序车道：多生产者无锁入队，同一时刻最多一个线程在排空
+     */
+    private final class Lane {
+
+        // 每次调度最多执行的任务数，之后让出线程，避免热点用户占住线程
+        private static final int DRAIN_LIMIT = 64;
+
+        private final ConcurrentLinkedQueue<LaneTask> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        void offer(LaneTask task) {
+            tasks.offer(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // 执行器已关闭，由当前线程排空
+                    drain();
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                for (int i = 0; i < DRAIN_LIMIT; i++) {
+                    LaneTask next = tasks.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    queued.decrementAndGet();
+                    try {
+                        run(next.task(), next.submitted());
+                    } finally {
+                        permits.release();
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                // 释放标记后再检查一次，避免丢失并发入队的任务
+                if (!tasks.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    }
+
+    public void setTaskTimer(TaskTimer taskTimer) {
+        this.taskTimer = taskTimer;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getCallerRuns() {
+        return callerRuns.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getLanes() {
+        return lanes.length;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("[DELIVERY] 关闭超时, 剩余排队 {}", queued.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("[DELIVERY] 已停止, completed {}, callerRuns {}, rejected {}", completed.get(), callerRuns.get(), rejected.get());
+    }
+}
@@ -1,16 +1,39 @@
 package io.stu.notify.event;
 
+import io.stu.notify.cluster.ClusterEventBus;
+import io.stu.notify.cluster.PresenceDirectory;
+import io.stu.notify.metrics.NotifyMetrics;
+import io.stu.notify.model.NotifyMessage;
+import io.stu.notify.repository.NotifyMessageLog;
 import io.stu.notify.stomp.StompWebSocketHandler;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.transaction.event.TransactionPhase;
 import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * 消息事件监听器。
  * 处理集群广播和消息推送。
+ * <p>
+ * 配置了 {@link PresenceDirectory} 时，事件只发往接收者所在节点的主题 {@code stomp::ws_notify_topic::{nodeId}}，
+ * 接收者就在当前节点时直接本地投递；目录中没有记录时回退为广播。
+ * <p>
+ * 单个接收者的事件在发布端和接收端都进入 {@link NotifyDeliveryExecutor} 中按接收者划分的有序车道，
+ * 同一用户的消息（包括随后的 NOTIFY_VIEWED 等更新）按发布顺序推送，不同用户之间并行。
+ * 每次投递只占用一个车道位置：已在车道中执行的任务不再向车道提交任务（接收者在当前节点时直接推送），
+ * 批量事件在发布线程中拆分，只有每个接收者的推送进入车道。
+ * 车道满时发布线程等待空位；组提交刷写线程和集群事件监听线程不等待，被拒绝的推送转入补救投递
+ * （{@link StompWebSocketHandler#deferMessage}：由 ACK 重试稍后补发或转入离线收件箱），不会丢弃。
+ * <p>
+ * 配置了离线收件箱时，确认接收者在所有节点都不在线的消息转入收件箱：
+ * 集群模式以在线目录为准（目录中没有记录），单节点模式以当前节点没有 session 为准。
  */
 @Slf4j
 public class NotifyEventListener {
@@ -19,6 +42,13 @@ public class NotifyEventListener {
 
     private StompWebSocketHandler stompWebSocketHandler;
     private org.redisson.api.RedissonClient redisson;
+    private PresenceDirectory presenceDirectory;
+    private ClusterEventBus clusterEventBus;
+    private NotifyDeliveryExecutor deliveryExecutor;
+    private NotifyMetrics metrics = NotifyMetrics.NOOP;
+    // 目录中没有记录（用户离线或刚连接）时是否回退广播
+    @Value("${stomp.presence.broadcast-on-miss:true}")
+    private boolean broadcastOnMiss = true;
 
     @Autowired
     public void setStompWebSocketHandler(StompWebSocketHandler stompWebSocketHandler) {
@@ -30,42 +60,293 @@ public class NotifyEventListener {
         this.redisson = redisson;
     }
 
-    @Async
-    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    @Autowired(required = false)
+    public void setPresenceDirectory(PresenceDirectory presenceDirectory) {
+        this.presenceDirectory = presenceDirectory;
+    }
+
+    @Autowired(required = false)
+    public void setClusterEventBus(ClusterEventBus clusterEventBus) {
+        this.clusterEventBus = clusterEventBus;
+    }
+
+    @Autowired(required = false)
+    public void setDeliveryExecutor(NotifyDeliveryExecutor deliveryExecutor) {
+        this.deliveryExecutor = deliveryExecutor;
+    }
+
+    @Autowired(required = false)
+    public void setMetrics(NotifyMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setBroadcastOnMiss(boolean broadcastOnMiss) {
+        this.broadcastOnMiss = broadcastOnMiss;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
     public void handler(NotifyMessageEvent event) {
-        handlerEvent(event, true);
+        val msgLog = event.notifyMessageLog();
+        deliver(msgLog.getReceiver(), () -> handlerEvent(event, true), () -> {
+            if (redisson == null) {
+                defer(msgLog);
+            } else {
+                // 集群模式的发布端只做路由和发布，直接在当前线程执行
+                handlerEvent(event, true);
+            }
+        });
+    }
+
+    /**
+     * 批量事件在发布线程中拆分路由，不占用投递执行器：拆分出的每个推送各自进入接收者的车道，
+     * 车道满时拖慢发布线程
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void batchHandler(NotifyBatchEvent event) {
+        metrics.recordStage("publish", event.template().getType(), event.template().getCreated());
+        if (presenceDirectory != null) {
+            routeBatchEvent(event);
+        } else {
+            publishClusterEvent(event);
+        }
+    }
+
+    /**
+     * 广播事件发往所有节点，由各节点推送本节点的在线用户
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void broadcastHandler(NotifyBroadcastEvent event) {
+        deliver(() -> publishClusterEvent(event));
+    }
+
+    /**
+     * 交给投递执行器异步执行，队列满时阻塞发布事件的线程（即 saveAndPublish 调用方）
+     */
+    private void deliver(Runnable task) {
+        if (deliveryExecutor != null) {
+            deliveryExecutor.execute(task);
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * 交给接收者所在的有序车道执行，被拒绝时执行 fallback
+     */
+    private void deliver(String receiver, Runnable task, Runnable fallback) {
+        if (deliveryExecutor == null) {
+            task.run();
+        } else if (!deliveryExecutor.execute(receiver, task)) {
+            fallback.run();
+        }
+    }
+
+    /**
+     * 补救投递：接收者在当前节点时由 ACK 重试稍后补发，否则转入离线收件箱
+     */
+    private void defer(NotifyMessageLog msgLog) {
+        if (!stompWebSocketHandler.deferMessage(msgLog.toNotifyMessage())) {
+            log.debug("defer::msg id {}, user {} not on cur node and no offline inbox, skip",
+                    msgLog.getId(), msgLog.getReceiver());
+        }
     }
 
     private void handlerEvent(NotifyMessageEvent event, boolean isLocalEvent) {
         val msgLog = event.notifyMessageLog();
         if (isLocalEvent) {
-            publishClusterEvent(event);
+            metrics.recordStage("publish", msgLog.getType(), msgLog.getCreated());
+            if (presenceDirectory != null) {
+                routeEvent(event);
+            } else {
+                publishClusterEvent(event);
+            }
             return;
         }
 
         // 如果 ws 会话在当前节点，则直接推送
+        metrics.clusterEventReceived(msgLog.getType(), 1);
         if (stompWebSocketHandler.hasSession(msgLog.getReceiver())) {
+            metrics.clusterEventDelivered(msgLog.getType(), 1);
             log.debug("handlerEvent::msg id {}, start notify user {}. type {}",
                     msgLog.getId(), msgLog.getReceiver(), msgLog.getType());
             stompWebSocketHandler.sendMessageWithAck(msgLog.toNotifyMessage());
             log.debug("handlerEvent::msg id {}, end notify user {}. type {}",
                     msgLog.getId(), msgLog.getReceiver(), msgLog.getType());
+        } else if (isSingleNode() && stompWebSocketHandler.storeOffline(msgLog.toNotifyMessage())) {
+            log.debug("handlerEvent::msg id {}, user {} not online, stored. type {}",
+                    msgLog.getId(), msgLog.getReceiver(), msgLog.getType());
         } else {
             log.debug("handlerEvent::msg id {}, cur node don't find notify user {}. type {}",
                     msgLog.getId(), msgLog.getReceiver(), msgLog.getType());
         }
     }
 
-    private void publishClusterEvent(NotifyMessageEvent event) {
-        val topic = redisson.getTopic(NOTIFY_TOPIC);
-        topic.publish(event);
+    /**
+     * 处理批量事件：只投递给当前节点在线的接收者，每个接收者进入各自的有序车道
+     */
+    private void handlerBatchEvent(NotifyBatchEvent event) {
+        val receivers = event.receivers();
+        int delivered = 0;
+        List<NotifyMessage> offline = isSingleNode() && stompWebSocketHandler.isOfflineInboxEnabled()
+                ? new ArrayList<>() : null;
+        for (int i = 0; i < receivers.size(); i++) {
+            val receiver = receivers.get(i);
+            if (stompWebSocketHandler.hasSession(receiver)) {
+                val msgLog = event.messageAt(i);
+                deliver(receiver, () -> stompWebSocketHandler.sendMessageWithAck(msgLog.toNotifyMessage()),
+                        () -> defer(msgLog));
+                delivered++;
+            } else if (offline != null) {
+                offline.add(event.messageAt(i).toNotifyMessage());
+            }
+        }
+        if (offline != null && !offline.isEmpty()) {
+            stompWebSocketHandler.storeOffline(offline);
+        }
+        metrics.clusterEventReceived(event.template().getType(), receivers.size());
+        metrics.clusterEventDelivered(event.template().getType(), delivered);
+        log.debug("handlerBatchEvent::msg id {}, offset {}, receivers {}, delivered on cur node {}",
+                event.template().getId(), event.offset(), receivers.size(), delivered);
+    }
+
+    /**
+     * 按在线目录将事件发往接收者所在节点
+     */
+    private void routeEvent(NotifyMessageEvent event) {
+        val receiver = event.notifyMessageLog().getReceiver();
+        val nodes = presenceDirectory.nodesOf(receiver);
+        if (nodes.isEmpty()) {
+            stompWebSocketHandler.storeOffline(event.notifyMessageLog().toNotifyMessage());
+            if (broadcastOnMiss) {
+                publishClusterEvent(event);
+            } else {
+                log.debug("routeEvent::msg id {}, user {} not online, skip", event.notifyMessageLog().getId(), receiver);
+            }
+            return;
+        }
+        for (String node : nodes) {
+            if (node.equals(presenceDirectory.getNodeId())) {
+                handlerEvent(event, false);
+            } else {
+                publish(nodeTopic(node), event);
+            }
+        }
+    }
+
+    /**
+     * 按在线目录将批量事件拆分为各节点的子批次
+     */
+    private void routeBatchEvent(NotifyBatchEvent event) {
+        val receivers = event.receivers();
+        val located = presenceDirectory.nodesOf(receivers);
+        Map<String, List<Integer>> byNode = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < receivers.size(); i++) {
+            val nodes = located.get(receivers.get(i));
+            if (nodes == null) {
+                missing.add(i);
+                continue;
+            }
+            for (String node : nodes) {
+                byNode.computeIfAbsent(node, k -> new ArrayList<>()).add(i);
+            }
+        }
+        byNode.forEach((node, indexes) -> {
+            val subset = event.subset(indexes);
+            if (node.equals(presenceDirectory.getNodeId())) {
+                handlerBatchEvent(subset);
+            } else {
+                publish(nodeTopic(node), subset);
+            }
+        });
+        if (!missing.isEmpty() && stompWebSocketHandler.isOfflineInboxEnabled()) {
+            List<NotifyMessage> offline = new ArrayList<>(missing.size());
+            for (int index : missing) {
+                offline.add(event.messageAt(index).toNotifyMessage());
+            }
+            stompWebSocketHandler.storeOffline(offline);
+        }
+        if (!missing.isEmpty() && broadcastOnMiss) {
+            publishClusterEvent(event.subset(missing));
+        }
+        log.debug("routeBatchEvent::msg id {}, receivers {}, nodes {}, missing {}",
+                event.template().getId(), receivers.size(), byNode.size(), missing.size());
     }
 
     /**
-     * 订阅 Redis Topic（由配置类调用）
+     * 单节点模式：当前节点没有 session 即所有节点都没有。配置了在线目录时以目录为准
+     */
+    private boolean isSingleNode() {
+        return presenceDirectory == null && (redisson == null || stompWebSocketHandler.isLocalAckEnabled());
+    }
+
+    private void publishClusterEvent(Object event) {
+        if (redisson == null) {
+            // 未配置 Redisson（单节点），直接本地投递；单条消息事件已在接收者的车道中，直接推送，不再提交到车道
+            if (event instanceof NotifyMessageEvent messageEvent) {
+                handlerEvent(messageEvent, false);
+            } else {
+                onClusterEvent(event);
+            }
+            return;
+        }
+        publish(NOTIFY_TOPIC, event);
+    }
+
+    private void publish(String topic, Object event) {
+        if (clusterEventBus != null) {
+            clusterEventBus.publish(topic, event);
+        } else {
+            redisson.getTopic(topic).publish(event);
+        }
+    }
+
+    /**
+     * 监听线程中处理集群事件：不等待车道空位，被拒绝的推送转入补救投递，不阻塞后续事件
+     */
+    private void receive(Object event) {
+        NotifyDeliveryExecutor.runNonBlocking(() -> onClusterEvent(event));
+    }
+
+    /**
+     * 处理从集群主题收到的单条事件：在监听线程中按到达顺序放入车道，推送在投递执行器中完成
+     */
+    private void onClusterEvent(Object event) {
+        if (event instanceof NotifyMessageEvent messageEvent) {
+            val msgLog = messageEvent.notifyMessageLog();
+            deliver(msgLog.getReceiver(), () -> handlerEvent(messageEvent, false), () -> defer(msgLog));
+        } else if (event instanceof NotifyBatchEvent batchEvent) {
+            handlerBatchEvent(batchEvent);
+        } else if (event instanceof NotifyBroadcastEvent broadcastEvent) {
+            // 广播在广播线程池中异步推送，不占用监听线程和投递车道
+            val message = broadcastEvent.message();
+            metrics.clusterEventReceived(message.getType(), 1);
+            stompWebSocketHandler.broadcastLocal(message).whenComplete((result, e) -> {
+                if (e != null) {
+                    log.error("[BROADCAST] 本节点推送异常, msgId {}", message.getId(), e);
+                } else {
+                    metrics.clusterEventDelivered(message.getType(), result.users());
+                }
+            });
+        }
+    }
+
+    private static String nodeTopic(String nodeId) {
+        return NOTIFY_TOPIC + "::" + nodeId;
+    }
+
+    /**
+     * 订阅 Redis Topic（由配置类调用）：广播主题与当前节点主题
      */
     public void subscribeToTopic() {
-        val topic = redisson.getTopic(NOTIFY_TOPIC);
-        topic.addListener(NotifyMessageEvent.class, (charSequence, message) -> handlerEvent(message, false));
+        for (String name : List.of(NOTIFY_TOPIC, nodeTopic(stompWebSocketHandler.getNodeId()))) {
+            val topic = redisson.getTopic(name);
+            topic.addListener(NotifyMessageEvent.class, (charSequence, message) -> receive(message));
+            topic.addListener(NotifyBatchEvent.class, (charSequence, message) -> receive(message));
+            topic.addListener(NotifyBroadcastEvent.class, (charSequence, message) -> receive(message));
+            if (clusterEventBus != null) {
+                clusterEventBus.subscribe(name, this::receive);
+            }
+        }
     }
 }
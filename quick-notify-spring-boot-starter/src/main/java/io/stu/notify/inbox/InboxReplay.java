@@ -0,0 +1,118 @@
+package io.stu.notify.inbox;
+
+import io.stu.notify.model.MessageTypeRegistry;
+import io.stu.notify.model.MessageTypeRegistry.NotifyUpdateRsp;
+import io.stu.notify.model.NotifyMessage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 离线消息补发：合并状态更新并打包为一条 {@link MessageTypeRegistry#NOTIFY_REPLAY} 消息。
+ */
+public final class InboxReplay {
+
+    private InboxReplay() {
+    }
+
+    /**
+     * 合并离线期间的消息：
+     * <ul>
+     *   <li>多条 NOTIFY_VIEWED 合并为一条，NOTIFY_DELETED 同理，id 按出现顺序去重</li>
+     *   <li>已被删除的消息不再补发，其 id 也从 NOTIFY_VIEWED 中去掉</li>
+     *   <li>已被标记已读的消息以 viewed=true 补发</li>
+     * </ul>
+     * 普通消息保持原有顺序，合并后的 NOTIFY_VIEWED、NOTIFY_DELETED 排在最后。
+     *
+     * @param messages 按暂存顺序排列的消息
+     * @return 合并后的消息
+     */
+    public static List<NotifyMessage> collapse(List<NotifyMessage> messages) {
+        Set<String> viewedIds = new LinkedHashSet<>();
+        Set<String> deletedIds = new LinkedHashSet<>();
+        NotifyMessage lastViewed = null;
+        NotifyMessage lastDeleted = null;
+        List<NotifyMessage> regular = new ArrayList<>(messages.size());
+        for (NotifyMessage message : messages) {
+            if (MessageTypeRegistry.NOTIFY_VIEWED.equals(message.getType())) {
+                viewedIds.addAll(updateIds(message));
+                lastViewed = message;
+            } else if (MessageTypeRegistry.NOTIFY_DELETED.equals(message.getType())) {
+                deletedIds.addAll(updateIds(message));
+                lastDeleted = message;
+            } else {
+                regular.add(message);
+            }
+        }
+        viewedIds.removeAll(deletedIds);
+
+        List<NotifyMessage> result = new ArrayList<>(regular.size() + 2);
+        for (NotifyMessage message : regular) {
+            if (message.getId() != null && deletedIds.contains(message.getId())) {
+                continue;
+            }
+            result.add(!message.isViewed() && message.getId() != null && viewedIds.contains(message.getId())
+                    ? markViewed(message) : message);
+        }
+        if (!viewedIds.isEmpty()) {
+            result.add(update(lastViewed, viewedIds));
+        }
+        if (!deletedIds.isEmpty()) {
+            result.add(update(lastDeleted, deletedIds));
+        }
+        return result;
+    }
+
+    /**
+     * 将合并后的消息打包为一条补发消息，data 为消息列表，unread_count 取离线期间最后一次推送的值
+     *
+     * @param userId   接收者
+     * @param messages 合并后的消息
+     * @return 补发消息
+     */
+    public static NotifyMessage envelope(String userId, List<NotifyMessage> messages) {
+        Long unreadCount = null;
+        for (NotifyMessage message : messages) {
+            if (message.getUnreadCount() != null) {
+                unreadCount = message.getUnreadCount();
+            }
+        }
+        return NotifyMessage.builder()
+                .id(UUID.randomUUID().toString())
+                .type(MessageTypeRegistry.NOTIFY_REPLAY)
+                .receiver(userId)
+                .data(messages)
+                .created(System.currentTimeMillis())
+                .unreadCount(unreadCount)
+                .build();
+    }
+
+    private static List<String> updateIds(NotifyMessage message) {
+        return message.getData() instanceof NotifyUpdateRsp rsp && rsp.ids() != null ? rsp.ids() : List.of();
+    }
+
+    private static NotifyMessage markViewed(NotifyMessage message) {
+        return NotifyMessage.builder()
+                .id(message.getId())
+                .type(message.getType())
+                .receiver(message.getReceiver())
+                .data(message.getData())
+                .viewed(true)
+                .created(message.getCreated())
+                .unreadCount(message.getUnreadCount())
+                .build();
+    }
+
+    private static NotifyMessage update(NotifyMessage last, Set<String> ids) {
+        return NotifyMessage.builder()
+                .type(last.getType())
+                .receiver(last.getReceiver())
+                .data(new NotifyUpdateRsp(new ArrayList<>(ids)))
+                .created(last.getCreated())
+                .unreadCount(last.getUnreadCount())
+                .build();
+    }
+}
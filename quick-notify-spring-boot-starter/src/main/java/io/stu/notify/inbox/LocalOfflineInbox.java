@@ -0,0 +1,99 @@
+package io.stu.notify.inbox;
+
+import io.stu.notify.model.NotifyMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地内存离线收件箱（单节点模式）。
+ * <p>
+ * 用户数达到 maxUsers 时先清理已全部过期的用户，仍然已满则不再接收新用户的消息。
+ */
+@Slf4j
+public class LocalOfflineInbox implements OfflineInbox {
+
+    private final ConcurrentHashMap<String, ArrayDeque<Entry>> inboxes = new ConcurrentHashMap<>();
+    private final int maxMessages;
+    private final long ttlMs;
+    private final int maxUsers;
+
+    public LocalOfflineInbox(int maxMessages, long ttlMs, int maxUsers) {
+        if (maxMessages <= 0 || ttlMs <= 0 || maxUsers <= 0) {
+            throw new IllegalArgumentException("LocalOfflineInbox: 非法参数, maxMessages=" + maxMessages
+                    + ", ttlMs=" + ttlMs + ", maxUsers=" + maxUsers);
+        }
+        this.maxMessages = maxMessages;
+        this.ttlMs = ttlMs;
+        this.maxUsers = maxUsers;
+    }
+
+    @Override
+    public void offer(NotifyMessage message) {
+        String userId = message.getReceiver();
+        long now = System.currentTimeMillis();
+        if (!inboxes.containsKey(userId) && inboxes.size() >= maxUsers) {
+            purgeExpired(now);
+            if (inboxes.size() >= maxUsers) {
+                log.warn("[INBOX-LOCAL] 收件箱用户数超出容量 {}, 丢弃, msgId {}, receiver {}",
+                        maxUsers, message.getId(), userId);
+                return;
+            }
+        }
+        inboxes.compute(userId, (k, queue) -> {
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+            }
+            removeExpired(queue, now);
+            if (queue.size() >= maxMessages) {
+                Entry dropped = queue.pollFirst();
+                log.debug("[INBOX-LOCAL] 收件箱已满, 丢弃最早的消息, msgId {}, receiver {}",
+                        dropped.message().getId(), userId);
+            }
+            queue.addLast(new Entry(message, now + ttlMs));
+            return queue;
+        });
+    }
+
+    @Override
+    public List<NotifyMessage> drain(String userId) {
+        ArrayDeque<Entry> queue = inboxes.remove(userId);
+        if (queue == null) {
+            return List.of();
+        }
+        long now = System.currentTimeMillis();
+        List<NotifyMessage> result = new ArrayList<>(queue.size());
+        // remove 之后不会再有写入，无需加锁
+        for (Entry entry : queue) {
+            if (!entry.isExpired(now)) {
+                result.add(entry.message());
+            }
+        }
+        return result;
+    }
+
+    private void purgeExpired(long now) {
+        for (String userId : inboxes.keySet()) {
+            inboxes.computeIfPresent(userId, (k, queue) -> {
+                removeExpired(queue, now);
+                return queue.isEmpty() ? null : queue;
+            });
+        }
+    }
+
+    private static void removeExpired(ArrayDeque<Entry> queue, long now) {
+        // 按暂存顺序过期，只需从头部清理
+        while (!queue.isEmpty() && queue.peekFirst().isExpired(now)) {
+            queue.pollFirst();
+        }
+    }
+
+    private record Entry(NotifyMessage message, long expireAt) {
+        boolean isExpired(long now) {
+            return now >= expireAt;
+        }
+    }
+}
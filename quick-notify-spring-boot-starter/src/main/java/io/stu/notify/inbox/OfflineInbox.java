@@ -0,0 +1,41 @@
+package io.stu.notify.inbox;
+
+import io.stu.notify.model.NotifyMessage;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 离线收件箱：接收者在所有节点都没有 session 时暂存推送，重新连接后一次补发。
+ * <p>
+ * 每个用户最多保留 maxMessages 条（超出丢弃最早的），每条在 ttlMs 后过期。
+ * 收件箱只是推送层的补偿，消息本身已持久化，过期或被挤出的消息仍可通过历史接口查询。
+ */
+public interface OfflineInbox {
+
+    /**
+     * 暂存一条消息
+     *
+     * @param message 消息，receiver 不能为空
+     */
+    void offer(NotifyMessage message);
+
+    /**
+     * 批量暂存
+     *
+     * @param messages 消息列表，接收者可以不同
+     */
+    default void offerAll(Collection<NotifyMessage> messages) {
+        for (NotifyMessage message : messages) {
+            offer(message);
+        }
+    }
+
+    /**
+     * 取出并清空用户的全部未过期消息
+     *
+     * @param userId 用户ID
+     * @return 按暂存顺序排列的消息，没有时返回空列表
+     */
+    List<NotifyMessage> drain(String userId);
+}
@@ -0,0 +1,126 @@
+package io.stu.notify.inbox;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.stu.notify.model.MessageTypeRegistry;
+import io.stu.notify.model.NotifyMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Redis 离线收件箱（集群模式）。
+ * <p>
+ * 每个用户一个 List（{@code stomp::inbox::{userId}}），写入时裁剪到 maxMessages 条并续期 ttlMs；
+ * 取出为一次脚本调用（读取后删除），同一用户在多个节点同时重连时只有一个节点取到消息。
+ * 每条记录带过期时间，取出时丢弃已过期的记录。
+ */
+@Slf4j
+public class RedisOfflineInbox implements OfflineInbox {
+
+    private static final String KEY_PREFIX = "stomp::inbox::";
+
+    private static final String OFFER_SCRIPT = """
+            redis.call('rpush', KEYS[1], ARGV[1])
+            redis.call('ltrim', KEYS[1], -tonumber(ARGV[2]), -1)
+            redis.call('pexpire', KEYS[1], ARGV[3])
+            return 1
+            """;
+
+    private static final String DRAIN_SCRIPT = """
+            local v = redis.call('lrange', KEYS[1], 0, -1)
+            redis.call('del', KEYS[1])
+            return v
+            """;
+
+    private final RedissonClient redisson;
+    private final ObjectMapper objectMapper;
+    private final int maxMessages;
+    private final long ttlMs;
+
+    public RedisOfflineInbox(RedissonClient redisson, ObjectMapper objectMapper, int maxMessages, long ttlMs) {
+        if (maxMessages <= 0 || ttlMs <= 0) {
+            throw new IllegalArgumentException("RedisOfflineInbox: 非法参数, maxMessages=" + maxMessages
+                    + ", ttlMs=" + ttlMs);
+        }
+        this.redisson = redisson;
+        this.objectMapper = objectMapper;
+        this.maxMessages = maxMessages;
+        this.ttlMs = ttlMs;
+    }
+
+    @Override
+    public void offer(NotifyMessage message) {
+        String key = KEY_PREFIX + message.getReceiver();
+        redisson.getScript(StringCodec.INSTANCE).eval(key, RScript.Mode.READ_WRITE, OFFER_SCRIPT,
+                RScript.ReturnType.INTEGER, List.of(key), encode(message), maxMessages, ttlMs);
+    }
+
+    @Override
+    public void offerAll(Collection<NotifyMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        // 一次 pipeline 提交，避免批量离线时逐个往返
+        RBatch batch = redisson.createBatch();
+        for (NotifyMessage message : messages) {
+            String key = KEY_PREFIX + message.getReceiver();
+            batch.getScript(StringCodec.INSTANCE).evalAsync(key, RScript.Mode.READ_WRITE, OFFER_SCRIPT,
+                    RScript.ReturnType.INTEGER, List.of(key), encode(message), maxMessages, ttlMs);
+        }
+        batch.execute();
+    }
+
+    @Override
+    public List<NotifyMessage> drain(String userId) {
+        String key = KEY_PREFIX + userId;
+        List<Object> raw = redisson.getScript(StringCodec.INSTANCE).eval(key, RScript.Mode.READ_WRITE,
+                DRAIN_SCRIPT, RScript.ReturnType.MULTI, List.of(key));
+        if (raw == null || raw.isEmpty()) {
+            return List.of();
+        }
+        long now = System.currentTimeMillis();
+        List<NotifyMessage> result = new ArrayList<>(raw.size());
+        for (Object value : raw) {
+            try {
+                Entry entry = objectMapper.readValue((String) value, Entry.class);
+                if (entry.expireAt() > now) {
+                    result.add(decodeData(entry.message()));
+                }
+            } catch (Exception e) {
+                log.error("[INBOX-REDIS] 记录解析失败, 丢弃, receiver {}", userId, e);
+            }
+        }
+        return result;
+    }
+
+    private String encode(NotifyMessage message) {
+        try {
+            return objectMapper.writeValueAsString(new Entry(System.currentTimeMillis() + ttlMs, message));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("[INBOX-REDIS] 消息编码失败, msgId: " + message.getId(), e);
+        }
+    }
+
+    /**
+     * data 按注册的数据类还原，与实时推送时的类型一致；未注册的类型保持 JSON 对象
+     */
+    private NotifyMessage decodeData(NotifyMessage message) {
+        Class<?> dataClass = MessageTypeRegistry.getDataClass(message.getType());
+        if (dataClass != null && message.getData() != null && !dataClass.isInstance(message.getData())) {
+            message.setData(objectMapper.convertValue(message.getData(), dataClass));
+        }
+        return message;
+    }
+
+    private record Entry(@JsonProperty("expire_at") long expireAt,
+                         @JsonProperty("message") NotifyMessage message) {
+    }
+}
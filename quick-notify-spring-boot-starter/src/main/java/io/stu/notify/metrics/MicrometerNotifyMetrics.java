@@ -0,0 +1,257 @@
+package io.stu.notify.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.stu.notify.event.NotifyDeliveryExecutor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * {@link NotifyMetrics} 的 Micrometer 实现，除 ACK 待确认数外均按消息类型打 {@code type} 标签：
+ * <ul>
+ *   <li>{@code quick_notify.save_and_publish}：saveAndPublish 耗时</li>
+ *   <li>{@code quick_notify.pipeline}：从消息创建到各阶段的耗时，stage=publish（发布到集群）/ send（推送到 session）</li>
+ *   <li>{@code quick_notify.ack.latency}：从消息创建到收到 ACK 的端到端耗时</li>
+ *   <li>{@code quick_notify.ack.pending}：当前节点待确认记录数，mode=local / redis</li>
+ *   <li>{@code quick_notify.ack.retries} / {@code .expired} / {@code .not_online}：ACK 轮询中的重发、过期、不在线次数</li>
+ *   <li>{@code quick_notify.cluster.events}：集群事件，outcome=received（收到）/ delivered（本节点实际投递）/ dropped（总线发送失败丢弃）</li>
+ * </ul>
+ * 由自动配置在 micrometer-core 存在时创建，未配置 MeterRegistry 时注册到 {@link Metrics#globalRegistry}。
+ */
+public class MicrometerNotifyMetrics implements NotifyMetrics {
+
+    private static final String UNKNOWN_TYPE = "unknown";
+
+    private final MeterRegistry registry;
+
+    public MicrometerNotifyMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    @Override
+    public void recordSaveAndPublish(String type, long startNanos) {
+        Timer.builder("quick_notify.save_and_publish")
+                .tag("type", tag(type))
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录消息从创建到某一阶段的耗时
+     *
+     * @param stage   publish / send
+     * @param created 消息创建时间（毫秒），为 0 时不记录
+     */
+    @Override
+    public void recordStage(String stage, String type, long created) {
+        if (created <= 0) {
+            return;
+        }
+        Timer.builder("quick_notify.pipeline")
+                .tag("stage", stage)
+                .tag("type", tag(type))
+                .register(registry)
+                .record(Math.max(0, System.currentTimeMillis() - created), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录消息从创建到收到 ACK 的耗时
+     *
+     * @param created 消息创建时间（毫秒），为 0 时不记录
+     */
+    @Override
+    public void recordAck(String type, long created) {
+        if (created <= 0) {
+            return;
+        }
+        Timer.builder("quick_notify.ack.latency")
+                .tag("type", tag(type))
+                .register(registry)
+                .record(Math.max(0, System.currentTimeMillis() - created), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void ackRetried(String type) {
+        counter("quick_notify.ack.retries", type).increment();
+    }
+
+    @Override
+    public void ackExpired(String type) {
+        counter("quick_notify.ack.expired", type).increment();
+    }
+
+    @Override
+    public void ackNotOnline(String type) {
+        counter("quick_notify.ack.not_online", type).increment();
+    }
+
+    @Override
+    public void ackCongested(String type) {
+        counter("quick_notify.ack.congested", type).increment();
+    }
+
+    /**
+     * 出站队列的处理结果
+     *
+     * @param action coalesced / dropped / evicted / closed
+     * @param type   消息类型
+     */
+    @Override
+    public void outboundShed(String action, String type) {
+        Counter.builder("quick_notify.outbound.shed")
+                .tag("action", action)
+                .tag("type", tag(type))
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * 注册出站队列指标
+     *
+     * @param queued   本节点所有 session 排队的消息数
+     * @param maxDepth 本节点出站深度（在途 + 排队）最大的 session 的深度
+     */
+    @Override
+    public void bindOutbound(Supplier<Number> queued, Supplier<Number> maxDepth) {
+        Gauge.builder("quick_notify.outbound.queued", queued)
+                .description("当前节点出站队列中排队的消息数")
+                .register(registry);
+        Gauge.builder("quick_notify.outbound.max_depth", maxDepth)
+                .description("当前节点出站深度最大的 session 的在途与排队消息数")
+                .register(registry);
+    }
+
+    @Override
+    public void clusterEventReceived(String type, int count) {
+        Counter.builder("quick_notify.cluster.events")
+                .tag("outcome", "received")
+                .tag("type", tag(type))
+                .register(registry)
+                .increment(count);
+    }
+
+    @Override
+    public void clusterEventDelivered(String type, int count) {
+        Counter.builder("quick_notify.cluster.events")
+                .tag("outcome", "delivered")
+                .tag("type", tag(type))
+                .register(registry)
+                .increment(count);
+    }
+
+    /**
+     * 集群事件总线重试后仍未能发出而被丢弃的事件
+     */
+    @Override
+    public void clusterEventDropped(int count) {
+        Counter.builder("quick_notify.cluster.events")
+                .tag("outcome", "dropped")
+                .tag("type", UNKNOWN_TYPE)
+                .register(registry)
+                .increment(count);
+    }
+
+    @Override
+    public void inboxStored(String type) {
+        counter("quick_notify.inbox.stored", type).increment();
+    }
+
+    /**
+     * 状态变更被合并到同一用户尚未发出的 NOTIFY_VIEWED / NOTIFY_DELETED 中，不再单独发布
+     */
+    @Override
+    public void updateMerged(String type) {
+        counter("quick_notify.update.merged", type).increment();
+    }
+
+    /**
+     * 历史消息第一页缓存
+     *
+     * @param result hit / miss（未命中，加载后返回）/ bypass（超出缓存范围，直接查询）
+     */
+    @Override
+    public void historyCache(String result) {
+        Counter.builder("quick_notify.history.cache")
+                .tag("result", result)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * 过期消息被清理
+     *
+     * @param count 本段中该类型的消息数
+     */
+    @Override
+    public void retentionPurged(String type, int count) {
+        counter("quick_notify.retention.purged", type).increment(count);
+    }
+
+    /**
+     * 离线收件箱补发
+     *
+     * @param messages 补发消息中包含的消息数（合并后）
+     */
+    @Override
+    public void inboxReplayed(int messages) {
+        Counter.builder("quick_notify.inbox.replayed")
+                .register(registry)
+                .increment(messages);
+    }
+
+    /**
+     * 注册待确认记录数
+     *
+     * @param mode    local / redis
+     * @param pending 待确认记录数，Redis 模式下每次采集查询一次
+     */
+    @Override
+    public void bindPendingAcks(String mode, Supplier<Number> pending) {
+        Gauge.builder("quick_notify.ack.pending", pending)
+                .tag("mode", mode)
+                .description("当前节点待确认的 ACK 记录数")
+                .register(registry);
+    }
+
+    /**
+     * 注册投递执行器指标：排队数、执行中数、容量、调用方执行 / 拒绝次数，以及排队等待与执行耗时
+     */
+    @Override
+    public void bindDelivery(NotifyDeliveryExecutor executor) {
+        String mode = executor.getMode().name().toLowerCase();
+        Gauge.builder("quick_notify.delivery.queued", executor, NotifyDeliveryExecutor::getQueued)
+                .tag("mode", mode).description("排队中的推送任务数").register(registry);
+        Gauge.builder("quick_notify.delivery.active", executor, NotifyDeliveryExecutor::getActive)
+                .tag("mode", mode).description("执行中的推送任务数").register(registry);
+        Gauge.builder("quick_notify.delivery.capacity", executor, NotifyDeliveryExecutor::getQueueCapacity)
+                .tag("mode", mode).register(registry);
+        Gauge.builder("quick_notify.delivery.caller_runs", executor, NotifyDeliveryExecutor::getCallerRuns)
+                .tag("mode", mode).description("队列满时由调用方线程执行的任务数").register(registry);
+        Gauge.builder("quick_notify.delivery.rejected", executor, NotifyDeliveryExecutor::getRejected)
+                .tag("mode", mode).description("车道满时被拒绝、转入补救投递的推送任务数").register(registry);
+        Timer execTimer = Timer.builder("quick_notify.delivery.execution")
+                .tag("mode", mode).description("推送任务执行耗时").register(registry);
+        Timer waitTimer = Timer.builder("quick_notify.delivery.wait")
+                .tag("mode", mode).description("推送任务从提交到开始执行的耗时").register(registry);
+        executor.setTaskTimer((waitNanos, execNanos) -> {
+            waitTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+            execTimer.record(execNanos, TimeUnit.NANOSECONDS);
+        });
+    }
+
+    private Counter counter(String name, String type) {
+        return Counter.builder(name).tag("type", tag(type)).register(registry);
+    }
+
+    private static String tag(String type) {
+        return type == null || type.isBlank() ? UNKNOWN_TYPE : type;
+    }
+}
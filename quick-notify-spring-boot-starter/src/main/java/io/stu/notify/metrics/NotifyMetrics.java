@@ -0,0 +1,130 @@
+package io.stu.notify.metrics;
+
+import io.stu.notify.event.NotifyDeliveryExecutor;
+
+import java.util.function.Supplier;
+
+/**
+ * 消息推送链路指标。所有方法默认不做任何事，未引入 Micrometer 时使用 {@link #NOOP}；
+ * 引入 micrometer-core 时由 {@link MicrometerNotifyMetrics} 实现，指标名见该类说明。
+ * <p>
+ * 核心组件只依赖本接口，不直接引用 Micrometer 类型，micrometer-core 可以不在类路径上。
+ */
+public interface NotifyMetrics {
+
+    /**
+     * 不记录任何指标，组件未注入指标时使用
+     */
+    NotifyMetrics NOOP = new NotifyMetrics() {
+    };
+
+    default void recordSaveAndPublish(String type, long startNanos) {
+    }
+
+    /**
+     * 记录消息从创建到某一阶段的耗时
+     *
+     * @param stage   publish / send
+     * @param created 消息创建时间（毫秒），为 0 时不记录
+     */
+    default void recordStage(String stage, String type, long created) {
+    }
+
+    /**
+     * 记录消息从创建到收到 ACK 的耗时
+     *
+     * @param created 消息创建时间（毫秒），为 0 时不记录
+     */
+    default void recordAck(String type, long created) {
+    }
+
+    default void ackRetried(String type) {
+    }
+
+    default void ackExpired(String type) {
+    }
+
+    default void ackNotOnline(String type) {
+    }
+
+    default void ackCongested(String type) {
+    }
+
+    /**
+     * 出站队列的处理结果
+     *
+     * @param action coalesced / dropped / evicted / closed
+     * @param type   消息类型
+     */
+    default void outboundShed(String action, String type) {
+    }
+
+    /**
+     * 注册出站队列指标
+     *
+     * @param queued   本节点所有 session 排队的消息数
+     * @param maxDepth 本节点出站深度（在途 + 排队）最大的 session 的深度
+     */
+    default void bindOutbound(Supplier<Number> queued, Supplier<Number> maxDepth) {
+    }
+
+    default void clusterEventReceived(String type, int count) {
+    }
+
+    default void clusterEventDelivered(String type, int count) {
+    }
+
+    /**
+     * 集群事件总线重试后仍未能发出而被丢弃的事件
+     */
+    default void clusterEventDropped(int count) {
+    }
+
+    default void inboxStored(String type) {
+    }
+
+    /**
+     * 状态变更被合并到同一用户尚未发出的 NOTIFY_VIEWED / NOTIFY_DELETED 中，不再单独发布
+     */
+    default void updateMerged(String type) {
+    }
+
+    /**
+     * 历史消息第一页缓存
+     *
+     * @param result hit / miss（未命中，加载后返回）/ bypass（超出缓存范围，直接查询）
+     */
+    default void historyCache(String result) {
+    }
+
+    /**
+     * 过期消息被清理
+     *
+     * @param count 本段中该类型的消息数
+     */
+    default void retentionPurged(String type, int count) {
+    }
+
+    /**
+     * 离线收件箱补发
+     *
+     * @param messages 补发消息中包含的消息数（合并后）
+     */
+    default void inboxReplayed(int messages) {
+    }
+
+    /**
+     * 注册待确认记录数
+     *
+     * @param mode    local / redis
+     * @param pending 待确认记录数，Redis 模式下每次采集查询一次
+     */
+    default void bindPendingAcks(String mode, Supplier<Number> pending) {
+    }
+
+    /**
+     * 注册投递执行器的排队、执行与拒绝指标
+     */
+    default void bindDelivery(NotifyDeliveryExecutor executor) {
+    }
+}
@@ -0,0 +1,70 @@
+package io.stu.notify.model;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * ACK 重试策略。
+ * <p>
+ * 第 n 次重试（n 从 0 开始）前的等待时间为 {@code intervalMs * multiplier^n}，不超过 maxIntervalMs，
+ * 并叠加 ±jitter 比例的随机抖动。自首次发送起超过 ttlMs 或重试达到 maxRetries 次后放弃。
+ * 可通过 {@link MessageTypeRegistry#registerRetryPolicy(String, AckRetryPolicy)} 按消息类型配置。
+ *
+ * @param intervalMs    首次重试前的等待时间（毫秒）
+ * @param multiplier    退避倍数，1 表示固定间隔
+ * @param maxIntervalMs 单次等待上限（毫秒）
+ * @param jitter        抖动比例，取值 [0, 1)
+ * @param ttlMs         消息等待 ACK 的最长时间（毫秒）
+ * @param maxRetries    最大重试次数
+ */
+public record AckRetryPolicy(long intervalMs, double multiplier, long maxIntervalMs,
+                             double jitter, long ttlMs, int maxRetries) {
+
+    public AckRetryPolicy {
+        if (intervalMs <= 0 || multiplier < 1 || maxIntervalMs < intervalMs
+                || jitter < 0 || jitter >= 1 || ttlMs <= 0 || maxRetries < 0) {
+            throw new IllegalArgumentException("AckRetryPolicy: 非法参数, intervalMs=" + intervalMs
+                    + ", multiplier=" + multiplier + ", maxIntervalMs=" + maxIntervalMs
+                    + ", jitter=" + jitter + ", ttlMs=" + ttlMs + ", maxRetries=" + maxRetries);
+        }
+    }
+
+    /**
+     * 固定间隔重试
+     */
+    public static AckRetryPolicy fixed(long intervalMs, long ttlMs, int maxRetries) {
+        return new AckRetryPolicy(intervalMs, 1, intervalMs, 0, ttlMs, maxRetries);
+    }
+
+    /**
+     * 指数退避重试
+     */
+    public static AckRetryPolicy exponential(long intervalMs, double multiplier, long maxIntervalMs,
+                                             double jitter, long ttlMs, int maxRetries) {
+        return new AckRetryPolicy(intervalMs, multiplier, maxIntervalMs, jitter, ttlMs, maxRetries);
+    }
+
+    /**
+     * 计算下一次重试前的等待时间
+     *
+     * @param retryCount 已重试次数
+     * @return 等待时间（毫秒）
+     */
+    public long nextDelayMs(int retryCount) {
+        double delay = Math.min(intervalMs * Math.pow(multiplier, retryCount), maxIntervalMs);
+        if (jitter > 0) {
+            delay *= 1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+        }
+        return Math.max(1, (long) delay);
+    }
+
+    /**
+     * 是否应放弃重试
+     *
+     * @param retryCount  已重试次数
+     * @param firstSentAt 首次发送时间
+     * @param now         当前时间
+     */
+    public boolean isExhausted(int retryCount, long firstSentAt, long now) {
+        return retryCount >= maxRetries || now - firstSentAt >= ttlMs;
+    }
+}
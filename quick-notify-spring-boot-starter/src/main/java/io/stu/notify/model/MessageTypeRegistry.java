@@ -1,5 +1,6 @@
 package io.stu.notify.model;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -10,15 +11,20 @@ import java.util.concurrent.ConcurrentHashMap;
 public class MessageTypeRegistry {
 
     private static final Map<String, Class<?>> TYPES = new ConcurrentHashMap<>();
+    private static final Map<String, AckRetryPolicy> RETRY_POLICIES = new ConcurrentHashMap<>();
+    private static final Map<String, RetentionPolicy> RETENTION_POLICIES = new ConcurrentHashMap<>();
 
     public static final String STRING_MSG = "STRING_MSG";
     public static final String NOTIFY_VIEWED = "NOTIFY_VIEWED";
     public static final String NOTIFY_DELETED = "NOTIFY_DELETED";
+    // 离线收件箱补发，data 为离线期间的消息列表
+    public static final String NOTIFY_REPLAY = "NOTIFY_REPLAY";
 
     static {
         register(STRING_MSG, String.class);
         register(NOTIFY_VIEWED, NotifyUpdateRsp.class);
         register(NOTIFY_DELETED, NotifyUpdateRsp.class);
+        register(NOTIFY_REPLAY, List.class);
     }
 
     /**
@@ -41,6 +47,55 @@ public class MessageTypeRegistry {
         return TYPES.get(type);
     }
 
+    /**
+     * 为消息类型注册 ACK 重试策略，未注册的类型使用全局默认策略
+     *
+     * @param type   类型名称
+     * @param policy 重试策略
+     */
+    public static void registerRetryPolicy(String type, AckRetryPolicy policy) {
+        RETRY_POLICIES.put(type, policy);
+    }
+
+    /**
+     * 获取消息类型的 ACK 重试策略
+     *
+     * @param type 类型名称
+     * @return 重试策略，未注册返回 null
+     */
+    public static AckRetryPolicy getRetryPolicy(String type) {
+        return type == null ? null : RETRY_POLICIES.get(type);
+    }
+
+    /**
+     * 为消息类型注册保留策略，未注册的类型使用全局默认策略
+     *
+     * @param type   类型名称
+     * @param policy 保留策略
+     */
+    public static void registerRetentionPolicy(String type, RetentionPolicy policy) {
+        RETENTION_POLICIES.put(type, policy);
+    }
+
+    /**
+     * 获取消息类型的保留策略
+     *
+     * @param type 类型名称
+     * @return 保留策略，未注册返回 null
+     */
+    public static RetentionPolicy getRetentionPolicy(String type) {
+        return type == null ? null : RETENTION_POLICIES.get(type);
+    }
+
+    /**
+     * 已注册的全部保留策略
+     *
+     * @return 类型名称 -> 保留策略，不可修改
+     */
+    public static Map<String, RetentionPolicy> getRetentionPolicies() {
+        return Map.copyOf(RETENTION_POLICIES);
+    }
+
     /**
      * 校验数据类型是否匹配
      *
@@ -61,6 +116,6 @@ public class MessageTypeRegistry {
     /**
      * 消息已读/删除响应
      */
-    public record NotifyUpdateRsp(java.util.List<String> ids) {
+    public record NotifyUpdateRsp(List<String> ids) {
     }
 }
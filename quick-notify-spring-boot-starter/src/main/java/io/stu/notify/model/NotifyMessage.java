@@ -1,5 +1,6 @@
 package io.stu.notify.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -13,7 +14,7 @@ import java.io.Serializable;
  * WebSocket 消息 DTO
  */
 @Getter
-@Builder
+@Builder(toBuilder = true)
 @AllArgsConstructor
 @NoArgsConstructor
 public class NotifyMessage implements Serializable {
@@ -41,6 +42,11 @@ public class NotifyMessage implements Serializable {
     @JsonProperty("created")
     private long created;
 
+    @Setter
+    @JsonProperty("unread_count")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long unreadCount;
+
     @Setter
     @JsonProperty("ack_retry_count")
     @Builder.Default
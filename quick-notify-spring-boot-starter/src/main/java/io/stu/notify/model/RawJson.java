@@ -0,0 +1,70 @@
+package io.stu.notify.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * 未解析的 JSON 原文。
+ * <p>
+ * 作为消息 data 时由 Jackson 原样写出，历史查询可以把数据库中的 JSON 直接写进响应，省去一次解码和编码。
+ * 不校验内容，调用方需保证是合法 JSON（仓储写入时已由 ObjectMapper 生成）。
+ */
+public final class RawJson implements JsonSerializable, Serializable {
+
+    // 作为 NotifyMessage.data 时随消息一起序列化，固定版本号避免编译器差异导致反序列化失败
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final String json;
+
+    public RawJson(String json) {
+        if (json == null) {
+            throw new IllegalArgumentException("RawJson: json 不能为空");
+        }
+        this.json = json;
+    }
+
+    /**
+     * @return json 为 null 时返回 null
+     */
+    public static RawJson of(String json) {
+        return json == null ? null : new RawJson(json);
+    }
+
+    public String getJson() {
+        return json;
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        gen.writeRawValue(json);
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+            throws IOException {
+        // 原文不带类型信息，按原样写出
+        serialize(gen, serializers);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof RawJson other && json.equals(other.json));
+    }
+
+    @Override
+    public int hashCode() {
+        return json.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+}
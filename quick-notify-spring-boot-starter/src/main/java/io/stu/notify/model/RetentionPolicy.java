@@ -0,0 +1,54 @@
+package io.stu.notify.model;
+
+/**
+ * 消息保留策略。
+ * <p>
+ * 已读消息创建超过 readTtlMs、未读消息创建超过 unreadTtlMs 后由 {@link io.stu.notify.retention.NotifyPurger} 清理，
+ * 为 0 表示永久保留。可通过 {@link MessageTypeRegistry#registerRetentionPolicy(String, RetentionPolicy)} 按消息类型配置。
+ *
+ * @param readTtlMs   已读消息保留时间（毫秒）
+ * @param unreadTtlMs 未读消息保留时间（毫秒）
+ */
+public record RetentionPolicy(long readTtlMs, long unreadTtlMs) {
+
+    public static final RetentionPolicy KEEP_FOREVER = new RetentionPolicy(0, 0);
+
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    public RetentionPolicy {
+        if (readTtlMs < 0 || unreadTtlMs < 0) {
+            throw new IllegalArgumentException("RetentionPolicy: 非法参数, readTtlMs=" + readTtlMs
+                    + ", unreadTtlMs=" + unreadTtlMs);
+        }
+    }
+
+    /**
+     * 按天配置
+     */
+    public static RetentionPolicy ofDays(long readDays, long unreadDays) {
+        return new RetentionPolicy(readDays * DAY_MS, unreadDays * DAY_MS);
+    }
+
+    /**
+     * 消息是否已过期
+     *
+     * @param viewed  是否已读
+     * @param created 创建时间
+     * @param now     当前时间
+     */
+    public boolean isExpired(boolean viewed, long created, long now) {
+        return created < expiredBefore(viewed, now);
+    }
+
+    /**
+     * 过期的创建时间上限（不含），创建时间早于该值的消息已过期
+     *
+     * @param viewed 是否已读
+     * @param now    当前时间
+     * @return 永久保留时返回 Long.MIN_VALUE
+     */
+    public long expiredBefore(boolean viewed, long now) {
+        long ttl = viewed ? readTtlMs : unreadTtlMs;
+        return ttl > 0 ? now - ttl + 1 : Long.MIN_VALUE;
+    }
+}
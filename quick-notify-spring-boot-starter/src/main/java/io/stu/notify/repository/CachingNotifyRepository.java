@@ -0,0 +1,291 @@
+package io.stu.notify.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.stu.notify.metrics.NotifyMetrics;
+import io.stu.notify.model.RawJson;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 历史消息第一页缓存（可选，配置 notify.history-cache.enabled=true 开启）。
+ * <p>
+ * 每个用户缓存最近 maxMessages 条消息（{@link RecentMessageCache}），
+ * {@link #findByReceiver}、{@link #findByReceiverBefore}、{@link #findByReceiverAfterCursor} 及对应的 JSON 原文查询
+ * 请求的页落在缓存范围内时直接返回，未命中时加载最近 maxMessages 条后再返回；超出缓存范围的页直接查询被包装的仓储。
+ * 两类查询共用同一份缓存，JSON 原文查询命中时把 data 编码为 {@link RawJson}，省去数据库读取。
+ * 写入、已读、删除在事务提交后通知缓存。返回的消息为副本，调用方修改不影响缓存。扫描和统计不经过缓存。
+ * 由 {@link NotifyRepositoryDecorator} 包装容器中的 {@link NotifyRepository} Bean，自定义仓储同样生效。
+ */
+public class CachingNotifyRepository implements NotifyRepository {
+
+    /**
+     * 与数据库游标分页一致的顺序：(created, id) 倒序
+     */
+    static final Comparator<NotifyMessageLog> NEWEST_FIRST = Comparator
+            .comparingLong(NotifyMessageLog::getCreated)
+            .thenComparing(NotifyMessageLog::getId, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .reversed();
+
+    private final NotifyRepository delegate;
+    private final RecentMessageCache cache;
+    private final int maxMessages;
+    private final ObjectWriter rawWriter;
+    private NotifyMetrics metrics = NotifyMetrics.NOOP;
+
+    public CachingNotifyRepository(NotifyRepository delegate, RecentMessageCache cache, int maxMessages) {
+        this(delegate, cache, maxMessages, new ObjectMapper());
+    }
+
+    /**
+     * @param objectMapper 应用的 ObjectMapper，JSON 原文查询命中缓存时编码 data，与数据库中的 JSON 一致
+     */
+    public CachingNotifyRepository(NotifyRepository delegate, RecentMessageCache cache, int maxMessages,
+                                   ObjectMapper objectMapper) {
+        if (maxMessages <= 0) {
+            throw new IllegalArgumentException("HistoryCache: 非法参数, maxMessages=" + maxMessages);
+        }
+        this.delegate = delegate;
+        this.cache = cache;
+        this.maxMessages = maxMessages;
+        this.rawWriter = objectMapper.writer();
+    }
+
+    public void setMetrics(NotifyMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // ==================== 查询：最近消息走缓存 ====================
+
+    @Override
+    public List<NotifyMessageLog> findByReceiver(String userId, int offset, int limit) {
+        List<NotifyMessageLog> page = fromCache(userId, m -> true, offset, limit, false);
+        return page != null ? page : delegate.findByReceiver(userId, offset, limit);
+    }
+
+    @Override
+    public List<NotifyMessageLog> findByReceiverBefore(String userId, long created, int offset, int limit) {
+        List<NotifyMessageLog> page = fromCache(userId, m -> m.getCreated() < created, offset, limit, false);
+        return page != null ? page : delegate.findByReceiverBefore(userId, created, offset, limit);
+    }
+
+    @Override
+    public List<NotifyMessageLog> findByReceiverAfterCursor(String userId, long created, String id, int limit) {
+        List<NotifyMessageLog> page = fromCache(userId, afterCursor(created, id), 0, limit, false);
+        return page != null ? page : delegate.findByReceiverAfterCursor(userId, created, id, limit);
+    }
+
+    @Override
+    public List<NotifyMessageLog> findRawByReceiverBefore(String userId, long created, int offset, int limit) {
+        List<NotifyMessageLog> page = fromCache(userId, m -> m.getCreated() < created, offset, limit, true);
+        return page != null ? page : delegate.findRawByReceiverBefore(userId, created, offset, limit);
+    }
+
+    @Override
+    public List<NotifyMessageLog> findRawByReceiverAfterCursor(String userId, long created, String id, int limit) {
+        List<NotifyMessageLog> page = fromCache(userId, afterCursor(created, id), 0, limit, true);
+        return page != null ? page : delegate.findRawByReceiverAfterCursor(userId, created, id, limit);
+    }
+
+    private static Predicate<NotifyMessageLog> afterCursor(long created, String id) {
+        return id == null
+                ? m -> m.getCreated() < created
+                : m -> m.getCreated() < created || (m.getCreated() == created && m.getId().compareTo(id) < 0);
+    }
+
+    /**
+     * 从缓存中取出满足条件的第 [offset, offset + limit) 条
+     *
+     * @param rawData 是否把 data 编码为 JSON 原文
+     * @return 缓存不足以确定这一页时返回 null
+     */
+    private List<NotifyMessageLog> fromCache(String userId, Predicate<NotifyMessageLog> filter, int offset, int limit,
+                                             boolean rawData) {
+        if (offset < 0 || limit <= 0 || offset + limit > maxMessages) {
+            return null;
+        }
+        RecentMessageCache.Snapshot snapshot = cache.get(userId);
+        boolean hit = snapshot != null;
+        if (snapshot == null) {
+            long version = cache.version(userId);
+            List<NotifyMessageLog> rows = delegate.findByReceiverAfterCursor(userId, Long.MAX_VALUE, null, maxMessages);
+            snapshot = new RecentMessageCache.Snapshot(List.copyOf(rows), rows.size() < maxMessages);
+            cache.putIfUnchanged(userId, version, snapshot);
+        }
+
+        // 缓存是用户最近消息的前缀，过滤后仍是满足条件的消息的前缀
+        List<NotifyMessageLog> matched = new ArrayList<>(Math.min(offset + limit, snapshot.messages().size()));
+        for (NotifyMessageLog m : snapshot.messages()) {
+            if (filter.test(m)) {
+                matched.add(m);
+                if (matched.size() == offset + limit) {
+                    break;
+                }
+            }
+        }
+        if (matched.size() < offset + limit && !snapshot.complete()) {
+            metrics.historyCache("bypass");
+            return null;
+        }
+        metrics.historyCache(hit ? "hit" : "miss");
+        List<NotifyMessageLog> page = new ArrayList<>(limit);
+        for (int i = offset; i < matched.size(); i++) {
+            NotifyMessageLog copy = copyOf(matched.get(i));
+            if (rawData) {
+                copy.setData(toRaw(copy.getData()));
+            }
+            page.add(copy);
+        }
+        return page;
+    }
+
+    private Object toRaw(Object data) {
+        if (data == null || data instanceof RawJson) {
+            return data;
+        }
+        try {
+            return new RawJson(rawWriter.writeValueAsString(data));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid JSON data: " + data, e);
+        }
+    }
+
+    // ==================== 变更：提交后通知缓存 ====================
+
+    @Override
+    public void save(NotifyMessageLog msg) {
+        delegate.save(msg);
+        NotifyMessageLog saved = copyOf(msg);
+        afterCommit(() -> cache.onSaved(saved.getReceiver(), List.of(saved)));
+    }
+
+    @Override
+    public void saveAll(List<NotifyMessageLog> msgs) {
+        delegate.saveAll(msgs);
+        Map<String, List<NotifyMessageLog>> byReceiver = new LinkedHashMap<>();
+        for (NotifyMessageLog msg : msgs) {
+            byReceiver.computeIfAbsent(msg.getReceiver(), k -> new ArrayList<>()).add(copyOf(msg));
+        }
+        afterCommit(() -> byReceiver.forEach(cache::onSaved));
+    }
+
+    @Override
+    public void markAsRead(String userId, List<String> ids) {
+        delegate.markAsRead(userId, ids);
+        onRead(userId, ids);
+    }
+
+    @Override
+    public int markAsReadCount(String userId, List<String> ids) {
+        int updated = delegate.markAsReadCount(userId, ids);
+        onRead(userId, ids);
+        return updated;
+    }
+
+    private void onRead(String userId, List<String> ids) {
+        if (ids != null && !ids.isEmpty()) {
+            List<String> read = List.copyOf(ids);
+            afterCommit(() -> cache.onRead(userId, read));
+        }
+    }
+
+    @Override
+    public int markAsReadAll(Map<String, ? extends Collection<String>> idsByUser) {
+        int updated = delegate.markAsReadAll(idsByUser);
+        Map<String, List<String>> read = new LinkedHashMap<>();
+        idsByUser.forEach((userId, ids) -> read.put(userId, List.copyOf(ids)));
+        afterCommit(() -> read.forEach(cache::onRead));
+        return updated;
+    }
+
+    @Override
+    public void delete(String userId, List<String> ids) {
+        delegate.delete(userId, ids);
+        if (ids != null && !ids.isEmpty()) {
+            List<String> deleted = List.copyOf(ids);
+            afterCommit(() -> cache.onDeleted(userId, deleted));
+        }
+    }
+
+    @Override
+    public void deleteAll(Map<String, ? extends Collection<String>> idsByUser) {
+        delegate.deleteAll(idsByUser);
+        Map<String, List<String>> deleted = new LinkedHashMap<>();
+        idsByUser.forEach((userId, ids) -> deleted.put(userId, List.copyOf(ids)));
+        afterCommit(() -> deleted.forEach(cache::onDeleted));
+    }
+
+    // ==================== 其余：直接委托 ====================
+
+    @Override
+    public long scanByReceiver(String userId, long fromCreated, long toCreated, Consumer<NotifyMessageLog> action) {
+        return delegate.scanByReceiver(userId, fromCreated, toCreated, action);
+    }
+
+    @Override
+    public long scanRawByReceiver(String userId, long fromCreated, long toCreated, Consumer<NotifyMessageLog> action) {
+        return delegate.scanRawByReceiver(userId, fromCreated, toCreated, action);
+    }
+
+    @Override
+    public boolean supportsExpiredQuery() {
+        return delegate.supportsExpiredQuery();
+    }
+
+    @Override
+    public List<NotifyMessageLog> findExpired(ExpiryFilter filter, boolean withData, long afterCreated,
+                                              String afterId, int limit) {
+        return delegate.findExpired(filter, withData, afterCreated, afterId, limit);
+    }
+
+    @Override
+    public long countUnread(String userId) {
+        return delegate.countUnread(userId);
+    }
+
+    @Override
+    public List<String> findUnreadIds(String userId, Collection<String> ids) {
+        return delegate.findUnreadIds(userId, ids);
+    }
+
+    /**
+     * 在事务中时等提交后执行（回滚则不执行），否则立即执行
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * 复制持久化字段，unread_count 只用于推送，不进入缓存
+     */
+    static NotifyMessageLog copyOf(NotifyMessageLog source) {
+        NotifyMessageLog copy = new NotifyMessageLog();
+        copy.setId(source.getId());
+        copy.setType(source.getType());
+        copy.setReceiver(source.getReceiver());
+        copy.setData(source.getData());
+        copy.setViewed(source.isViewed());
+        copy.setCreated(source.getCreated());
+        copy.setLastModified(source.getLastModified());
+        return copy;
+    }
+}
@@ -0,0 +1,45 @@
+package io.stu.notify.repository;
+
+import java.util.Set;
+
+/**
+ * 过期消息查询条件，对应 {@link io.stu.notify.retention.NotifyPurger} 的一趟清理：
+ * 指定类型（或排除指定类型）、已读状态、创建时间早于 createdBefore 的消息。
+ *
+ * @param types         消息类型
+ * @param excludeTypes  为 true 时匹配 types 以外的类型（默认策略），为 false 时只匹配 types
+ * @param viewed        已读状态
+ * @param createdBefore 创建时间上限（不含）
+ */
+public record ExpiryFilter(Set<String> types, boolean excludeTypes, boolean viewed, long createdBefore) {
+
+    public ExpiryFilter {
+        types = Set.copyOf(types);
+        if (!excludeTypes && types.isEmpty()) {
+            throw new IllegalArgumentException("ExpiryFilter: 非法参数, types 为空");
+        }
+    }
+
+    /**
+     * 某个类型的消息
+     */
+    public static ExpiryFilter ofType(String type, boolean viewed, long createdBefore) {
+        return new ExpiryFilter(Set.of(type), false, viewed, createdBefore);
+    }
+
+    /**
+     * 除指定类型外的所有消息
+     */
+    public static ExpiryFilter excluding(Set<String> types, boolean viewed, long createdBefore) {
+        return new ExpiryFilter(types, true, viewed, createdBefore);
+    }
+
+    /**
+     * 消息是否符合条件
+     */
+    public boolean matches(NotifyMessageLog msg) {
+        return msg.isViewed() == viewed
+                && msg.getCreated() < createdBefore
+                && types.contains(msg.getType()) != excludeTypes;
+    }
+}
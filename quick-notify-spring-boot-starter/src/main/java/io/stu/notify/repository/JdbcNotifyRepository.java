@@ -2,37 +2,108 @@ package io.stu.notify.repository;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.stu.notify.model.MessageTypeRegistry;
+import io.stu.notify.model.RawJson;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 /**
  * 默认 JdbcTemplate 实现。
  * 用户可实现 {@link NotifyRepository} 接口提供自己的实现。
+ * <p>
+ * data 列按 {@link MessageTypeRegistry} 中注册的数据类编解码，与实时推送的数据类型一致；
+ * 未注册的类型按 JSON 树（Map / List）读取。每个数据类的 ObjectReader / ObjectWriter 只创建一次。
  */
 @Slf4j
 public class JdbcNotifyRepository implements NotifyRepository {
 
     private final JdbcTemplate jdbcTemplate;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectMapper objectMapper;
+    private final ObjectReader untypedReader;
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private final RowMapper<NotifyMessageLog> decodedMapper = new NotifyLogMapper(false);
+    private final RowMapper<NotifyMessageLog> rawMapper = new NotifyLogMapper(true);
+    // 只有键和状态列，不含 data，过期清理不归档时使用
+    private final RowMapper<NotifyMessageLog> keyMapper = (rs, rowNum) -> {
+        NotifyMessageLog msg = new NotifyMessageLog();
+        msg.setId(rs.getString("id"));
+        msg.setType(rs.getString("type"));
+        msg.setReceiver(rs.getString("receiver"));
+        msg.setViewed(rs.getBoolean("viewed"));
+        msg.setCreated(rs.getLong("created"));
+        return msg;
+    };
+    private int scanFetchSize = 500;
 
     public JdbcNotifyRepository(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, new ObjectMapper());
+    }
+
+    /**
+     * @param objectMapper 应用的 ObjectMapper，与接口序列化使用相同的配置
+     */
+    public JdbcNotifyRepository(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
         this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.untypedReader = objectMapper.readerFor(Object.class);
     }
 
-    @Override
-    public void save(NotifyMessageLog msg) {
-        String sql = """
+    /**
+     * 流式扫描时每次从数据库取回的行数。
+     * MySQL 需在连接串加 useCursorFetch=true 才会按此分批读取，否则驱动会一次读入全部结果
+     */
+    public void setScanFetchSize(int scanFetchSize) {
+        if (scanFetchSize <= 0) {
+            throw new IllegalArgumentException("Repository: 非法参数, scanFetchSize=" + scanFetchSize);
+        }
+        this.scanFetchSize = scanFetchSize;
+    }
+
+    private static final String INSERT_SQL = """
             INSERT INTO notify_log (id, type, receiver, data, viewed, created, last_modified, version)
             VALUES (?, ?, ?, ?, ?, ?, ?, ?)
             """;
-        jdbcTemplate.update(sql, msg.getId(), msg.getType(), msg.getReceiver(),
+
+    @Override
+    public void save(NotifyMessageLog msg) {
+        jdbcTemplate.update(INSERT_SQL, toInsertArgs(msg));
+    }
+
+    @Override
+    public void saveAll(List<NotifyMessageLog> msgs) {
+        if (msgs == null || msgs.isEmpty()) {
+            return;
+        }
+        if (msgs.size() == 1) {
+            save(msgs.get(0));
+            return;
+        }
+        List<Object[]> args = new ArrayList<>(msgs.size());
+        for (NotifyMessageLog msg : msgs) {
+            args.add(toInsertArgs(msg));
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, args);
+    }
+
+    private Object[] toInsertArgs(NotifyMessageLog msg) {
+        return new Object[]{msg.getId(), msg.getType(), msg.getReceiver(),
                 toJson(msg.getData()), msg.isViewed(), msg.getCreated(),
-                msg.getCreated(), 0);
+                msg.getCreated(), 0};
     }
 
     @Override
@@ -43,18 +114,119 @@ public class JdbcNotifyRepository implements NotifyRepository {
             ORDER BY created DESC
             LIMIT ? OFFSET ?
             """;
-        return jdbcTemplate.query(sql, new NotifyLogMapper(), userId, limit, offset);
+        return jdbcTemplate.query(sql, decodedMapper, userId, limit, offset);
     }
 
     @Override
     public List<NotifyMessageLog> findByReceiverBefore(String userId, long created, int offset, int limit) {
+        return findBefore(decodedMapper, userId, created, offset, limit);
+    }
+
+    @Override
+    public List<NotifyMessageLog> findRawByReceiverBefore(String userId, long created, int offset, int limit) {
+        return findBefore(rawMapper, userId, created, offset, limit);
+    }
+
+    private List<NotifyMessageLog> findBefore(RowMapper<NotifyMessageLog> mapper, String userId, long created,
+                                              int offset, int limit) {
         String sql = """
             SELECT * FROM notify_log
             WHERE receiver = ? AND created < ?
             ORDER BY created DESC
             LIMIT ? OFFSET ?
             """;
-        return jdbcTemplate.query(sql, new NotifyLogMapper(), userId, created, limit, offset);
+        return jdbcTemplate.query(sql, mapper, userId, created, limit, offset);
+    }
+
+    @Override
+    public List<NotifyMessageLog> findByReceiverAfterCursor(String userId, long created, String id, int limit) {
+        return findAfterCursor(decodedMapper, userId, created, id, limit);
+    }
+
+    @Override
+    public List<NotifyMessageLog> findRawByReceiverAfterCursor(String userId, long created, String id, int limit) {
+        return findAfterCursor(rawMapper, userId, created, id, limit);
+    }
+
+    private List<NotifyMessageLog> findAfterCursor(RowMapper<NotifyMessageLog> mapper, String userId, long created,
+                                                   String id, int limit) {
+        if (id == null) {
+            String sql = """
+                SELECT * FROM notify_log
+                WHERE receiver = ? AND created < ?
+                ORDER BY created DESC, id DESC
+                LIMIT ?
+                """;
+            return jdbcTemplate.query(sql, mapper, userId, created, limit);
+        }
+        // 等价于 (created, id) < (?, ?)，写成 created <= ? 以便走 (receiver, created, id) 索引范围扫描
+        String sql = """
+            SELECT * FROM notify_log
+            WHERE receiver = ? AND created <= ? AND (created < ? OR id < ?)
+            ORDER BY created DESC, id DESC
+            LIMIT ?
+            """;
+        return jdbcTemplate.query(sql, mapper, userId, created, created, id, limit);
+    }
+
+    private static final String SCAN_SQL = """
+            SELECT * FROM notify_log
+            WHERE receiver = ? AND created >= ? AND created < ?
+            ORDER BY created, id
+            """;
+
+    @Override
+    public long scanByReceiver(String userId, long fromCreated, long toCreated, Consumer<NotifyMessageLog> action) {
+        return scan(decodedMapper, userId, fromCreated, toCreated, action);
+    }
+
+    @Override
+    public long scanRawByReceiver(String userId, long fromCreated, long toCreated, Consumer<NotifyMessageLog> action) {
+        return scan(rawMapper, userId, fromCreated, toCreated, action);
+    }
+
+    /**
+     * 单次查询、只进游标逐行回调，内存占用只与 fetchSize 有关
+     */
+    private long scan(RowMapper<NotifyMessageLog> mapper, String userId, long fromCreated, long toCreated,
+                      Consumer<NotifyMessageLog> action) {
+        long[] count = {0};
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(SCAN_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(scanFetchSize);
+            ps.setString(1, userId);
+            ps.setLong(2, fromCreated);
+            ps.setLong(3, toCreated);
+            return ps;
+        }, (RowCallbackHandler) rs -> action.accept(mapper.mapRow(rs, (int) count[0]++)));
+        return count[0];
+    }
+
+    @Override
+    public boolean supportsExpiredQuery() {
+        return true;
+    }
+
+    @Override
+    public List<NotifyMessageLog> findExpired(ExpiryFilter filter, boolean withData, long afterCreated,
+                                              String afterId, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT ")
+                .append(withData ? "*" : "id, type, receiver, viewed, created")
+                .append(" FROM notify_log WHERE viewed = ? AND created < ?");
+        List<Object> args = new ArrayList<>(List.of(filter.viewed(), filter.createdBefore()));
+        if (!filter.types().isEmpty()) {
+            String placeholders = String.join(",", filter.types().stream().map(type -> "?").toList());
+            sql.append(filter.excludeTypes() ? " AND type NOT IN (" : " AND type IN (").append(placeholders).append(')');
+            args.addAll(filter.types());
+        }
+        if (afterId != null) {
+            // 等价于 (created, id) > (?, ?)，写成 created >= ? 以便走 (created, id) 索引范围扫描
+            sql.append(" AND created >= ? AND (created > ? OR id > ?)");
+            args.addAll(List.of(afterCreated, afterCreated, afterId));
+        }
+        sql.append(" ORDER BY created, id LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), withData ? rawMapper : keyMapper, args.toArray());
     }
 
     @Override
@@ -66,14 +238,49 @@ public class JdbcNotifyRepository implements NotifyRepository {
 
     @Override
     public void markAsRead(String userId, List<String> ids) {
+        markAsReadCount(userId, ids);
+    }
+
+    @Override
+    public int markAsReadCount(String userId, List<String> ids) {
         if (ids == null || ids.isEmpty()) {
-            return;
+            return 0;
         }
         String placeholders = String.join(",", ids.stream().map(id -> "?").toList());
         String sql = String.format(
-                "UPDATE notify_log SET viewed = true WHERE receiver = ? AND id IN (%s)",
+                "UPDATE notify_log SET viewed = true WHERE receiver = ? AND viewed = false AND id IN (%s)",
                 placeholders);
-        jdbcTemplate.update(sql, userId, ids.toArray());
+        return jdbcTemplate.update(sql, receiverAndIds(userId, ids));
+    }
+
+    @Override
+    public int markAsReadAll(Map<String, ? extends Collection<String>> idsByUser) {
+        List<Object[]> args = new ArrayList<>();
+        idsByUser.forEach((userId, ids) -> ids.forEach(id -> args.add(new Object[]{id, userId})));
+        if (args.isEmpty()) {
+            return 0;
+        }
+        // 按主键逐行更新，一次 JDBC 批量提交
+        int[] counts = jdbcTemplate.batchUpdate(
+                "UPDATE notify_log SET viewed = true WHERE id = ? AND receiver = ? AND viewed = false", args);
+        int updated = 0;
+        for (int count : counts) {
+            updated += Math.max(count, 0);
+        }
+        return updated;
+    }
+
+    @Override
+    public List<String> findUnreadIds(String userId, Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        List<String> idList = new ArrayList<>(ids);
+        String placeholders = String.join(",", idList.stream().map(id -> "?").toList());
+        String sql = String.format(
+                "SELECT id FROM notify_log WHERE receiver = ? AND viewed = false AND id IN (%s)",
+                placeholders);
+        return jdbcTemplate.queryForList(sql, String.class, receiverAndIds(userId, idList));
     }
 
     @Override
@@ -85,7 +292,27 @@ public class JdbcNotifyRepository implements NotifyRepository {
         String sql = String.format(
                 "DELETE FROM notify_log WHERE receiver = ? AND id IN (%s)",
                 placeholders);
-        jdbcTemplate.update(sql, userId, ids.toArray());
+        jdbcTemplate.update(sql, receiverAndIds(userId, ids));
+    }
+
+    @Override
+    public void deleteAll(Map<String, ? extends Collection<String>> idsByUser) {
+        List<Object[]> args = new ArrayList<>();
+        idsByUser.forEach((userId, ids) -> ids.forEach(id -> args.add(new Object[]{id, userId})));
+        if (args.isEmpty()) {
+            return;
+        }
+        // 按主键逐行删除，一次 JDBC 批量提交，只锁定这些行
+        jdbcTemplate.batchUpdate("DELETE FROM notify_log WHERE id = ? AND receiver = ?", args);
+    }
+
+    private Object[] receiverAndIds(String userId, List<String> ids) {
+        Object[] args = new Object[ids.size() + 1];
+        args[0] = userId;
+        for (int i = 0; i < ids.size(); i++) {
+            args[i + 1] = ids.get(i);
+        }
+        return args;
     }
 
     private String toJson(Object data) {
@@ -93,31 +320,57 @@ public class JdbcNotifyRepository implements NotifyRepository {
             return null;
         }
         try {
-            return objectMapper.writeValueAsString(data);
+            return writerFor(data.getClass()).writeValueAsString(data);
         } catch (JsonProcessingException e) {
             throw new IllegalArgumentException("Invalid JSON data: " + data, e);
         }
     }
 
-    private Object fromJson(String json) {
+    private Object fromJson(String type, String json) {
         if (json == null) {
             return null;
         }
+        Class<?> dataClass = MessageTypeRegistry.getDataClass(type);
+        if (dataClass != null) {
+            try {
+                return readerFor(dataClass).readValue(json);
+            } catch (JsonProcessingException e) {
+                // 类型注册前写入的历史数据，按 JSON 树读取
+                log.debug("[REPOSITORY] data 与注册类型不匹配, 按 JSON 树读取, type {}: {}", type, e.getOriginalMessage());
+            }
+        }
         try {
-            return objectMapper.readValue(json, Object.class);
+            return untypedReader.readValue(json);
         } catch (JsonProcessingException e) {
             throw new IllegalArgumentException("Invalid JSON data: " + json, e);
         }
     }
 
+    private ObjectReader readerFor(Class<?> dataClass) {
+        return readers.computeIfAbsent(dataClass, objectMapper::readerFor);
+    }
+
+    private ObjectWriter writerFor(Class<?> dataClass) {
+        return writers.computeIfAbsent(dataClass, objectMapper::writerFor);
+    }
+
     private class NotifyLogMapper implements RowMapper<NotifyMessageLog> {
+
+        // true 时 data 保留 JSON 原文，不解码
+        private final boolean rawData;
+
+        NotifyLogMapper(boolean rawData) {
+            this.rawData = rawData;
+        }
+
         @Override
         public NotifyMessageLog mapRow(ResultSet rs, int rowNum) throws SQLException {
             NotifyMessageLog msg = new NotifyMessageLog();
             msg.setId(rs.getString("id"));
             msg.setType(rs.getString("type"));
             msg.setReceiver(rs.getString("receiver"));
-            msg.setData(fromJson(rs.getString("data")));
+            String data = rs.getString("data");
+            msg.setData(rawData ? RawJson.of(data) : fromJson(msg.getType(), data));
             msg.setViewed(rs.getBoolean("viewed"));
             msg.setCreated(rs.getLong("created"));
             return msg;
@@ -0,0 +1,102 @@
+package io.stu.notify.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地内存已读缓冲（单节点模式）。
+ * <p>
+ * 缓冲的消息ID总数达到 maxIds 后不再接收，调用方直接写库；节点异常退出时未写入的已读会丢失，
+ * 正常停止时由 {@link WriteBehindNotifyRepository#stop()} 写入。
+ */
+public class LocalReadMarkBuffer implements ReadMarkBuffer {
+
+    private final ConcurrentHashMap<String, Set<String>> marks = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int maxIds;
+
+    public LocalReadMarkBuffer(int maxIds) {
+        if (maxIds <= 0) {
+            throw new IllegalArgumentException("LocalReadMarkBuffer: 非法参数, maxIds=" + maxIds);
+        }
+        this.maxIds = maxIds;
+    }
+
+    @Override
+    public List<String> add(String userId, Collection<String> ids) {
+        if (size.get() + ids.size() > maxIds) {
+            return null;
+        }
+        List<String> added = new ArrayList<>(ids.size());
+        marks.compute(userId, (k, set) -> {
+            if (set == null) {
+                set = new LinkedHashSet<>();
+            }
+            for (String id : ids) {
+                if (set.add(id)) {
+                    added.add(id);
+                }
+            }
+            return set;
+        });
+        size.addAndGet(added.size());
+        return added;
+    }
+
+    @Override
+    public void remove(String userId, Collection<String> ids) {
+        marks.computeIfPresent(userId, (k, set) -> {
+            for (String id : ids) {
+                if (set.remove(id)) {
+                    size.decrementAndGet();
+                }
+            }
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    @Override
+    public Set<String> get(String userId) {
+        // 集合只在 compute 中读写，这里复制一份
+        Set<String> copy = new LinkedHashSet<>();
+        marks.computeIfPresent(userId, (k, set) -> {
+            copy.addAll(set);
+            return set;
+        });
+        return copy;
+    }
+
+    @Override
+    public Map<String, Set<String>> pending(int maxUsers) {
+        Map<String, Set<String>> batch = new HashMap<>();
+        for (String userId : marks.keySet()) {
+            if (batch.size() >= maxUsers) {
+                break;
+            }
+            Set<String> ids = get(userId);
+            if (!ids.isEmpty()) {
+                batch.put(userId, ids);
+            }
+        }
+        return batch;
+    }
+
+    @Override
+    public void applied(Map<String, Set<String>> applied) {
+        applied.forEach(this::remove);
+    }
+
+    /**
+     * 缓冲中的消息ID总数
+     */
+    public int size() {
+        return size.get();
+    }
+}
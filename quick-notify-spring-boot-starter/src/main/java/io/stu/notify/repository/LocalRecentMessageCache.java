@@ -0,0 +1,107 @@
+package io.stu.notify.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.UnaryOperator;
+
+/**
+ * 本地内存最近消息缓存（单节点模式）。
+ * <p>
+ * 全局按 LRU 最多缓存 maxUsers 个用户，每个用户最多 maxMessages 条；变更直接修补缓存中的消息，
+ * 不需要重新加载。缓存内容不可修改，每次修补替换为新的 {@link Snapshot}。
+ * 版本号按用户ID哈希分段，不随用户数增长，不同用户落在同一段时只会多丢弃一次加载结果。
+ */
+public class LocalRecentMessageCache implements RecentMessageCache {
+
+    private static final int VERSION_STRIPES = 4096;
+
+    private final int maxMessages;
+    private final LinkedHashMap<String, Snapshot> lru;
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    public LocalRecentMessageCache(int maxMessages, int maxUsers) {
+        if (maxMessages <= 0 || maxUsers <= 0) {
+            throw new IllegalArgumentException("LocalRecentMessageCache: 非法参数, maxMessages=" + maxMessages
+                    + ", maxUsers=" + maxUsers);
+        }
+        this.maxMessages = maxMessages;
+        this.lru = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    @Override
+    public Snapshot get(String userId) {
+        synchronized (lru) {
+            return lru.get(userId);
+        }
+    }
+
+    @Override
+    public long version(String userId) {
+        return versions.get(stripe(userId));
+    }
+
+    @Override
+    public void putIfUnchanged(String userId, long version, Snapshot snapshot) {
+        synchronized (lru) {
+            if (versions.get(stripe(userId)) == version) {
+                lru.put(userId, snapshot);
+            }
+        }
+    }
+
+    @Override
+    public void onSaved(String userId, List<NotifyMessageLog> messages) {
+        patch(userId, current -> current.append(messages, maxMessages));
+    }
+
+    @Override
+    public void onRead(String userId, Collection<String> ids) {
+        Set<String> read = new HashSet<>(ids);
+        patch(userId, current -> {
+            List<NotifyMessageLog> patched = new ArrayList<>(current.messages().size());
+            for (NotifyMessageLog m : current.messages()) {
+                if (!m.isViewed() && read.contains(m.getId())) {
+                    NotifyMessageLog copy = CachingNotifyRepository.copyOf(m);
+                    copy.setViewed(true);
+                    patched.add(copy);
+                } else {
+                    patched.add(m);
+                }
+            }
+            return new Snapshot(List.copyOf(patched), current.complete());
+        });
+    }
+
+    @Override
+    public void onDeleted(String userId, Collection<String> ids) {
+        Set<String> deleted = new HashSet<>(ids);
+        // 删除后缓存少于 N 条，非 complete 时只能满足更短的页，由调用方判断
+        patch(userId, current -> new Snapshot(current.messages().stream()
+                .filter(m -> !deleted.contains(m.getId())).toList(), current.complete()));
+    }
+
+    private void patch(String userId, UnaryOperator<Snapshot> change) {
+        synchronized (lru) {
+            versions.incrementAndGet(stripe(userId));
+            Snapshot current = lru.get(userId);
+            if (current != null) {
+                lru.put(userId, change.apply(current));
+            }
+        }
+    }
+
+    private static int stripe(String userId) {
+        return (userId.hashCode() & 0x7fffffff) % VERSION_STRIPES;
+    }
+}
@@ -0,0 +1,63 @@
+package io.stu.notify.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 历史消息游标，按 (created, id) 倒序定位。
+ * 对外以不透明字符串传递，见 {@link #encode()} / {@link #decode(String)}。
+ *
+ * @param created 上一页最后一条消息的创建时间
+ * @param id      上一页最后一条消息的ID
+ */
+public record NotifyCursor(long created, String id) {
+
+    private static final char SEPARATOR = ':';
+
+    /**
+     * 根据消息生成指向其之后（更早）消息的游标
+     */
+    public static NotifyCursor of(NotifyMessageLog msg) {
+        return new NotifyCursor(msg.getCreated(), msg.getId());
+    }
+
+    /**
+     * 编码为不透明字符串
+     */
+    public String encode() {
+        String raw = created + String.valueOf(SEPARATOR) + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标字符串
+     *
+     * @param cursor 游标字符串
+     * @return 游标，为空时返回 null
+     * @throws IllegalArgumentException 如果游标格式非法
+     */
+    public static NotifyCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw illegalCursor(cursor, e);
+        }
+        int index = raw.indexOf(SEPARATOR);
+        if (index <= 0 || index == raw.length() - 1) {
+            throw illegalCursor(cursor, null);
+        }
+        try {
+            return new NotifyCursor(Long.parseLong(raw.substring(0, index)), raw.substring(index + 1));
+        } catch (NumberFormatException e) {
+            throw illegalCursor(cursor, e);
+        }
+    }
+
+    private static IllegalArgumentException illegalCursor(String cursor, Exception cause) {
+        return new IllegalArgumentException("NotifyCursor: 非法游标, cursor=" + cursor, cause);
+    }
+}
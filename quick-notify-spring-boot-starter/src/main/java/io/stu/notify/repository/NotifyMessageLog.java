@@ -21,6 +21,11 @@ public class NotifyMessageLog {
     private long created;
     private long lastModified;
 
+    /**
+     * 推送时附带的接收者最新未读数（不持久化），未开启时为 null
+     */
+    private Long unreadCount;
+
     public NotifyMessageLog() {
     }
 
@@ -43,6 +48,7 @@ public class NotifyMessageLog {
                 .receiver(getReceiver())
                 .viewed(isViewed())
                 .created(getCreated())
+                .unreadCount(getUnreadCount())
                 .build();
     }
 }
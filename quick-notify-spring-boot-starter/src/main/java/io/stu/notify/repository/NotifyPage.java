@@ -0,0 +1,16 @@
+package io.stu.notify.repository;
+
+import java.util.List;
+
+/**
+ * 游标分页结果
+ *
+ * @param items      当前页消息
+ * @param nextCursor 下一页游标，没有更多数据时为 null
+ */
+public record NotifyPage(List<NotifyMessageLog> items, String nextCursor) {
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
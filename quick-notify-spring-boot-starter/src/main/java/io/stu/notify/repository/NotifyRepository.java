@@ -1,6 +1,13 @@
 package io.stu.notify.repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * 消息仓储接口。
@@ -15,6 +22,18 @@ public interface NotifyRepository {
      */
     void save(NotifyMessageLog msg);
 
+    /**
+     * 批量保存消息。
+     * 默认逐条调用 {@link #save(NotifyMessageLog)}，实现类可重写为 JDBC 批量写入。
+     *
+     * @param msgs 消息列表
+     */
+    default void saveAll(List<NotifyMessageLog> msgs) {
+        for (NotifyMessageLog msg : msgs) {
+            save(msg);
+        }
+    }
+
     /**
      * 分页查询用户消息
      *
@@ -36,6 +55,171 @@ public interface NotifyRepository {
      */
     List<NotifyMessageLog> findByReceiverBefore(String userId, long created, int offset, int limit);
 
+    /**
+     * 游标分页查询用户消息（按 created、id 倒序，seek 方式，深翻页代价不变）。
+     * 默认实现基于 {@link #findByReceiverBefore}（只用 offset 0）按创建时间向前推进，每次只保留完整的同一毫秒的消息，
+     * 再在内存中按 (created, id) 排序；同一毫秒的消息很多时需要多读，实现类应重写为单次 seek 查询（见 {@link JdbcNotifyRepository}）。
+     *
+     * @param userId  用户ID
+     * @param created 游标时间戳
+     * @param id      游标消息ID，为 null 时返回 created 之前的消息
+     * @param limit   每页数量
+     * @return 排在 (created, id) 之后的消息列表
+     */
+    default List<NotifyMessageLog> findByReceiverAfterCursor(String userId, long created, String id, int limit) {
+        List<NotifyMessageLog> result = new ArrayList<>();
+        if (limit <= 0) {
+            return result;
+        }
+        // 有游标ID时同一毫秒内 id 更小的消息也在游标之后，从 created + 1 之前开始读
+        long before = id == null || created == Long.MAX_VALUE ? created : created + 1;
+        int pageSize = Math.max(limit + 1, 100);
+        while (result.size() < limit) {
+            List<NotifyMessageLog> page = findByReceiverBefore(userId, before, 0, pageSize);
+            boolean last = page.size() < pageSize;
+            long oldest = page.isEmpty() ? 0 : page.get(page.size() - 1).getCreated();
+            if (!last && page.get(0).getCreated() == oldest) {
+                // 整页都是同一毫秒，扩大一页的数量直到读完这一毫秒
+                pageSize *= 2;
+                continue;
+            }
+            for (NotifyMessageLog msg : page) {
+                // 最后一毫秒的消息可能被分页截断，下一轮从这一毫秒重新读取
+                if (!last && msg.getCreated() == oldest) {
+                    break;
+                }
+                if (id == null || msg.getCreated() < created || msg.getId().compareTo(id) < 0) {
+                    result.add(msg);
+                }
+            }
+            if (last) {
+                break;
+            }
+            before = oldest + 1;
+        }
+        result.sort(Comparator.comparingLong(NotifyMessageLog::getCreated)
+                .thenComparing(NotifyMessageLog::getId, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * 同 {@link #findByReceiverBefore}，但 data 为数据库中的 JSON 原文（{@link io.stu.notify.model.RawJson}），
+     * 供只需把 data 原样返回给前端的历史接口使用。默认实现返回解码后的数据。
+     */
+    default List<NotifyMessageLog> findRawByReceiverBefore(String userId, long created, int offset, int limit) {
+        return findByReceiverBefore(userId, created, offset, limit);
+    }
+
+    /**
+     * 同 {@link #findByReceiverAfterCursor}，但 data 为数据库中的 JSON 原文（{@link io.stu.notify.model.RawJson}）。
+     * 默认实现返回解码后的数据。
+     */
+    default List<NotifyMessageLog> findRawByReceiverAfterCursor(String userId, long created, String id, int limit) {
+        return findByReceiverAfterCursor(userId, created, id, limit);
+    }
+
+    /**
+     * 按 (created, id) 正序逐条扫描用户在 [fromCreated, toCreated) 内的消息，不一次性加载到内存，供导出、迁移使用。
+     * <p>
+     * 默认实现基于游标分页（{@link #findRawByReceiverAfterCursor}）读取两遍：第一遍倒序翻页只记录每页的起始游标，
+     * 第二遍从最旧的一页开始逐页读取并反转后回调，内存占用为一页消息加上每页一个游标。
+     * 扫描期间新写入的消息可能不被回调。实现类应重写为单次查询的流式读取，并保持同样的顺序。
+     *
+     * @param userId      用户ID
+     * @param fromCreated 起始时间（含）
+     * @param toCreated   结束时间（不含）
+     * @param action      逐条回调，抛出异常时中止扫描
+     * @return 扫描的消息数
+     */
+    default long scanByReceiver(String userId, long fromCreated, long toCreated, Consumer<NotifyMessageLog> action) {
+        return scanByCursor(userId, fromCreated, toCreated, action, false);
+    }
+
+    /**
+     * 同 {@link #scanByReceiver}，但 data 为数据库中的 JSON 原文（{@link io.stu.notify.model.RawJson}）
+     */
+    default long scanRawByReceiver(String userId, long fromCreated, long toCreated, Consumer<NotifyMessageLog> action) {
+        return scanByCursor(userId, fromCreated, toCreated, action, true);
+    }
+
+    private long scanByCursor(String userId, long fromCreated, long toCreated, Consumer<NotifyMessageLog> action,
+                              boolean rawData) {
+        final int pageSize = 500;
+        // 第一遍：倒序翻页，记录每页的起始游标，直到越过 fromCreated
+        List<Long> pageCreated = new ArrayList<>();
+        List<String> pageId = new ArrayList<>();
+        long created = toCreated;
+        String id = null;
+        while (true) {
+            pageCreated.add(created);
+            pageId.add(id);
+            List<NotifyMessageLog> page = findRawByReceiverAfterCursor(userId, created, id, pageSize);
+            if (page.size() < pageSize) {
+                break;
+            }
+            NotifyMessageLog last = page.get(page.size() - 1);
+            if (last.getCreated() < fromCreated) {
+                break;
+            }
+            created = last.getCreated();
+            id = last.getId();
+        }
+        // 第二遍：从最旧的一页开始，每页只取到上一页的起始游标（含）为止，反转后按正序回调
+        long count = 0;
+        for (int i = pageCreated.size() - 1; i >= 0; i--) {
+            List<NotifyMessageLog> page = rawData
+                    ? findRawByReceiverAfterCursor(userId, pageCreated.get(i), pageId.get(i), pageSize)
+                    : findByReceiverAfterCursor(userId, pageCreated.get(i), pageId.get(i), pageSize);
+            int end = page.size();
+            if (i + 1 < pageCreated.size()) {
+                long boundCreated = pageCreated.get(i + 1);
+                String boundId = pageId.get(i + 1);
+                end = 0;
+                while (end < page.size() && (page.get(end).getCreated() > boundCreated
+                        || (page.get(end).getCreated() == boundCreated && page.get(end).getId().compareTo(boundId) >= 0))) {
+                    end++;
+                }
+            }
+            for (int j = end - 1; j >= 0; j--) {
+                NotifyMessageLog msg = page.get(j);
+                if (msg.getCreated() < fromCreated) {
+                    continue;
+                }
+                action.accept(msg);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 是否支持 {@link #findExpired}。接口中没有跨用户的查询，{@link #findExpired} 默认不返回任何消息，
+     * 返回 false 时 {@link io.stu.notify.retention.NotifyPurger} 不启动清理。
+     */
+    default boolean supportsExpiredQuery() {
+        return false;
+    }
+
+    /**
+     * 按 (created, id) 正序读取所有用户中符合 filter 的消息，
+     * 供 {@link io.stu.notify.retention.NotifyPurger} 按主键分段清理过期消息。
+     * withData 为 false 时只需返回 id、type、receiver、viewed、created，不读取 data；
+     * 为 true 时 data 为 JSON 原文，用于删除前归档。
+     * 默认返回空列表，实现时同时重写 {@link #supportsExpiredQuery()}。
+     *
+     * @param filter       过期条件
+     * @param withData     是否读取 data
+     * @param afterCreated 上一段最后一条消息的创建时间
+     * @param afterId      上一段最后一条消息的ID，为 null 时从头读取
+     * @param limit        每段数量
+     * @return 排在 (afterCreated, afterId) 之后的消息列表
+     */
+    default List<NotifyMessageLog> findExpired(ExpiryFilter filter, boolean withData, long afterCreated,
+                                               String afterId, int limit) {
+        return List.of();
+    }
+
     /**
      * 统计用户未读消息数
      *
@@ -52,6 +236,69 @@ public interface NotifyRepository {
      */
     void markAsRead(String userId, List<String> ids);
 
+    /**
+     * 标记消息为已读并返回由未读变为已读的消息数，供未读计数器增量更新。
+     * 默认调用 {@link #markAsRead} 并返回 -1（条数未知，计数器失效后从数据库重建），实现类可重写返回准确条数。
+     *
+     * @param userId 用户ID
+     * @param ids    消息ID列表
+     * @return 由未读变为已读的消息数，未知时返回 -1
+     */
+    default int markAsReadCount(String userId, List<String> ids) {
+        markAsRead(userId, ids);
+        return -1;
+    }
+
+    /**
+     * 批量标记多个用户的消息为已读，供 {@link WriteBehindNotifyRepository} 定时写入。
+     * 默认逐个用户调用 {@link #markAsReadCount}，实现类可重写为 JDBC 批量更新。
+     *
+     * @param idsByUser 用户ID -> 消息ID
+     * @return 由未读变为已读的消息数（条数未知的用户按 0 计）
+     */
+    default int markAsReadAll(Map<String, ? extends Collection<String>> idsByUser) {
+        int updated = 0;
+        for (Map.Entry<String, ? extends Collection<String>> entry : idsByUser.entrySet()) {
+            updated += Math.max(0, markAsReadCount(entry.getKey(), new ArrayList<>(entry.getValue())));
+        }
+        return updated;
+    }
+
+    /**
+     * 返回 ids 中仍为未读的消息ID（只读查询），供 {@link WriteBehindNotifyRepository} 计算已读条数。
+     * 默认按游标分页（{@link #findRawByReceiverAfterCursor}）从新到旧遍历用户的消息，找齐 ids 后提前结束，
+     * 最坏情况读取用户的全部消息；实现类应重写为按ID查询。
+     *
+     * @param userId 用户ID
+     * @param ids    消息ID列表
+     * @return 未读的消息ID，按 ids 中的顺序去重
+     */
+    default List<String> findUnreadIds(String userId, Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        Set<String> remaining = new HashSet<>(ids);
+        Set<String> unread = new HashSet<>();
+        final int pageSize = 500;
+        long created = Long.MAX_VALUE;
+        String id = null;
+        while (!remaining.isEmpty()) {
+            List<NotifyMessageLog> page = findRawByReceiverAfterCursor(userId, created, id, pageSize);
+            for (NotifyMessageLog msg : page) {
+                if (remaining.remove(msg.getId()) && !msg.isViewed()) {
+                    unread.add(msg.getId());
+                }
+            }
+            if (page.size() < pageSize) {
+                break;
+            }
+            NotifyMessageLog last = page.get(page.size() - 1);
+            created = last.getCreated();
+            id = last.getId();
+        }
+        return ids.stream().filter(unread::remove).toList();
+    }
+
     /**
      * 删除用户消息
      *
@@ -59,4 +306,16 @@ public interface NotifyRepository {
      * @param ids    消息ID列表
      */
     void delete(String userId, List<String> ids);
+
+    /**
+     * 批量删除多个用户的消息，供 {@link io.stu.notify.retention.NotifyPurger} 清理过期消息。
+     * 默认逐个用户调用 {@link #delete}，实现类可重写为 JDBC 批量删除。
+     *
+     * @param idsByUser 用户ID -> 消息ID
+     */
+    default void deleteAll(Map<String, ? extends Collection<String>> idsByUser) {
+        for (Map.Entry<String, ? extends Collection<String>> entry : idsByUser.entrySet()) {
+            delete(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+    }
 }
@@ -0,0 +1,67 @@
+package io.stu.notify.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.support.DefaultSingletonBeanRegistry;
+
+import java.util.function.Function;
+
+/**
+ * 包装容器中的 {@link NotifyRepository} Bean（默认的 JDBC 仓储或用户自定义的仓储）：
+ * 先包装为 {@link CachingNotifyRepository}，再包装为 {@link WriteBehindNotifyRepository}，两层均可不开启。
+ * 已读延迟写入经过缓存层写库，写库后缓存随之更新。
+ * <p>
+ * 包装后的仓储不是独立的 Bean，不会收到 @PostConstruct / @PreDestroy：延迟写入层在包装时启动，
+ * 并以 "{beanName}.writeBehind" 登记为依赖被包装仓储的销毁回调，容器关闭时先写入剩余的已读，再销毁被包装的仓储。
+ */
+@Slf4j
+public class NotifyRepositoryDecorator implements BeanPostProcessor, BeanFactoryAware {
+
+    private final Function<NotifyRepository, CachingNotifyRepository> caching;
+    private final Function<NotifyRepository, WriteBehindNotifyRepository> writeBehind;
+
+    private BeanFactory beanFactory;
+
+    /**
+     * @param caching     由被包装的仓储创建缓存层，为 null 时不开启
+     * @param writeBehind 由被包装的仓储创建延迟写入层，为 null 时不开启
+     */
+    public NotifyRepositoryDecorator(Function<NotifyRepository, CachingNotifyRepository> caching,
+                                     Function<NotifyRepository, WriteBehindNotifyRepository> writeBehind) {
+        this.caching = caching;
+        this.writeBehind = writeBehind;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (!(bean instanceof NotifyRepository repository)
+                || bean instanceof CachingNotifyRepository || bean instanceof WriteBehindNotifyRepository) {
+            return bean;
+        }
+        NotifyRepository decorated = repository;
+        if (caching != null) {
+            decorated = caching.apply(decorated);
+            log.info("[HISTORY-CACHE] 包装仓储 {}, 实现 {}", beanName, repository.getClass().getSimpleName());
+        }
+        if (writeBehind != null) {
+            WriteBehindNotifyRepository writeBehindRepository = writeBehind.apply(decorated);
+            writeBehindRepository.start();
+            if (beanFactory instanceof DefaultSingletonBeanRegistry registry) {
+                String name = beanName + ".writeBehind";
+                registry.registerDisposableBean(name, writeBehindRepository::stop);
+                registry.registerDependentBean(beanName, name);
+            }
+            log.info("[WRITE-BEHIND] 包装仓储 {}, 实现 {}", beanName, repository.getClass().getSimpleName());
+            decorated = writeBehindRepository;
+        }
+        return decorated;
+    }
+}
@@ -0,0 +1,53 @@
+package io.stu.notify.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 已读标记缓冲：{@link WriteBehindNotifyRepository} 先把已读记录在这里，再定时批量写入数据库。
+ * 写入完成前，读取时以缓冲中的记录覆盖数据库中的 viewed。
+ */
+public interface ReadMarkBuffer {
+
+    /**
+     * 记录已读
+     *
+     * @param userId 用户ID
+     * @param ids    消息ID
+     * @return 此前不在缓冲中的消息ID；缓冲已满不再接收时返回 null，调用方应直接写库
+     */
+    List<String> add(String userId, Collection<String> ids);
+
+    /**
+     * 移除记录（消息已删除）
+     *
+     * @param userId 用户ID
+     * @param ids    消息ID
+     */
+    void remove(String userId, Collection<String> ids);
+
+    /**
+     * 获取用户尚未写入数据库的已读记录
+     *
+     * @param userId 用户ID
+     * @return 消息ID，没有时返回空集合
+     */
+    Set<String> get(String userId);
+
+    /**
+     * 取出一批待写入的记录，写入成功后调用 {@link #applied}；未调用时记录保留，下次重新取出
+     *
+     * @param maxUsers 最多取出的用户数
+     * @return 用户ID -> 消息ID
+     */
+    Map<String, Set<String>> pending(int maxUsers);
+
+    /**
+     * 写入成功后移除这批记录，期间新增的记录保留
+     *
+     * @param applied {@link #pending} 返回的记录
+     */
+    void applied(Map<String, Set<String>> applied);
+}
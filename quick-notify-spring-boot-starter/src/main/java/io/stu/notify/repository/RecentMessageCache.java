@@ -0,0 +1,95 @@
+package io.stu.notify.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 用户最近消息缓存，供 {@link CachingNotifyRepository} 直接返回历史消息第一页。
+ * <p>
+ * 每个用户缓存按 (created, id) 倒序排列的最近 N 条消息。变更在事务提交后通知缓存，
+ * 加载与变更并发时通过版本号丢弃加载结果，避免写入过期数据。
+ */
+public interface RecentMessageCache {
+
+    /**
+     * 缓存的最近消息
+     *
+     * @param messages 按 (created, id) 倒序排列，不可修改
+     * @param complete 是否为用户的全部消息（数据库中没有更早的消息）
+     */
+    record Snapshot(List<NotifyMessageLog> messages, boolean complete) {
+
+        /**
+         * 追加新提交的消息：按 id 去重（加载时可能已读到这些消息）后按 (created, id) 倒序排列，
+         * 超出 maxMessages 时截断并标记为不完整
+         *
+         * @param added       新消息
+         * @param maxMessages 每个用户缓存的消息数上限
+         * @return 新的缓存内容
+         */
+        public Snapshot append(List<NotifyMessageLog> added, int maxMessages) {
+            Set<String> ids = new HashSet<>();
+            added.forEach(m -> ids.add(m.getId()));
+            List<NotifyMessageLog> merged = new ArrayList<>(messages.size() + added.size());
+            messages.stream().filter(m -> !ids.contains(m.getId())).forEach(merged::add);
+            added.forEach(m -> merged.add(CachingNotifyRepository.copyOf(m)));
+            merged.sort(CachingNotifyRepository.NEWEST_FIRST);
+            if (merged.size() <= maxMessages) {
+                return new Snapshot(List.copyOf(merged), complete);
+            }
+            return new Snapshot(List.copyOf(merged.subList(0, maxMessages)), false);
+        }
+    }
+
+    /**
+     * 获取缓存
+     *
+     * @param userId 用户ID
+     * @return 未命中时返回 null
+     */
+    Snapshot get(String userId);
+
+    /**
+     * 当前版本号，从数据库加载前读取，写入时传回 {@link #putIfUnchanged}
+     *
+     * @param userId 用户ID
+     * @return 版本号
+     */
+    long version(String userId);
+
+    /**
+     * 版本号未变化（加载期间没有变更）时写入缓存
+     *
+     * @param userId   用户ID
+     * @param version  加载前读取的版本号
+     * @param snapshot 加载结果
+     */
+    void putIfUnchanged(String userId, long version, Snapshot snapshot);
+
+    /**
+     * 新消息已提交
+     *
+     * @param userId   用户ID
+     * @param messages 该用户的新消息
+     */
+    void onSaved(String userId, List<NotifyMessageLog> messages);
+
+    /**
+     * 消息已标记为已读
+     *
+     * @param userId 用户ID
+     * @param ids    消息ID
+     */
+    void onRead(String userId, Collection<String> ids);
+
+    /**
+     * 消息已删除
+     *
+     * @param userId 用户ID
+     * @param ids    消息ID
+     */
+    void onDeleted(String userId, Collection<String> ids);
+}
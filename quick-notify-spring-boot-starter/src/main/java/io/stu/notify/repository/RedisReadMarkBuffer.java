@@ -0,0 +1,192 @@
+package io.stu.notify.repository;
+
+import org.redisson.api.BatchResult;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RScript;
+import org.redisson.api.RSet;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Redis 已读缓冲（集群模式）。
+ * <p>
+ * 每个用户一个 Set（{@code notify::read::{userId}}），另有一个待写入用户集合 {@code notify::read::dirty}，
+ * 任一节点都可以取出写入，节点异常退出不会丢失已读；各节点读取时看到相同的覆盖结果。
+ * 写入成功后只移除写入的那些ID，用户集合为空时才从待写入集合中移除（移除后再确认一次，避免与并发写入竞争）。
+ * <p>
+ * 缓冲的消息ID总数记在 {@code notify::read::size}，达到 maxIds 后不再接收，调用方直接写库；
+ * 计数与集合分开更新，是近似上限。用户集合和计数每次写入时续期 ttlMs，
+ * 长时间未写入（批量写入持续失败）时过期，避免残留；计数过期前偏大时只会多走直接写库。
+ */
+public class RedisReadMarkBuffer implements ReadMarkBuffer {
+
+    private static final String KEY_PREFIX = "notify::read::";
+    private static final String DIRTY_KEY = "notify::read::dirty";
+    private static final String SIZE_KEY = "notify::read::size";
+
+    /**
+     * ARGV[1] 为过期时间（毫秒），其余为消息ID
+     */
+    private static final String ADD_SCRIPT = """
+            local added = {}
+            for i = 2, #ARGV do
+                if redis.call('sadd', KEYS[1], ARGV[i]) == 1 then
+                    added[#added + 1] = ARGV[i]
+                end
+            end
+            redis.call('pexpire', KEYS[1], ARGV[1])
+            return added
+            """;
+
+    private static final String REMOVE_SCRIPT = """
+            local removed = 0
+            for i = 1, #ARGV do
+                removed = removed + redis.call('srem', KEYS[1], ARGV[i])
+            end
+            return removed
+            """;
+
+    private final RedissonClient redisson;
+    private final int maxIds;
+    private final long ttlMs;
+
+    public RedisReadMarkBuffer(RedissonClient redisson, int maxIds, long ttlMs) {
+        if (maxIds <= 0 || ttlMs <= 0) {
+            throw new IllegalArgumentException("RedisReadMarkBuffer: 非法参数, maxIds=" + maxIds + ", ttlMs=" + ttlMs);
+        }
+        this.redisson = redisson;
+        this.maxIds = maxIds;
+        this.ttlMs = ttlMs;
+    }
+
+    @Override
+    public List<String> add(String userId, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        if (size() + ids.size() > maxIds) {
+            return null;
+        }
+        String key = KEY_PREFIX + userId;
+        Object[] args = new Object[ids.size() + 1];
+        args[0] = String.valueOf(ttlMs);
+        int i = 1;
+        for (String id : ids) {
+            args[i++] = id;
+        }
+        // 先写用户集合再标记待写入，与 applied 的移除顺序相反
+        RBatch batch = redisson.createBatch();
+        RFuture<List<Object>> added = batch.getScript(StringCodec.INSTANCE).evalAsync(key, RScript.Mode.READ_WRITE,
+                ADD_SCRIPT, RScript.ReturnType.MULTI, List.of(key), args);
+        batch.getSet(DIRTY_KEY, StringCodec.INSTANCE).addAsync(userId);
+        batch.execute();
+        List<String> result = new ArrayList<>();
+        for (Object id : added.toCompletableFuture().join()) {
+            result.add((String) id);
+        }
+        if (!result.isEmpty()) {
+            RBatch count = redisson.createBatch();
+            count.getAtomicLong(SIZE_KEY).addAndGetAsync(result.size());
+            count.getAtomicLong(SIZE_KEY).expireAsync(Duration.ofMillis(ttlMs));
+            count.execute();
+        }
+        return result;
+    }
+
+    @Override
+    public void remove(String userId, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        String key = KEY_PREFIX + userId;
+        Long removed = redisson.getScript(StringCodec.INSTANCE).eval(key, RScript.Mode.READ_WRITE,
+                REMOVE_SCRIPT, RScript.ReturnType.INTEGER, List.of(key), ids.toArray());
+        decrementSize(removed);
+    }
+
+    @Override
+    public Set<String> get(String userId) {
+        return userSet(userId).readAll();
+    }
+
+    @Override
+    public Map<String, Set<String>> pending(int maxUsers) {
+        Set<String> users = redisson.<String>getSet(DIRTY_KEY, StringCodec.INSTANCE).random(maxUsers);
+        if (users.isEmpty()) {
+            return Map.of();
+        }
+        List<String> userIds = new ArrayList<>(users);
+        RBatch batch = redisson.createBatch();
+        userIds.forEach(userId -> batch.<String>getSet(KEY_PREFIX + userId, StringCodec.INSTANCE).readAllAsync());
+        BatchResult<?> result = batch.execute();
+        Map<String, Set<String>> pending = new HashMap<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            // 空集合也返回，applied 时从待写入集合中移除
+            @SuppressWarnings("unchecked")
+            Set<String> ids = (Set<String>) result.getResponses().get(i);
+            pending.put(userIds.get(i), new LinkedHashSet<>(ids));
+        }
+        return pending;
+    }
+
+    @Override
+    public void applied(Map<String, Set<String>> applied) {
+        if (applied.isEmpty()) {
+            return;
+        }
+        List<String> userIds = new ArrayList<>(applied.keySet());
+        RBatch remove = redisson.createBatch();
+        List<RFuture<Long>> removed = new ArrayList<>();
+        applied.forEach((userId, ids) -> {
+            if (!ids.isEmpty()) {
+                String key = KEY_PREFIX + userId;
+                removed.add(remove.getScript(StringCodec.INSTANCE).evalAsync(key, RScript.Mode.READ_WRITE,
+                        REMOVE_SCRIPT, RScript.ReturnType.INTEGER, List.of(key), ids.toArray()));
+            }
+        });
+        remove.getSet(DIRTY_KEY, StringCodec.INSTANCE).removeAllAsync(userIds);
+        remove.execute();
+        decrementSize(removed.stream().mapToLong(f -> f.toCompletableFuture().join()).sum());
+
+        // 移除期间有新的已读写入时重新标记
+        RBatch check = redisson.createBatch();
+        userIds.forEach(userId -> check.getSet(KEY_PREFIX + userId, StringCodec.INSTANCE).sizeAsync());
+        List<?> sizes = check.execute().getResponses();
+        List<String> remaining = new ArrayList<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            if (((Number) sizes.get(i)).intValue() > 0) {
+                remaining.add(userIds.get(i));
+            }
+        }
+        if (!remaining.isEmpty()) {
+            redisson.<String>getSet(DIRTY_KEY, StringCodec.INSTANCE).addAll(remaining);
+        }
+    }
+
+    /**
+     * 缓冲中的消息ID总数（近似值）
+     */
+    public long size() {
+        return Math.max(0, redisson.getAtomicLong(SIZE_KEY).get());
+    }
+
+    private void decrementSize(Long removed) {
+        if (removed != null && removed > 0) {
+            redisson.getAtomicLong(SIZE_KEY).addAndGet(-removed);
+        }
+    }
+
+    private RSet<String> userSet(String userId) {
+        return redisson.getSet(KEY_PREFIX + userId, StringCodec.INSTANCE);
+    }
+}
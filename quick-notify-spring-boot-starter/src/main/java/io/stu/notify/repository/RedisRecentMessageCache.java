@@ -0,0 +1,171 @@
+package io.stu.notify.repository;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.stu.notify.model.MessageTypeRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Redis 最近消息缓存（集群模式）。
+ * <p>
+ * 每个用户一个 Hash（{@code notify::recent::{userId}}），field {@code ver} 为版本号，{@code entry} 为缓存内容 JSON，
+ * key 在 ttlMs 后过期，总容量由过期时间和 Redis 的淘汰策略控制。
+ * 新消息提交后读出缓存追加并在版本号未变时写回（版本号加一），不需要重新加载；写回冲突时退化为失效。
+ * 已读、删除直接使缓存失效（版本号加一并删除 entry），下一次读取时重新加载。版本号每次变更都加一，各节点看到的缓存一致。
+ */
+@Slf4j
+public class RedisRecentMessageCache implements RecentMessageCache {
+
+    private static final String KEY_PREFIX = "notify::recent::";
+
+    private static final String PUT_SCRIPT = """
+            local ver = redis.call('hget', KEYS[1], 'ver') or '0'
+            if ver ~= ARGV[1] then
+                return 0
+            end
+            redis.call('hset', KEYS[1], 'entry', ARGV[2])
+            redis.call('pexpire', KEYS[1], ARGV[3])
+            return 1
+            """;
+
+    private static final String APPEND_SCRIPT = """
+            local ver = redis.call('hget', KEYS[1], 'ver') or '0'
+            if ver ~= ARGV[1] then
+                return 0
+            end
+            redis.call('hincrby', KEYS[1], 'ver', 1)
+            redis.call('hset', KEYS[1], 'entry', ARGV[2])
+            redis.call('pexpire', KEYS[1], ARGV[3])
+            return 1
+            """;
+
+    private static final String INVALIDATE_SCRIPT = """
+            redis.call('hincrby', KEYS[1], 'ver', 1)
+            redis.call('hdel', KEYS[1], 'entry')
+            redis.call('pexpire', KEYS[1], ARGV[1])
+            return 1
+            """;
+
+    private final RedissonClient redisson;
+    private final ObjectMapper objectMapper;
+    private final int maxMessages;
+    private final long ttlMs;
+
+    public RedisRecentMessageCache(RedissonClient redisson, ObjectMapper objectMapper, int maxMessages, long ttlMs) {
+        if (maxMessages <= 0 || ttlMs <= 0) {
+            throw new IllegalArgumentException("RedisRecentMessageCache: 非法参数, maxMessages=" + maxMessages
+                    + ", ttlMs=" + ttlMs);
+        }
+        this.redisson = redisson;
+        this.objectMapper = objectMapper;
+        this.maxMessages = maxMessages;
+        this.ttlMs = ttlMs;
+    }
+
+    @Override
+    public Snapshot get(String userId) {
+        return decode(userId, redisson.<String, String>getMap(KEY_PREFIX + userId, StringCodec.INSTANCE).get("entry"));
+    }
+
+    @Override
+    public long version(String userId) {
+        String ver = redisson.<String, String>getMap(KEY_PREFIX + userId, StringCodec.INSTANCE).get("ver");
+        return ver != null ? Long.parseLong(ver) : 0;
+    }
+
+    @Override
+    public void putIfUnchanged(String userId, long version, Snapshot snapshot) {
+        String json = encode(userId, snapshot);
+        if (json == null) {
+            return;
+        }
+        String key = KEY_PREFIX + userId;
+        redisson.getScript(StringCodec.INSTANCE).eval(key, RScript.Mode.READ_WRITE, PUT_SCRIPT,
+                RScript.ReturnType.INTEGER, List.of(key), String.valueOf(version), json, ttlMs);
+    }
+
+    /**
+     * 缓存存在时追加后写回，不存在时只增加版本号，使加载中的结果（可能不含新消息）被丢弃
+     */
+    @Override
+    public void onSaved(String userId, List<NotifyMessageLog> messages) {
+        String key = KEY_PREFIX + userId;
+        Map<String, String> fields = redisson.<String, String>getMap(key, StringCodec.INSTANCE)
+                .getAll(Set.of("ver", "entry"));
+        Snapshot current = decode(userId, fields.get("entry"));
+        String json = current != null ? encode(userId, current.append(messages, maxMessages)) : null;
+        if (json == null) {
+            invalidate(userId);
+            return;
+        }
+        String ver = fields.getOrDefault("ver", "0");
+        Long appended = redisson.getScript(StringCodec.INSTANCE).eval(key, RScript.Mode.READ_WRITE, APPEND_SCRIPT,
+                RScript.ReturnType.INTEGER, List.of(key), ver, json, ttlMs);
+        if (appended == null || appended == 0) {
+            // 读取后有其他变更，放弃追加
+            invalidate(userId);
+        }
+    }
+
+    @Override
+    public void onRead(String userId, Collection<String> ids) {
+        invalidate(userId);
+    }
+
+    @Override
+    public void onDeleted(String userId, Collection<String> ids) {
+        invalidate(userId);
+    }
+
+    private void invalidate(String userId) {
+        String key = KEY_PREFIX + userId;
+        redisson.getScript(StringCodec.INSTANCE).eval(key, RScript.Mode.READ_WRITE, INVALIDATE_SCRIPT,
+                RScript.ReturnType.INTEGER, List.of(key), ttlMs);
+    }
+
+    private Snapshot decode(String userId, String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            Entry entry = objectMapper.readValue(json, Entry.class);
+            entry.messages().forEach(this::decodeData);
+            return new Snapshot(List.copyOf(entry.messages()), entry.complete());
+        } catch (Exception e) {
+            log.warn("[RECENT-CACHE] 缓存解析失败, 按未命中处理, receiver {}: {}", userId, e.getMessage());
+            return null;
+        }
+    }
+
+    private String encode(String userId, Snapshot snapshot) {
+        try {
+            return objectMapper.writeValueAsString(new Entry(snapshot.complete(), snapshot.messages()));
+        } catch (JsonProcessingException e) {
+            log.warn("[RECENT-CACHE] 缓存编码失败, 不写入, receiver {}: {}", userId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * data 按注册的数据类还原，与直接查询数据库时的类型一致
+     */
+    private void decodeData(NotifyMessageLog message) {
+        Class<?> dataClass = MessageTypeRegistry.getDataClass(message.getType());
+        if (dataClass != null && message.getData() != null && !dataClass.isInstance(message.getData())) {
+            message.setData(objectMapper.convertValue(message.getData(), dataClass));
+        }
+    }
+
+    private record Entry(@JsonProperty("complete") boolean complete,
+                         @JsonProperty("messages") List<NotifyMessageLog> messages) {
+    }
+}
@@ -0,0 +1,326 @@
+package io.stu.notify.repository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 已读延迟写入（可选，配置 notify.write-behind.enabled=true 开启）。
+ * <p>
+ * {@link #markAsRead} 只做一次只读查询（哪些消息仍未读），把这些ID记入 {@link ReadMarkBuffer} 后返回，
+ * 不在调用方请求中执行 UPDATE；后台线程每 flushIntervalMs 取出一批用户，通过
+ * {@link NotifyRepository#markAsReadAll} 批量写入。
+ * 写入前的读取以缓冲覆盖：查询结果中缓冲里的消息 viewed 置为 true，未读数扣除缓冲中仍未写入的条数。
+ * 在调用方事务中标记已读时，调用方事务提交后才记入缓冲，回滚时不留下已读。
+ * 其余操作直接委托给被包装的仓储。由 {@link NotifyRepositoryDecorator} 包装容器中的 {@link NotifyRepository} Bean，
+ * 自定义仓储同样生效；被包装的仓储应重写 {@link NotifyRepository#findUnreadIds} 为按ID查询。
+ */
+@Slf4j
+public class WriteBehindNotifyRepository implements NotifyRepository {
+
+    private final NotifyRepository delegate;
+    private final ReadMarkBuffer buffer;
+    private final long flushIntervalMs;
+    private final int flushBatchUsers;
+
+    private TransactionTemplate transactionTemplate;
+    private TransactionTemplate directTemplate;
+    private ScheduledExecutorService flusher;
+
+    public WriteBehindNotifyRepository(NotifyRepository delegate, ReadMarkBuffer buffer,
+                                       long flushIntervalMs, int flushBatchUsers) {
+        if (flushIntervalMs <= 0 || flushBatchUsers <= 0) {
+            throw new IllegalArgumentException("WriteBehind: 非法参数, flushIntervalMs=" + flushIntervalMs
+                    + ", flushBatchUsers=" + flushBatchUsers);
+        }
+        this.delegate = delegate;
+        this.buffer = buffer;
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushBatchUsers = flushBatchUsers;
+    }
+
+    /**
+     * 设置后每批在一个事务中写入，各行的 viewed 同时生效，{@link #countUnread} 不会读到写了一半的批次
+     */
+    public void setTransactionTemplate(TransactionTemplate transactionTemplate) {
+        this.transactionTemplate = transactionTemplate;
+        // 调用方事务提交后缓冲已满时直接写库，需要新事务，不能加入已提交的事务
+        this.directTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.directTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (flusher != null) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "quick-notify-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushAll, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("[WRITE-BEHIND] 启动, flushIntervalMs {}, flushBatchUsers {}, buffer {}",
+                flushIntervalMs, flushBatchUsers, buffer.getClass().getSimpleName());
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flusher = null;
+        // 停止前写入剩余的已读
+        flushAll();
+        log.info("[WRITE-BEHIND] 已停止");
+    }
+
+    /**
+     * 写入一批缓冲中的已读
+     *
+     * @return 本批用户数，为 0 时表示缓冲已空
+     */
+    public int flush() {
+        Map<String, Set<String>> batch = buffer.pending(flushBatchUsers);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        int updated = transactionTemplate != null
+                ? transactionTemplate.execute(status -> delegate.markAsReadAll(batch))
+                : delegate.markAsReadAll(batch);
+        buffer.applied(batch);
+        log.debug("[WRITE-BEHIND] 批次写入完成, users {}, updated {}", batch.size(), updated);
+        return batch.size();
+    }
+
+    private void flushAll() {
+        try {
+            // 积压时连续写入，直到取出的不满一批
+            while (flush() >= flushBatchUsers) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            // 兜底，避免定时任务终止；记录保留在缓冲中，下次重试
+            log.error("[WRITE-BEHIND] 批次写入失败", e);
+        }
+    }
+
+    // ==================== 已读：写缓冲 ====================
+
+    @Override
+    public void markAsRead(String userId, List<String> ids) {
+        markAsReadCount(userId, ids);
+    }
+
+    @Override
+    public int markAsReadCount(String userId, List<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return 0;
+        }
+        List<String> unread = delegate.findUnreadIds(userId, ids);
+        if (unread.isEmpty()) {
+            return 0;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return bufferOrWrite(userId, unread, false);
+        }
+        // 调用方事务提交后再记入缓冲，已在缓冲中的消息之前已计入
+        List<String> pending = new ArrayList<>(unread);
+        pending.removeAll(buffer.get(userId));
+        if (!pending.isEmpty()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bufferOrWrite(userId, pending, true);
+                }
+            });
+        }
+        return pending.size();
+    }
+
+    /**
+     * 记入缓冲，缓冲已满时直接写库
+     *
+     * @param committed 是否在调用方事务提交后执行（直接写库时开启新事务）
+     * @return 新标记为已读的条数
+     */
+    private int bufferOrWrite(String userId, List<String> unread, boolean committed) {
+        List<String> added = buffer.add(userId, unread);
+        if (added != null) {
+            // 已在缓冲中的消息之前已计入
+            return added.size();
+        }
+        List<String> direct = new ArrayList<>(unread);
+        direct.removeAll(buffer.get(userId));
+        log.debug("[WRITE-BEHIND] 缓冲已满, 直接写入, receiver {}, ids {}", userId, direct.size());
+        if (committed && directTemplate != null) {
+            return directTemplate.execute(status -> delegate.markAsReadCount(userId, direct));
+        }
+        return delegate.markAsReadCount(userId, direct);
+    }
+
+    @Override
+    public int markAsReadAll(Map<String, ? extends Collection<String>> idsByUser) {
+        return delegate.markAsReadAll(idsByUser);
+    }
+
+    @Override
+    public List<String> findUnreadIds(String userId, Collection<String> ids) {
+        List<String> unread = delegate.findUnreadIds(userId, ids);
+        if (unread.isEmpty()) {
+            return unread;
+        }
+        Set<String> read = buffer.get(userId);
+        return read.isEmpty() ? unread : unread.stream().filter(id -> !read.contains(id)).toList();
+    }
+
+    /**
+     * 数据库未读数扣除缓冲中仍未写入的条数：先统计再用一次 {@link NotifyRepository#findUnreadIds} 查出缓冲中
+     * 仍未读的ID，已写入或已删除的不重复扣除，扣除数不超过缓冲大小。
+     * 两次查询之间恰有批次写入时，这批已读在本次结果中仍计为未读，只会短暂偏多，不会偏少
+     */
+    @Override
+    public long countUnread(String userId) {
+        Set<String> read = buffer.get(userId);
+        long count = delegate.countUnread(userId);
+        if (read.isEmpty() || count == 0) {
+            return count;
+        }
+        int pending = Math.min(read.size(), delegate.findUnreadIds(userId, read).size());
+        return Math.max(0, count - pending);
+    }
+
+    @Override
+    public void delete(String userId, List<String> ids) {
+        delegate.delete(userId, ids);
+        if (ids != null && !ids.isEmpty()) {
+            buffer.remove(userId, ids);
+        }
+    }
+
+    @Override
+    public void deleteAll(Map<String, ? extends Collection<String>> idsByUser) {
+        delegate.deleteAll(idsByUser);
+        idsByUser.forEach((userId, ids) -> buffer.remove(userId, ids));
+    }
+
+    // ==================== 查询：以缓冲覆盖 viewed ====================
+
+    @Override
+    public List<NotifyMessageLog> findByReceiver(String userId, int offset, int limit) {
+        Set<String> read = buffer.get(userId);
+        return overlay(read, delegate.findByReceiver(userId, offset, limit));
+    }
+
+    @Override
+    public List<NotifyMessageLog> findByReceiverBefore(String userId, long created, int offset, int limit) {
+        Set<String> read = buffer.get(userId);
+        return overlay(read, delegate.findByReceiverBefore(userId, created, offset, limit));
+    }
+
+    @Override
+    public List<NotifyMessageLog> findByReceiverAfterCursor(String userId, long created, String id, int limit) {
+        Set<String> read = buffer.get(userId);
+        return overlay(read, delegate.findByReceiverAfterCursor(userId, created, id, limit));
+    }
+
+    @Override
+    public List<NotifyMessageLog> findRawByReceiverBefore(String userId, long created, int offset, int limit) {
+        Set<String> read = buffer.get(userId);
+        return overlay(read, delegate.findRawByReceiverBefore(userId, created, offset, limit));
+    }
+
+    @Override
+    public List<NotifyMessageLog> findRawByReceiverAfterCursor(String userId, long created, String id, int limit) {
+        Set<String> read = buffer.get(userId);
+        return overlay(read, delegate.findRawByReceiverAfterCursor(userId, created, id, limit));
+    }
+
+    @Override
+    public long scanByReceiver(String userId, long fromCreated, long toCreated, Consumer<NotifyMessageLog> action) {
+        return delegate.scanByReceiver(userId, fromCreated, toCreated, overlay(userId, action));
+    }
+
+    @Override
+    public long scanRawByReceiver(String userId, long fromCreated, long toCreated, Consumer<NotifyMessageLog> action) {
+        return delegate.scanRawByReceiver(userId, fromCreated, toCreated, overlay(userId, action));
+    }
+
+    @Override
+    public boolean supportsExpiredQuery() {
+        return delegate.supportsExpiredQuery();
+    }
+
+    /**
+     * 清理过期消息用，按数据库中的 viewed 判断，不以缓冲覆盖（每条消息查一次缓冲开销过大）
+     */
+    @Override
+    public List<NotifyMessageLog> findExpired(ExpiryFilter filter, boolean withData, long afterCreated,
+                                              String afterId, int limit) {
+        return delegate.findExpired(filter, withData, afterCreated, afterId, limit);
+    }
+
+    // ==================== 写入：直接委托 ====================
+
+    @Override
+    public void save(NotifyMessageLog msg) {
+        delegate.save(msg);
+    }
+
+    @Override
+    public void saveAll(List<NotifyMessageLog> msgs) {
+        delegate.saveAll(msgs);
+    }
+
+    /**
+     * 缓冲在查询数据库之前读取：两者之间写入的批次在数据库结果中已是已读，不会出现已读又变回未读
+     */
+    private static List<NotifyMessageLog> overlay(Set<String> read, List<NotifyMessageLog> rows) {
+        if (!read.isEmpty()) {
+            for (NotifyMessageLog row : rows) {
+                if (!row.isViewed() && read.contains(row.getId())) {
+                    row.setViewed(true);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 扫描开始前读取一次缓冲，扫描期间新增的已读不再覆盖
+     */
+    private Consumer<NotifyMessageLog> overlay(String userId, Consumer<NotifyMessageLog> action) {
+        Set<String> read = buffer.get(userId);
+        if (read.isEmpty()) {
+            return action;
+        }
+        return msg -> {
+            if (!msg.isViewed() && read.contains(msg.getId())) {
+                msg.setViewed(true);
+            }
+            action.accept(msg);
+        };
+    }
+}
@@ -0,0 +1,67 @@
+package io.stu.notify.retention;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.stu.notify.repository.NotifyMessageLog;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 归档到本地 gzip 压缩的 NDJSON 文件（配置 notify.retention.archive-dir 开启）。
+ * <p>
+ * 每天一个文件 {@code notify-archive-yyyyMMdd.ndjson.gz}，每行一条消息
+ * （id、type、receiver、data、viewed、created，data 为数据库中的 JSON 原文）。
+ * 每段追加为一个独立的 gzip member 并 fsync 后才返回，进程中途退出不会损坏之前的内容；
+ * 多个 member 拼接仍是合法的 gzip 文件，zcat 和 {@link java.util.zip.GZIPInputStream} 可直接读取。
+ */
+public class GzipNdjsonArchiver implements NotifyArchiver {
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final Path directory;
+    private final ObjectWriter writer;
+
+    public GzipNdjsonArchiver(Path directory, ObjectMapper objectMapper) {
+        this.directory = directory;
+        this.writer = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    public synchronized void archive(List<NotifyMessageLog> messages) throws IOException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        Files.createDirectories(directory);
+        Path file = directory.resolve("notify-archive-" + LocalDate.now().format(DAY) + ".ndjson.gz");
+        try (FileOutputStream fileOut = new FileOutputStream(file.toFile(), true)) {
+            GZIPOutputStream gzip = new GZIPOutputStream(new BufferedOutputStream(fileOut, 64 * 1024), 64 * 1024);
+            for (NotifyMessageLog msg : messages) {
+                writeLine(gzip, msg);
+            }
+            gzip.finish();
+            gzip.flush();
+            // 删除数据库中的行之前确保归档已落盘
+            fileOut.getFD().sync();
+        }
+    }
+
+    private void writeLine(OutputStream out, NotifyMessageLog msg) throws IOException {
+        writer.writeValue(out, new ArchivedMessage(msg.getId(), msg.getType(), msg.getReceiver(), msg.getData(),
+                msg.isViewed(), msg.getCreated()));
+        out.write('\n');
+    }
+
+    private record ArchivedMessage(String id, String type, String receiver, Object data,
+                                   boolean viewed, long created) {
+    }
+}
@@ -0,0 +1,23 @@
+package io.stu.notify.retention;
+
+import io.stu.notify.repository.NotifyMessageLog;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 过期消息归档：{@link NotifyPurger} 删除每一段过期消息前调用。
+ * <p>
+ * 返回前需保证消息已持久保存；抛出异常时本段不删除，本次清理中止，下次清理重新归档。
+ * 因此同一条消息可能被归档多次，归档的读取方应按 id 去重。
+ */
+public interface NotifyArchiver {
+
+    /**
+     * 归档一段过期消息
+     *
+     * @param messages 按 (created, id) 正序排列，data 为 JSON 原文（{@link io.stu.notify.model.RawJson}）
+     * @throws IOException 归档失败
+     */
+    void archive(List<NotifyMessageLog> messages) throws IOException;
+}
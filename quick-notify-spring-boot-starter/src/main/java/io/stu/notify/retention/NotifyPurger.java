@@ -0,0 +1,293 @@
+package io.stu.notify.retention;
+
+import io.stu.notify.counter.UnreadCounter;
+import io.stu.notify.metrics.NotifyMetrics;
+import io.stu.notify.model.MessageTypeRegistry;
+import io.stu.notify.model.RetentionPolicy;
+import io.stu.notify.repository.ExpiryFilter;
+import io.stu.notify.repository.NotifyMessageLog;
+import io.stu.notify.repository.NotifyRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 过期消息清理（可选，配置 notify.retention.enabled=true 开启）。
+ * <p>
+ * 每 intervalMs 按 {@link RetentionPolicy} 分趟清理：每个注册了策略的消息类型的已读、未读各一趟，
+ * 其余类型按默认策略各一趟（排除已注册的类型），每趟的过期时间上限在 SQL 中过滤（{@link ExpiryFilter}），
+ * 只读取过期的行，且不读取 data（配置了 {@link NotifyArchiver} 时才读取，用于归档）。
+ * 每趟按 (created, id) 正序分段读取，每段先归档，再按主键批量删除，段与段之间暂停 pauseMs，
+ * 每次只短时间锁定一段的行，不长时间占用锁和 IO。
+ * 仓储不支持过期消息查询（{@link NotifyRepository#supportsExpiredQuery()}）时不启动。
+ * 集群模式下通过 Redis 锁保证同一时间只有一个节点在清理。
+ * 删除了未读消息的用户，其未读计数失效后从数据库重建。
+ */
+@Slf4j
+public class NotifyPurger {
+
+    private static final String LOCK_KEY = "notify::retention::lock";
+
+    private final NotifyRepository repository;
+    private final RetentionPolicy defaultPolicy;
+    private final long intervalMs;
+    private final int chunkSize;
+    private final long pauseMs;
+
+    private NotifyArchiver archiver;
+    private UnreadCounter unreadCounter;
+    private TransactionTemplate transactionTemplate;
+    private RedissonClient redisson;
+    private NotifyMetrics metrics = NotifyMetrics.NOOP;
+
+    private ScheduledExecutorService scheduler;
+    private volatile boolean stopping;
+
+    public NotifyPurger(NotifyRepository repository, RetentionPolicy defaultPolicy,
+                        long intervalMs, int chunkSize, long pauseMs) {
+        if (intervalMs <= 0 || chunkSize <= 0 || pauseMs < 0) {
+            throw new IllegalArgumentException("Retention: 非法参数, intervalMs=" + intervalMs
+                    + ", chunkSize=" + chunkSize + ", pauseMs=" + pauseMs);
+        }
+        this.repository = repository;
+        this.defaultPolicy = defaultPolicy;
+        this.intervalMs = intervalMs;
+        this.chunkSize = chunkSize;
+        this.pauseMs = pauseMs;
+    }
+
+    /**
+     * 设置后删除前先归档，归档失败时不删除
+     */
+    public void setArchiver(NotifyArchiver archiver) {
+        this.archiver = archiver;
+    }
+
+    public void setUnreadCounter(UnreadCounter unreadCounter) {
+        this.unreadCounter = unreadCounter;
+    }
+
+    /**
+     * 设置后每段在一个事务中删除
+     */
+    public void setTransactionTemplate(TransactionTemplate transactionTemplate) {
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * 集群模式设置，多个节点中同一时间只有一个执行清理
+     */
+    public void setRedisson(RedissonClient redisson) {
+        this.redisson = redisson;
+    }
+
+    public void setMetrics(NotifyMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        if (!repository.supportsExpiredQuery()) {
+            log.warn("[RETENTION] 仓储 {} 不支持过期消息查询, 不启动清理", repository.getClass().getSimpleName());
+            return;
+        }
+        stopping = false;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "quick-notify-retention");
+            t.setDaemon(true);
+            return t;
+        });
+        // 启动后不等满一个周期，频繁重启的应用也能执行到清理
+        long initialDelay = Math.min(intervalMs, 60_000);
+        scheduler.scheduleWithFixedDelay(this::purgeQuietly, initialDelay, intervalMs, TimeUnit.MILLISECONDS);
+        log.info("[RETENTION] 启动, defaultPolicy {}, intervalMs {}, chunkSize {}, pauseMs {}, archiver {}",
+                defaultPolicy, intervalMs, chunkSize, pauseMs,
+                archiver != null ? archiver.getClass().getSimpleName() : "none");
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        // 正在进行的清理在当前段结束后退出
+        stopping = true;
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+        log.info("[RETENTION] 已停止");
+    }
+
+    private void purgeQuietly() {
+        try {
+            purge();
+        } catch (Exception e) {
+            // 兜底，避免定时任务终止；未删除的消息下次重试
+            log.error("[RETENTION] 清理失败", e);
+        }
+    }
+
+    /**
+     * 执行一次清理
+     *
+     * @return 删除的消息数，集群中其他节点正在清理时返回 0
+     * @throws UncheckedIOException 归档失败，已归档的段已删除，其余保留
+     */
+    public long purge() {
+        if (redisson == null) {
+            return purgeExpired();
+        }
+        RLock lock = redisson.getLock(LOCK_KEY);
+        if (!lock.tryLock()) {
+            log.debug("[RETENTION] 其他节点正在清理, 跳过");
+            return 0;
+        }
+        try {
+            return purgeExpired();
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private long purgeExpired() {
+        List<ExpiryFilter> filters = filters(defaultPolicy, MessageTypeRegistry.getRetentionPolicies(),
+                System.currentTimeMillis());
+        long startNanos = System.nanoTime();
+        long purged = 0;
+        for (ExpiryFilter filter : filters) {
+            if (stopping) {
+                break;
+            }
+            purged += purgePass(filter);
+        }
+        log.info("[RETENTION] 清理完成, passes {}, purged {}, cost {}ms",
+                filters.size(), purged, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        return purged;
+    }
+
+    /**
+     * 一趟清理：分段读取符合条件的消息并删除
+     */
+    private long purgePass(ExpiryFilter filter) {
+        long purged = 0;
+        long afterCreated = 0;
+        String afterId = null;
+        while (!stopping) {
+            List<NotifyMessageLog> expired = repository.findExpired(filter, archiver != null,
+                    afterCreated, afterId, chunkSize);
+            if (expired.isEmpty()) {
+                break;
+            }
+            purgeChunk(expired);
+            purged += expired.size();
+            if (expired.size() < chunkSize) {
+                break;
+            }
+            NotifyMessageLog last = expired.get(expired.size() - 1);
+            afterCreated = last.getCreated();
+            afterId = last.getId();
+            if (!pause()) {
+                break;
+            }
+        }
+        return purged;
+    }
+
+    private void purgeChunk(List<NotifyMessageLog> expired) {
+        if (archiver != null) {
+            try {
+                archiver.archive(expired);
+            } catch (IOException e) {
+                throw new UncheckedIOException("归档失败, 本段未删除", e);
+            }
+        }
+        Map<String, List<String>> idsByUser = new LinkedHashMap<>();
+        Set<String> unreadUsers = new HashSet<>();
+        Map<String, Integer> countByType = new HashMap<>();
+        for (NotifyMessageLog msg : expired) {
+            idsByUser.computeIfAbsent(msg.getReceiver(), k -> new ArrayList<>()).add(msg.getId());
+            if (!msg.isViewed()) {
+                unreadUsers.add(msg.getReceiver());
+            }
+            countByType.merge(msg.getType(), 1, Integer::sum);
+        }
+        if (transactionTemplate != null) {
+            transactionTemplate.executeWithoutResult(status -> repository.deleteAll(idsByUser));
+        } else {
+            repository.deleteAll(idsByUser);
+        }
+        if (unreadCounter != null) {
+            unreadUsers.forEach(unreadCounter::evict);
+        }
+        countByType.forEach(metrics::retentionPurged);
+        log.debug("[RETENTION] 删除一段, users {}, messages {}", idsByUser.size(), expired.size());
+    }
+
+    /**
+     * 按保留策略生成各趟清理的条件：注册了策略的类型各自一趟，其余类型按默认策略，永久保留的不生成
+     *
+     * @param defaultPolicy 默认策略
+     * @param policies      类型名称 -> 保留策略
+     * @param now           当前时间
+     */
+    static List<ExpiryFilter> filters(RetentionPolicy defaultPolicy, Map<String, RetentionPolicy> policies, long now) {
+        List<ExpiryFilter> filters = new ArrayList<>();
+        for (Map.Entry<String, RetentionPolicy> entry : new TreeMap<>(policies).entrySet()) {
+            for (boolean viewed : new boolean[]{true, false}) {
+                long createdBefore = entry.getValue().expiredBefore(viewed, now);
+                if (createdBefore != Long.MIN_VALUE) {
+                    filters.add(ExpiryFilter.ofType(entry.getKey(), viewed, createdBefore));
+                }
+            }
+        }
+        for (boolean viewed : new boolean[]{true, false}) {
+            long createdBefore = defaultPolicy.expiredBefore(viewed, now);
+            if (createdBefore != Long.MIN_VALUE) {
+                filters.add(ExpiryFilter.excluding(policies.keySet(), viewed, createdBefore));
+            }
+        }
+        return filters;
+    }
+
+    /**
+     * @return 被中断（停止）时返回 false
+     */
+    private boolean pause() {
+        if (pauseMs == 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(pauseMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
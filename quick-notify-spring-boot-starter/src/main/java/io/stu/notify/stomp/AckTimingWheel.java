@@ -0,0 +1,159 @@
+package io.stu.notify.stomp;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 哈希时间轮，用于调度待确认消息的重试与过期。
+ * <p>
+ * 任务按到期时间落入对应槽位，每次推进只遍历当前槽位，代价与到期任务数相关，而与待确认总数无关。
+ * {@link #schedule(Object, long)} 可在任意线程调用；{@link #advance(long, Consumer)} 只能由单一线程调用。
+ * 调度返回 {@link Timeout}，可在任意线程取消；已取消的任务在推进到所在槽位时移除，不再回调。
+ *
+ * @param <T> 任务类型
+ */
+public class AckTimingWheel<T> {
+
+    private final long tickMs;
+    private final int mask;
+    private final ArrayDeque<Timeout<T>>[] buckets;
+    private final Queue<Timeout<T>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final long startMs;
+
+    // 下一个待处理的 tick，仅推进线程访问
+    private long tick;
+
+    public AckTimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("AckTimingWheel: 非法参数, tickMs=" + tickMs + ", wheelSize=" + wheelSize);
+        }
+        int normalized = Integer.highestOneBit(wheelSize - 1) << 1;
+        normalized = Math.max(normalized, 1);
+        this.tickMs = tickMs;
+        this.mask = normalized - 1;
+        this.buckets = newBuckets(normalized);
+        this.startMs = startMs;
+    }
+
+    /**
+     * 调度任务
+     *
+     * @param task       任务
+     * @param deadlineMs 到期时间戳（毫秒）
+     * @return 可用于取消的句柄
+     */
+    public Timeout<T> schedule(T task, long deadlineMs) {
+        Timeout<T> timeout = new Timeout<>(this, task, deadlineMs);
+        size.incrementAndGet();
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * 推进时间轮到 nowMs，依次回调所有到期任务。
+     * 回调中可再次调用 {@link #schedule(Object, long)} 重新调度。
+     *
+     * @param nowMs 当前时间戳（毫秒）
+     * @param onDue 到期回调
+     * @return 到期任务数
+     */
+    public int advance(long nowMs, Consumer<T> onDue) {
+        long targetTick = (nowMs - startMs) / tickMs;
+        int due = 0;
+        while (tick <= targetTick) {
+            transferPending();
+            Iterator<Timeout<T>> it = buckets[(int) (tick & mask)].iterator();
+            while (it.hasNext()) {
+                Timeout<T> timeout = it.next();
+                if (timeout.isCancelled()) {
+                    it.remove();
+                } else if (timeout.deadlineTick <= tick) {
+                    it.remove();
+                    // 与 cancel 竞争，只有抢到的一方生效
+                    if (timeout.done.compareAndSet(false, true)) {
+                        size.decrementAndGet();
+                        due++;
+                        onDue.accept(timeout.task);
+                    }
+                }
+            }
+            tick++;
+        }
+        return due;
+    }
+
+    /**
+     * 已调度且尚未到期、未取消的任务数
+     */
+    public int size() {
+        return size.get();
+    }
+
+    private void transferPending() {
+        Timeout<T> timeout;
+        while ((timeout = pending.poll()) != null) {
+            // 向上取整，保证不早于到期时间触发；已过期的任务放入当前 tick
+            long deadlineTick = Math.max(Math.floorDiv(timeout.deadlineMs - startMs + tickMs - 1, tickMs), tick);
+            timeout.deadlineTick = deadlineTick;
+            buckets[(int) (deadlineTick & mask)].add(timeout);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> ArrayDeque<E>[] newBuckets(int length) {
+        ArrayDeque<E>[] buckets = (ArrayDeque<E>[]) new ArrayDeque<?>[length];
+        for (int i = 0; i < length; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        return buckets;
+    }
+
+    /**
+     * 已调度任务的句柄
+     *
+     * @param <T> 任务类型
+     */
+    public static final class Timeout<T> {
+        private final AckTimingWheel<T> wheel;
+        private final T task;
+        private final long deadlineMs;
+        // 已到期回调或已取消
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile boolean cancelled;
+        private long deadlineTick;
+
+        private Timeout(AckTimingWheel<T> wheel, T task, long deadlineMs) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadlineMs = deadlineMs;
+        }
+
+        /**
+         * 取消任务
+         *
+         * @return 取消成功返回 true；已到期回调或已取消返回 false
+         */
+        public boolean cancel() {
+            if (!done.compareAndSet(false, true)) {
+                return false;
+            }
+            cancelled = true;
+            wheel.size.decrementAndGet();
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public T getTask() {
+            return task;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package io.stu.notify.stomp;
+
+import io.stu.notify.model.NotifyMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.user.SimpUser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 本节点广播引擎：消息只编码一次，按用户分片并行推送到本节点全部在线 session。
+ * <p>
+ * 广播消息不带 receiver，所有用户共享同一份编码，不修改调用方传入的消息。
+ * 推送在独立的广播线程池中异步完成，调用方（如 Redisson 监听线程）不等待。
+ */
+@Slf4j
+public class BroadcastEngine {
+
+    private final StompWebSocketHandler handler;
+    private final Supplier<? extends Iterable<SimpUser>> users;
+    private final int chunkSize;
+    private final ExecutorService executor;
+
+    /**
+     * @param handler     消息处理器，用于编码和发送
+     * @param users       本节点在线用户快照
+     * @param parallelism 并行推送线程数
+     * @param chunkSize   每个分片的用户数
+     */
+    public BroadcastEngine(StompWebSocketHandler handler, Supplier<? extends Iterable<SimpUser>> users,
+                           int parallelism, int chunkSize) {
+        if (parallelism <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("BroadcastEngine: 非法参数, parallelism=" + parallelism
+                    + ", chunkSize=" + chunkSize);
+        }
+        this.handler = handler;
+        this.users = users;
+        this.chunkSize = chunkSize;
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "quick-notify-broadcast-" + seq.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 推送到本节点全部在线用户。取在线用户快照、编码和推送都在广播线程池中执行，不阻塞调用方
+     *
+     * @param message 消息
+     * @return 全部分片完成后完成的推送结果
+     */
+    public CompletableFuture<BroadcastResult> fanOut(NotifyMessage message) {
+        long start = System.nanoTime();
+        return CompletableFuture.supplyAsync(this::onlineUsers, executor)
+                .thenCompose(online -> push(message, online, start));
+    }
+
+    private List<SimpUser> onlineUsers() {
+        List<SimpUser> online = new ArrayList<>();
+        for (SimpUser user : users.get()) {
+            if (user.hasSessions()) {
+                online.add(user);
+            }
+        }
+        return online;
+    }
+
+    private CompletableFuture<BroadcastResult> push(NotifyMessage message, List<SimpUser> online, long start) {
+        if (online.isEmpty()) {
+            return CompletableFuture.completedFuture(new BroadcastResult(message.getId(), 0, 0, 0, 0));
+        }
+        EncodedMessage encoded = handler.encode(copyWithoutReceiver(message));
+        AtomicInteger deliveredUsers = new AtomicInteger();
+        AtomicInteger deliveredSessions = new AtomicInteger();
+        AtomicInteger failedUsers = new AtomicInteger();
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int from = 0; from < online.size(); from += chunkSize) {
+            List<SimpUser> chunk = online.subList(from, Math.min(from + chunkSize, online.size()));
+            chunks.add(CompletableFuture.runAsync(() -> {
+                for (SimpUser user : chunk) {
+                    try {
+                        handler.sendEncoded(user.getName(), encoded, null);
+                        deliveredUsers.incrementAndGet();
+                        deliveredSessions.addAndGet(user.getSessions().size());
+                    } catch (Exception e) {
+                        failedUsers.incrementAndGet();
+                        log.warn("[BROADCAST] 推送失败, msgId {}, user {}: {}", message.getId(), user.getName(), e.getMessage());
+                    }
+                }
+            }, executor));
+        }
+        return CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new)).thenApply(v -> {
+            BroadcastResult result = new BroadcastResult(message.getId(), deliveredUsers.get(), deliveredSessions.get(),
+                    failedUsers.get(), (System.nanoTime() - start) / 1_000_000);
+            log.info("[BROADCAST] 本节点推送完成, msgId {}, users {}, sessions {}, failed {}, chunks {}, costMs {}",
+                    result.messageId(), result.users(), result.sessions(), result.failed(), chunks.size(), result.elapsedMs());
+            return result;
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static NotifyMessage copyWithoutReceiver(NotifyMessage message) {
+        return NotifyMessage.builder()
+                .id(message.getId())
+                .type(message.getType())
+                .data(message.getData())
+                .viewed(message.isViewed())
+                .created(message.getCreated() != 0L ? message.getCreated() : System.currentTimeMillis())
+                .build();
+    }
+}
@@ -0,0 +1,13 @@
+package io.stu.notify.stomp;
+
+/**
+ * 单个节点的广播结果
+ *
+ * @param messageId 消息ID
+ * @param users     推送的用户数
+ * @param sessions  推送的 session 数
+ * @param failed    推送失败的用户数
+ * @param elapsedMs 编码 + 推送耗时（毫秒）
+ */
+public record BroadcastResult(String messageId, int users, int sessions, int failed, long elapsedMs) {
+}
@@ -0,0 +1,14 @@
+package io.stu.notify.stomp;
+
+import org.springframework.util.MimeType;
+
+/**
+ * 预编码的消息体：由 {@link org.springframework.messaging.simp.SimpMessagingTemplate} 的消息转换器编码一次，
+ * 发送到同一用户的多个 session 时直接复用字节，不再重复序列化。
+ * ACK 重试时按当前重试次数重新编码（见 {@link StompWebSocketHandler#encodeResend}），保证 ack_retry_count 正确。
+ *
+ * @param payload     编码后的消息体，不可修改
+ * @param contentType 内容类型
+ */
+public record EncodedMessage(byte[] payload, MimeType contentType) {
+}
@@ -0,0 +1,84 @@
+package io.stu.notify.stomp;
+
+import io.stu.notify.model.AckRetryPolicy;
+import io.stu.notify.model.NotifyMessage;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * 待确认记录，每个 (消息, session) 一条，独立维护重试状态。
+ */
+@Getter
+public class PendingAck {
+
+    private final String ackKey;
+    private final String sessionId;
+    private final NotifyMessage message;
+    // 预编码的消息体，首次发送使用；Redis 模式下重试时从中还原消息
+    private final EncodedMessage encoded;
+    private final AckRetryPolicy policy;
+    private final long firstSentAt;
+    private volatile int retryCount;
+    private volatile long lastSentAt;
+    // 当前在时间轮中的调度，确认或清理时取消
+    @Getter(AccessLevel.NONE)
+    private volatile AckTimingWheel.Timeout<PendingAck> scheduled;
+
+    public PendingAck(String ackKey, String sessionId, NotifyMessage message, EncodedMessage encoded,
+                      AckRetryPolicy policy, long now) {
+        this.ackKey = ackKey;
+        this.sessionId = sessionId;
+        this.message = message;
+        this.encoded = encoded;
+        this.policy = policy;
+        this.firstSentAt = now;
+        this.lastSentAt = now;
+    }
+
+    /**
+     * 从存储中还原记录
+     */
+    PendingAck(String ackKey, String sessionId, NotifyMessage message, EncodedMessage encoded, AckRetryPolicy policy,
+               long firstSentAt, int retryCount, long lastSentAt) {
+        this.ackKey = ackKey;
+        this.sessionId = sessionId;
+        this.message = message;
+        this.encoded = encoded;
+        this.policy = policy;
+        this.firstSentAt = firstSentAt;
+        this.retryCount = retryCount;
+        this.lastSentAt = lastSentAt;
+    }
+
+    /**
+     * 下一次需要处理的时间：按当前重试次数退避后的重试时间与过期时间中较早者
+     *
+     * @param now 当前时间
+     */
+    public long nextDueAt(long now) {
+        return Math.min(now + policy.nextDelayMs(retryCount), firstSentAt + policy.ttlMs());
+    }
+
+    public boolean isExhausted(long now) {
+        return policy.isExhausted(retryCount, firstSentAt, now);
+    }
+
+    void scheduled(AckTimingWheel.Timeout<PendingAck> timeout) {
+        this.scheduled = timeout;
+    }
+
+    /**
+     * 取消时间轮中的调度
+     */
+    void cancelScheduled() {
+        AckTimingWheel.Timeout<PendingAck> timeout = scheduled;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    void markResent(long now) {
+        retryCount++;
+        lastSentAt = now;
+    }
+}
@@ -0,0 +1,272 @@
+package io.stu.notify.stomp;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.stu.notify.model.AckRetryPolicy;
+import io.stu.notify.model.NotifyMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.util.MimeType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Redis 待确认记录存储（集群模式）。
+ * <p>
+ * 每个节点只保存自己 session 的记录，使用一组独立的 key（hash tag 保证在同一 slot）：
+ * <ul>
+ *   <li>{@code stomp::ack::{nodeId}::entries}：Hash，ackKey -> 记录 JSON（含预编码的消息体）</li>
+ *   <li>{@code stomp::ack::{nodeId}::due}：ZSet，ackKey -> 下一次处理时间</li>
+ * </ul>
+ * 入队、确认、取出到期记录均为一次脚本调用；到期记录取出时顺带续租，避免同一轮重复处理。
+ * 节点下线后其 key 在最长 TTL 后自动过期。
+ */
+@Slf4j
+public class RedisAckStore {
+
+    private static final String KEY_PREFIX = "stomp::ack::";
+
+    // 取出后记录的租期，处理完成前不会再次被取出
+    private static final long LEASE_MS = 30_000;
+
+    private static final String ADD_SCRIPT = """
+            if redis.call('hsetnx', KEYS[1], ARGV[1], ARGV[2]) == 0 then
+                return 0
+            end
+            redis.call('zadd', KEYS[2], ARGV[3], ARGV[1])
+            for i = 1, 2 do
+                if redis.call('pttl', KEYS[i]) < tonumber(ARGV[4]) then
+                    redis.call('pexpire', KEYS[i], ARGV[4])
+                end
+            end
+            return 1
+            """;
+
+    private static final String ACK_SCRIPT = """
+            local v = redis.call('hget', KEYS[1], ARGV[1])
+            if not v then
+                return nil
+            end
+            local entry = cjson.decode(v)
+            if entry['receiver'] ~= ARGV[2] then
+                return nil
+            end
+            redis.call('hdel', KEYS[1], ARGV[1])
+            redis.call('zrem', KEYS[2], ARGV[1])
+            local msg_type = entry['type']
+            if type(msg_type) ~= 'string' then
+                msg_type = ''
+            end
+            local created = entry['created']
+            if type(created) ~= 'number' then
+                created = 0
+            end
+            return {entry['retry_count'], msg_type, created}
+            """;
+
+    private static final String POLL_SCRIPT = """
+            local keys = redis.call('zrangebyscore', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])
+            local result = {}
+            for _, k in ipairs(keys) do
+                local v = redis.call('hget', KEYS[1], k)
+                if v then
+                    redis.call('zadd', KEYS[2], ARGV[3], k)
+                    result[#result + 1] = k
+                    result[#result + 1] = v
+                else
+                    redis.call('zrem', KEYS[2], k)
+                end
+            end
+            return result
+            """;
+
+    // ARGV[2] 为空表示只更新处理时间
+    private static final String RESCHEDULE_SCRIPT = """
+            if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then
+                return 0
+            end
+            if ARGV[2] ~= '' then
+                redis.call('hset', KEYS[1], ARGV[1], ARGV[2])
+            end
+            redis.call('zadd', KEYS[2], ARGV[3], ARGV[1])
+            return 1
+            """;
+
+    private static final String REMOVE_SCRIPT = """
+            redis.call('zrem', KEYS[2], ARGV[1])
+            return redis.call('hdel', KEYS[1], ARGV[1])
+            """;
+
+    private final RedissonClient redisson;
+    private final Function<NotifyMessage, AckRetryPolicy> policyResolver;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String entriesKey;
+    private final String dueKey;
+    private final List<Object> keys;
+
+    /**
+     * @param redisson       Redisson 客户端
+     * @param nodeId         当前节点 ID
+     * @param policyResolver 根据消息获取重试策略
+     */
+    public RedisAckStore(RedissonClient redisson, String nodeId, Function<NotifyMessage, AckRetryPolicy> policyResolver) {
+        this.redisson = redisson;
+        this.policyResolver = policyResolver;
+        this.entriesKey = KEY_PREFIX + "{" + nodeId + "}::entries";
+        this.dueKey = KEY_PREFIX + "{" + nodeId + "}::due";
+        this.keys = List.of(entriesKey, dueKey);
+    }
+
+    /**
+     * 新增待确认记录，已存在则忽略
+     *
+     * @return 是否新增
+     */
+    public boolean add(PendingAck pending, long now) {
+        Long added = script().eval(entriesKey, RScript.Mode.READ_WRITE, ADD_SCRIPT, RScript.ReturnType.INTEGER,
+                keys, pending.getAckKey(), encode(pending), pending.nextDueAt(now),
+                pending.getPolicy().ttlMs() + LEASE_MS);
+        return added != null && added == 1L;
+    }
+
+    /**
+     * 确认并删除记录，接收者不匹配时不删除
+     *
+     * @return 被确认的记录，记录不存在或接收者不匹配时返回 null
+     */
+    public Acked ack(String ackKey, String receiver) {
+        List<Object> result = script().eval(entriesKey, RScript.Mode.READ_WRITE, ACK_SCRIPT,
+                RScript.ReturnType.MULTI, keys, ackKey, receiver);
+        if (result == null || result.size() < 3) {
+            return null;
+        }
+        String type = (String) result.get(1);
+        return new Acked(((Number) result.get(0)).intValue(), type.isEmpty() ? null : type,
+                ((Number) result.get(2)).longValue());
+    }
+
+    /**
+     * 取出最多 limit 条已到期的记录
+     */
+    public List<PendingAck> pollDue(long now, int limit) {
+        List<Object> raw = script().eval(entriesKey, RScript.Mode.READ_WRITE, POLL_SCRIPT, RScript.ReturnType.MULTI,
+                keys, now, limit, now + LEASE_MS);
+        List<PendingAck> result = new ArrayList<>(raw.size() / 2);
+        for (int i = 0; i + 1 < raw.size(); i += 2) {
+            String ackKey = (String) raw.get(i);
+            try {
+                result.add(decode(ackKey, (String) raw.get(i + 1)));
+            } catch (Exception e) {
+                log.error("[ACK-REDIS] 记录解析失败, 移除, ackKey {}", ackKey, e);
+                script().eval(entriesKey, RScript.Mode.READ_WRITE, REMOVE_SCRIPT, RScript.ReturnType.INTEGER,
+                        keys, ackKey);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 当前节点的待确认记录数
+     */
+    public int size() {
+        return redisson.getMap(entriesKey, StringCodec.INSTANCE).size();
+    }
+
+    /**
+     * 创建一次批量更新，处理完一批到期记录后一次提交
+     */
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * 批量更新，所有操作在 {@link #execute()} 时通过一次 pipeline 提交
+     */
+    public class Batch {
+
+        private final RBatch batch = redisson.createBatch();
+        private int size;
+
+        /**
+         * 重新调度记录；记录已被确认时不做任何事
+         *
+         * @param changed 重试状态是否有变化，有变化时同时写回记录
+         */
+        public void reschedule(PendingAck pending, long dueAt, boolean changed) {
+            batch.getScript(StringCodec.INSTANCE).evalAsync(entriesKey, RScript.Mode.READ_WRITE, RESCHEDULE_SCRIPT,
+                    RScript.ReturnType.INTEGER, keys, pending.getAckKey(), changed ? encode(pending) : "", dueAt);
+            size++;
+        }
+
+        public void remove(String ackKey) {
+            batch.getScript(StringCodec.INSTANCE).evalAsync(entriesKey, RScript.Mode.READ_WRITE, REMOVE_SCRIPT,
+                    RScript.ReturnType.INTEGER, keys, ackKey);
+            size++;
+        }
+
+        public void execute() {
+            if (size > 0) {
+                batch.execute();
+            }
+        }
+    }
+
+    private RScript script() {
+        return redisson.getScript(StringCodec.INSTANCE);
+    }
+
+    private String encode(PendingAck pending) {
+        try {
+            NotifyMessage message = pending.getMessage();
+            EncodedMessage encoded = pending.getEncoded();
+            return objectMapper.writeValueAsString(new StoredAck(message.getReceiver(),
+                    pending.getSessionId(), pending.getFirstSentAt(), pending.getRetryCount(),
+                    pending.getLastSentAt(), message.getId(), message.getType(), message.getCreated(),
+                    encoded.payload(), encoded.contentType().toString()));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("RedisAckStore: 序列化失败, ackKey=" + pending.getAckKey(), e);
+        }
+    }
+
+    private PendingAck decode(String ackKey, String value) throws JsonProcessingException {
+        StoredAck stored = objectMapper.readValue(value, StoredAck.class);
+        // 只还原重试所需的元数据，消息体直接使用保存的编码
+        NotifyMessage message = NotifyMessage.builder()
+                .id(stored.messageId()).type(stored.type()).receiver(stored.receiver())
+                .created(stored.created()).build();
+        EncodedMessage encoded = new EncodedMessage(stored.payload(), MimeType.valueOf(stored.contentType()));
+        return new PendingAck(ackKey, stored.sessionId(), message, encoded, policyResolver.apply(message),
+                stored.firstSentAt(), stored.retryCount(), stored.lastSentAt());
+    }
+
+    /**
+     * 已确认的记录
+     *
+     * @param retryCount 确认前的重试次数
+     * @param type       消息类型
+     * @param created    消息创建时间，旧记录为 0
+     */
+    public record Acked(int retryCount, String type, long created) {
+    }
+
+    /**
+     * Redis 中保存的记录，receiver 单独存放供确认脚本校验，payload 为预编码的消息体（base64）
+     */
+    private record StoredAck(@JsonProperty("receiver") String receiver,
+                             @JsonProperty("session_id") String sessionId,
+                             @JsonProperty("first_sent_at") long firstSentAt,
+                             @JsonProperty("retry_count") int retryCount,
+                             @JsonProperty("last_sent_at") long lastSentAt,
+                             @JsonProperty("message_id") String messageId,
+                             @JsonProperty("type") String type,
+                             @JsonProperty("created") long created,
+                             @JsonProperty("payload") byte[] payload,
+                             @JsonProperty("content_type") String contentType) {
+    }
+}
@@ -0,0 +1,425 @@
+package io.stu.notify.stomp;
+
+import io.stu.notify.metrics.NotifyMetrics;
+import io.stu.notify.model.MessageTypeRegistry;
+import io.stu.notify.model.MessageTypeRegistry.NotifyUpdateRsp;
+import io.stu.notify.model.NotifyMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 每个 session 的出站队列，防止慢客户端占满出站线程和发送缓冲。
+ * <p>
+ * 在途数按 session 统计：MESSAGE 帧进入 clientOutboundChannel 时加一，真正写入 WebSocket 时减一，
+ * 包含出站线程池排队和 Spring 发送缓冲中的帧。在途数达到 maxInFlight 后，推送进入该 session 的队列，
+ * 每写出一帧放行一条；同一 session 内按提交顺序发送。
+ * <p>
+ * 排队期间的 NOTIFY_VIEWED / NOTIFY_DELETED 合并到队列中同类型的更新里。队列满时按 {@link OverflowPolicy} 处理。
+ * 被丢弃的消息如有 ACK 记录，会在 session 恢复后由 ACK 重试补发；排队中的 session 视为拥塞，ACK 重试跳过。
+ */
+@Slf4j
+public class SessionOutbox {
+
+    /**
+     * 队列满时的处理方式（合并更新之后仍然已满）
+     */
+    public enum OverflowPolicy {
+        /**
+         * 丢弃新消息（状态更新仍会先合并到队列中，合并成功的不占位置）
+         */
+        DROP_NEWEST,
+        /**
+         * 先丢弃队列中最早的低优先级消息，没有时丢弃新消息
+         */
+        DROP_LOW_PRIORITY,
+        /**
+         * 关闭 session，客户端重连后通过离线收件箱或历史接口补齐
+         */
+        CLOSE
+    }
+
+    private static final byte[] MESSAGE_FRAME = "MESSAGE\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final ConcurrentHashMap<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final int maxInFlight;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final Set<String> lowPriorityTypes;
+    private final NotifyMetrics metrics;
+    private volatile StompWebSocketHandler handler;
+
+    /**
+     * @param maxInFlight      每个 session 同时在途（未写入 WebSocket）的消息数
+     * @param capacity         每个 session 排队的消息数上限
+     * @param policy           队列满时的处理方式
+     * @param lowPriorityTypes DROP_LOW_PRIORITY 时优先丢弃的消息类型
+     * @param metrics          指标
+     */
+    public SessionOutbox(int maxInFlight, int capacity, OverflowPolicy policy, Set<String> lowPriorityTypes,
+                         NotifyMetrics metrics) {
+        if (maxInFlight <= 0 || capacity <= 0 || policy == null) {
+            throw new IllegalArgumentException("SessionOutbox: 非法参数, maxInFlight=" + maxInFlight
+                    + ", capacity=" + capacity + ", policy=" + policy);
+        }
+        this.maxInFlight = maxInFlight;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.lowPriorityTypes = Set.copyOf(lowPriorityTypes);
+        this.metrics = metrics;
+        metrics.bindOutbound(this::totalQueued, this::maxDepth);
+    }
+
+    /**
+     * 由 {@link StompWebSocketHandler#setSessionOutbox(SessionOutbox)} 调用，放行时通过处理器发送和编码
+     */
+    void setHandler(StompWebSocketHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * 提交一条发往指定 session 的消息
+     *
+     * @param message   消息
+     * @param encoded   预编码的消息体
+     * @param sessionId 目标 session
+     */
+    public void submit(NotifyMessage message, EncodedMessage encoded, String sessionId) {
+        Lane lane = lanes.get(sessionId);
+        if (lane == null) {
+            // 不在本节点或已断开，交给 broker 处理
+            handler.sendEncoded(message.getReceiver(), encoded, sessionId);
+            return;
+        }
+        boolean close = false;
+        synchronized (lane) {
+            if (lane.queue.isEmpty() && lane.inFlight.get() < maxInFlight) {
+                send(lane, new Item(message, encoded));
+                return;
+            }
+            if (coalesce(lane, message)) {
+                return;
+            }
+            if (isQueued(lane, message)) {
+                // ACK 重试时消息仍在排队，不重复入队
+                return;
+            }
+            if (lane.queue.size() >= capacity) {
+                switch (policy) {
+                    case DROP_NEWEST -> {
+                        shed("dropped", message, sessionId);
+                        return;
+                    }
+                    case DROP_LOW_PRIORITY -> {
+                        if (!evictLowPriority(lane, sessionId)) {
+                            shed("dropped", message, sessionId);
+                            return;
+                        }
+                    }
+                    case CLOSE -> {
+                        shed("closed", message, sessionId);
+                        lane.queue.clear();
+                        close = true;
+                    }
+                }
+            }
+            if (!close) {
+                lane.queue.addLast(new Item(message, encoded));
+            }
+        }
+        if (close) {
+            closeSession(lane);
+        }
+    }
+
+    /**
+     * session 是否拥塞：有消息在排队，或在途数已达上限
+     */
+    public boolean isCongested(String sessionId) {
+        Lane lane = sessionId != null ? lanes.get(sessionId) : null;
+        return lane != null && (lane.inFlight.get() >= maxInFlight || !lane.queue.isEmpty());
+    }
+
+    /**
+     * session 的出站深度（在途 + 排队），session 不在本节点时返回 0
+     */
+    public int depth(String sessionId) {
+        Lane lane = lanes.get(sessionId);
+        return lane != null ? lane.depth() : 0;
+    }
+
+    /**
+     * 本节点各 session 的出站深度，只包含深度大于 0 的 session
+     */
+    public Map<String, Integer> depths() {
+        Map<String, Integer> result = new HashMap<>();
+        lanes.forEach((sessionId, lane) -> {
+            int depth = lane.depth();
+            if (depth > 0) {
+                result.put(sessionId, depth);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 包装 WebSocket 处理器，登记 session 并统计写出的 MESSAGE 帧（由 StompWebsocketConfig 注册）
+     */
+    public WebSocketHandler decorate(WebSocketHandler delegate) {
+        return new WebSocketHandlerDecorator(delegate) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                Lane lane = new Lane(session);
+                lanes.put(session.getId(), lane);
+                super.afterConnectionEstablished(lane.tracked);
+            }
+
+            @Override
+            public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+                super.handleMessage(tracked(session), message);
+            }
+
+            @Override
+            public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+                super.handleTransportError(tracked(session), exception);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                try {
+                    super.afterConnectionClosed(tracked(session), closeStatus);
+                } finally {
+                    lanes.remove(session.getId());
+                }
+            }
+        };
+    }
+
+    /**
+     * clientOutboundChannel 拦截器：MESSAGE 帧进入出站通道时计入在途（由 StompWebsocketConfig 注册）
+     */
+    public ChannelInterceptor outboundInterceptor() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+                    String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+                    Lane lane = sessionId != null ? lanes.get(sessionId) : null;
+                    if (lane != null) {
+                        lane.inFlight.incrementAndGet();
+                    }
+                }
+                return message;
+            }
+        };
+    }
+
+    private WebSocketSession tracked(WebSocketSession session) {
+        Lane lane = lanes.get(session.getId());
+        return lane != null ? lane.tracked : session;
+    }
+
+    /**
+     * 一帧写出后放行排队的消息
+     */
+    private void written(Lane lane) {
+        if (lane.inFlight.decrementAndGet() < 0) {
+            lane.inFlight.set(0);
+        }
+        // 必须在锁内检查队列：提交方在锁内看到在途已满才会入队，锁外的判断可能漏掉刚入队的消息
+        synchronized (lane) {
+            while (!lane.queue.isEmpty() && lane.inFlight.get() < maxInFlight) {
+                send(lane, lane.queue.pollFirst());
+            }
+        }
+    }
+
+    /**
+     * 在 lane 锁内发送，保证同一 session 的放行顺序；发送只是交给 broker 和出站线程池，不会阻塞在写入上
+     */
+    private void send(Lane lane, Item item) {
+        try {
+            handler.sendEncoded(item.message.getReceiver(), item.encoded, lane.session.getId());
+        } catch (Exception e) {
+            log.warn("[OUTBOUND] 发送失败, msgId {}, sessionId {}: {}",
+                    item.message.getId(), lane.session.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 将 NOTIFY_VIEWED / NOTIFY_DELETED 合并到队列中同类型的更新
+     *
+     * @return 是否已合并
+     */
+    private boolean coalesce(Lane lane, NotifyMessage message) {
+        if (!isUpdate(message)) {
+            return false;
+        }
+        for (Item queued : lane.queue) {
+            if (message.getType().equals(queued.message.getType())) {
+                Set<String> ids = new LinkedHashSet<>(updateIds(queued.message));
+                ids.addAll(updateIds(message));
+                NotifyMessage merged = NotifyMessage.builder()
+                        .type(message.getType())
+                        .receiver(message.getReceiver())
+                        .data(new NotifyUpdateRsp(List.copyOf(ids)))
+                        .created(queued.message.getCreated())
+                        .unreadCount(message.getUnreadCount() != null
+                                ? message.getUnreadCount() : queued.message.getUnreadCount())
+                        .build();
+                queued.message = merged;
+                queued.encoded = handler.encode(merged);
+                metrics.outboundShed("coalesced", message.getType());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isQueued(Lane lane, NotifyMessage message) {
+        if (message.getId() == null) {
+            return false;
+        }
+        for (Item queued : lane.queue) {
+            if (message.getId().equals(queued.message.getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean evictLowPriority(Lane lane, String sessionId) {
+        Iterator<Item> it = lane.queue.iterator();
+        while (it.hasNext()) {
+            Item queued = it.next();
+            if (lowPriorityTypes.contains(queued.message.getType())) {
+                it.remove();
+                shed("evicted", queued.message, sessionId);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void shed(String action, NotifyMessage message, String sessionId) {
+        metrics.outboundShed(action, message.getType());
+        log.debug("[OUTBOUND] session 队列已满, {}, msgId {}, type {}, sessionId {}",
+                action, message.getId(), message.getType(), sessionId);
+    }
+
+    private void closeSession(Lane lane) {
+        log.warn("[OUTBOUND] session 队列已满, 关闭连接, sessionId {}, inFlight {}, capacity {}",
+                lane.session.getId(), lane.inFlight.get(), capacity);
+        try {
+            lane.session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            log.debug("[OUTBOUND] 关闭 session 失败, sessionId {}: {}", lane.session.getId(), e.getMessage());
+        }
+    }
+
+    private int totalQueued() {
+        int total = 0;
+        for (Lane lane : lanes.values()) {
+            total += lane.queue.size();
+        }
+        return total;
+    }
+
+    private int maxDepth() {
+        int max = 0;
+        for (Lane lane : lanes.values()) {
+            max = Math.max(max, lane.depth());
+        }
+        return max;
+    }
+
+    private static boolean isUpdate(NotifyMessage message) {
+        return MessageTypeRegistry.NOTIFY_VIEWED.equals(message.getType())
+                || MessageTypeRegistry.NOTIFY_DELETED.equals(message.getType());
+    }
+
+    private static List<String> updateIds(NotifyMessage message) {
+        return message.getData() instanceof NotifyUpdateRsp rsp && rsp.ids() != null ? rsp.ids() : List.of();
+    }
+
+    private static boolean isMessageFrame(WebSocketMessage<?> message) {
+        if (message instanceof TextMessage text) {
+            return text.getPayload().startsWith("MESSAGE\n");
+        }
+        if (message instanceof BinaryMessage binary) {
+            ByteBuffer payload = binary.getPayload();
+            if (payload.remaining() < MESSAGE_FRAME.length) {
+                return false;
+            }
+            for (int i = 0; i < MESSAGE_FRAME.length; i++) {
+                if (payload.get(payload.position() + i) != MESSAGE_FRAME[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static final class Item {
+        NotifyMessage message;
+        EncodedMessage encoded;
+
+        Item(NotifyMessage message, EncodedMessage encoded) {
+            this.message = message;
+            this.encoded = encoded;
+        }
+    }
+
+    private final class Lane {
+        final WebSocketSession session;
+        final WebSocketSession tracked;
+        final AtomicInteger inFlight = new AtomicInteger();
+        // 只在 lane 锁内读写；指标和拥塞判断的无锁 size/isEmpty 只是近似值
+        final ArrayDeque<Item> queue = new ArrayDeque<>();
+
+        Lane(WebSocketSession session) {
+            this.session = session;
+            this.tracked = new WebSocketSessionDecorator(session) {
+                @Override
+                public void sendMessage(WebSocketMessage<?> message) throws IOException {
+                    try {
+                        super.sendMessage(message);
+                    } finally {
+                        if (isMessageFrame(message)) {
+                            written(Lane.this);
+                        }
+                    }
+                }
+            };
+        }
+
+        int depth() {
+            return inFlight.get() + queue.size();
+        }
+    }
+}
@@ -1,23 +1,44 @@
 package io.stu.notify.stomp;
 
+import io.stu.notify.inbox.InboxReplay;
+import io.stu.notify.inbox.OfflineInbox;
+import io.stu.notify.metrics.NotifyMetrics;
+import io.stu.notify.model.AckRetryPolicy;
+import io.stu.notify.model.MessageTypeRegistry;
 import io.stu.notify.model.NotifyMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import lombok.val;
-import org.redisson.api.RMap;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.user.SimpSession;
 import org.springframework.messaging.simp.user.SimpUser;
 import org.springframework.messaging.simp.user.SimpUserRegistry;
-import org.springframework.messaging.support.MessageHeaderAccessor;
-import org.springframework.scheduling.annotation.Scheduled;
-
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static javax.management.timer.Timer.ONE_MINUTE;
 import static javax.management.timer.Timer.ONE_SECOND;
@@ -32,17 +53,60 @@ public class StompWebSocketHandler {
     private SimpUserRegistry userRegistry;
     private SimpMessagingTemplate simpMessagingTemplate;
     private org.redisson.api.RedissonClient redisson;
-
-    private static final String PENDING_MAP_KEY = "stomp::pending_messages";
-    private static final long ACK_CHECK_WAIT_MS = 5 * ONE_SECOND;
-    private static final long ACK_RETRY_INTERVAL_MS = 5 * ONE_SECOND;
-    private static final long ACK_MESSAGE_TTL_MS = 1 * ONE_MINUTE;
-    private static final long ACK_MAX_RETRY_COUNT = ACK_MESSAGE_TTL_MS / ACK_RETRY_INTERVAL_MS;
+    private NotifyMetrics metrics = NotifyMetrics.NOOP;
+    private OfflineInbox offlineInbox;
+    private SessionOutbox sessionOutbox;
+
+    // 节点 ID，用于区分各节点的 ACK 记录，未配置时取 主机名-端口，重启后保持不变
+    @Value("${stomp.node-id:}")
+    private String nodeId;
+    @Value("${server.port:8080}")
+    private String serverPort = "8080";
+
+    // 默认 ACK 重试策略，可按消息类型通过 MessageTypeRegistry.registerRetryPolicy 覆盖
+    @Value("${stomp.ack.retry-interval-ms:5000}")
+    private long ackRetryIntervalMs = 5 * ONE_SECOND;
+    @Value("${stomp.ack.backoff-multiplier:1.0}")
+    private double ackBackoffMultiplier = 1.0;
+    @Value("${stomp.ack.max-interval-ms:30000}")
+    private long ackMaxIntervalMs = 30 * ONE_SECOND;
+    @Value("${stomp.ack.jitter:0}")
+    private double ackJitter = 0;
+    @Value("${stomp.ack.ttl-ms:60000}")
+    private long ackTtlMs = ONE_MINUTE;
+    @Value("${stomp.ack.max-retries:12}")
+    private int ackMaxRetries = 12;
+    private volatile AckRetryPolicy defaultRetryPolicy;
 
     // 本地缓存（单节点模式），可通过配置 stomp.enable-local-ack 覆盖
     @Value("${stomp.enable-local-ack:false}")
     private boolean enableLocalAck = false;
-    private final ConcurrentHashMap<String, NotifyMessage> localCache = new ConcurrentHashMap<>();
+    @Value("${stomp.ack.tick-ms:100}")
+    private long ackTickMs = 100;
+    @Value("${stomp.ack.wheel-size:512}")
+    private int ackWheelSize = 512;
+    private final ConcurrentHashMap<String, PendingAck> localCache = new ConcurrentHashMap<>();
+
+    // 当前节点在线 session -> 用户，由 SessionConnectedEvent / SessionDisconnectEvent 维护
+    private final ConcurrentHashMap<String, String> liveSessions = new ConcurrentHashMap<>();
+    // session -> 该 session 上的待确认 ackKey，断连时据此清理
+    private final ConcurrentHashMap<String, Set<String>> sessionAckKeys = new ConcurrentHashMap<>();
+    private AckTimingWheel<PendingAck> ackWheel;
+    private ScheduledExecutorService ackTicker;
+
+    // Redis 模式：每个节点只轮询自己的到期记录
+    @Value("${stomp.ack.redis.poll-ms:1000}")
+    private long ackRedisPollMs = ONE_SECOND;
+    @Value("${stomp.ack.redis.batch-size:500}")
+    private int ackRedisBatchSize = 500;
+    private volatile RedisAckStore redisAckStore;
+
+    // 广播：推送线程数与每个分片的用户数
+    @Value("${stomp.broadcast.parallelism:1}")
+    private int broadcastParallelism = 1;
+    @Value("${stomp.broadcast.chunk-size:256}")
+    private int broadcastChunkSize = 256;
+    private volatile BroadcastEngine broadcastEngine;
 
     @Autowired(required = false)
     public void setUserRegistry(SimpUserRegistry userRegistry) {
@@ -59,6 +123,122 @@ public class StompWebSocketHandler {
         this.redisson = redisson;
     }
 
+    @Autowired(required = false)
+    public void setMetrics(NotifyMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Autowired(required = false)
+    public void setOfflineInbox(OfflineInbox offlineInbox) {
+        this.offlineInbox = offlineInbox;
+    }
+
+    @Autowired(required = false)
+    public void setSessionOutbox(SessionOutbox sessionOutbox) {
+        this.sessionOutbox = sessionOutbox;
+        sessionOutbox.setHandler(this);
+    }
+
+    @PostConstruct
+    public synchronized void init() {
+        if (ackTicker != null) {
+            return;
+        }
+        if (!enableLocalAck) {
+            if (redisson == null) {
+                return;
+            }
+            ackTicker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "quick-notify-ack-redis");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ackTicker.scheduleWithFixedDelay(this::retryRedisMessages, ackRedisPollMs, ackRedisPollMs,
+                    TimeUnit.MILLISECONDS);
+            metrics.bindPendingAcks("redis", this::countRedisPending);
+            log.info("[ACK-REDIS] 轮询启动, node {}, pollMs {}, retryPolicy {}",
+                    getNodeId(), ackRedisPollMs, getDefaultRetryPolicy());
+            return;
+        }
+        ackWheel = new AckTimingWheel<>(ackTickMs, ackWheelSize, System.currentTimeMillis());
+        ackTicker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "quick-notify-ack-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ackTicker.scheduleWithFixedDelay(this::retryLocalCache, ackTickMs, ackTickMs, TimeUnit.MILLISECONDS);
+        metrics.bindPendingAcks("local", localCache::size);
+        log.info("[ACK-LOCAL] 时间轮启动, tickMs {}, wheelSize {}, retryPolicy {}",
+                ackTickMs, ackWheelSize, getDefaultRetryPolicy());
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        if (ackTicker != null) {
+            ackTicker.shutdownNow();
+            ackTicker = null;
+        }
+        if (broadcastEngine != null) {
+            broadcastEngine.shutdown();
+            broadcastEngine = null;
+        }
+    }
+
+    /**
+     * 是否为单节点模式（stomp.enable-local-ack）
+     */
+    public boolean isLocalAckEnabled() {
+        return enableLocalAck;
+    }
+
+    /**
+     * 当前节点 ID（stomp.node-id），未配置时取 主机名-端口。
+     * 节点 ID 重启后不变，重启前留在 Redis 中的待确认记录和在线租约由同一节点继续处理或覆盖，不会成为无主记录。
+     */
+    public synchronized String getNodeId() {
+        if (nodeId == null || nodeId.isBlank()) {
+            nodeId = defaultNodeId();
+        }
+        return nodeId;
+    }
+
+    private String defaultNodeId() {
+        String host = System.getenv("HOSTNAME");
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            log.warn("[STOMP] 获取主机名失败, 使用环境变量 HOSTNAME: {}", e.getMessage());
+        }
+        if (host == null || host.isBlank()) {
+            // 无法得到稳定的主机名，退化为随机 ID，重启前的记录在 TTL 后过期
+            String random = UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+            log.warn("[STOMP] 无法确定主机名, 使用随机节点 ID {}, 建议配置 stomp.node-id", random);
+            return random;
+        }
+        return host + "-" + serverPort;
+    }
+
+    /**
+     * 全局默认 ACK 重试策略（stomp.ack.*）
+     */
+    public AckRetryPolicy getDefaultRetryPolicy() {
+        AckRetryPolicy policy = defaultRetryPolicy;
+        if (policy == null) {
+            policy = AckRetryPolicy.exponential(ackRetryIntervalMs, ackBackoffMultiplier,
+                    Math.max(ackMaxIntervalMs, ackRetryIntervalMs), ackJitter, ackTtlMs, ackMaxRetries);
+            defaultRetryPolicy = policy;
+        }
+        return policy;
+    }
+
+    /**
+     * 获取消息的 ACK 重试策略，子类可重写实现按消息定制
+     */
+    protected AckRetryPolicy retryPolicyFor(NotifyMessage message) {
+        AckRetryPolicy policy = MessageTypeRegistry.getRetryPolicy(message.getType());
+        return policy != null ? policy : getDefaultRetryPolicy();
+    }
+
     protected String buildAckKey(String messageId, String sessionId) {
         return messageId + "::" + sessionId;
     }
@@ -72,22 +252,124 @@ public class StompWebSocketHandler {
     }
 
     /**
-     * 发送消息并追踪 ACK
+     * 发送消息并追踪 ACK，消息只编码一次，发送到用户的每个 session
      */
     public void sendMessageWithAck(NotifyMessage message) {
         SimpUser user = userRegistry.getUser(message.getReceiver());
         if (user != null && user.hasSessions()) {
             List<SimpSession> sessions = new ArrayList<>(user.getSessions());
+            if (message.getCreated() == 0L) {
+                message.setCreated(System.currentTimeMillis());
+            }
+            EncodedMessage encoded = encode(message);
             for (SimpSession session : sessions) {
-                addAckMessageRecord(message, session.getId());
-                sendMessage(message, session.getId());
+                addAckMessageRecord(message, encoded, session.getId());
+                sendEncoded(message, encoded, session.getId());
             }
+            metrics.recordStage("send", message.getType(), message.getCreated());
+        } else if (offlineInbox != null) {
+            // 路由后用户已断开，转入离线收件箱
+            storeOffline(message);
         } else {
             log.warn("[ACK] 无法创建ACK记录, 用户不存在或无session, msgId: {}, receiver: {}",
                     message.getId(), message.getReceiver());
         }
     }
 
+    /**
+     * 推送被投递执行器拒绝（车道已满）时的补救投递：接收者在当前节点有 session 时只创建 ACK 记录、不立即发送，
+     * 由 ACK 重试在一个重试间隔后补发；否则转入离线收件箱。补发的消息可能排在同一用户之后的消息后面
+     *
+     * @return 未能补救（接收者不在当前节点且未配置离线收件箱）时返回 false
+     */
+    public boolean deferMessage(NotifyMessage message) {
+        SimpUser user = userRegistry.getUser(message.getReceiver());
+        if (user == null || !user.hasSessions()) {
+            return storeOffline(message);
+        }
+        if (message.getCreated() == 0L) {
+            message.setCreated(System.currentTimeMillis());
+        }
+        EncodedMessage encoded = encode(message);
+        for (SimpSession session : new ArrayList<>(user.getSessions())) {
+            addAckMessageRecord(message, encoded, session.getId());
+        }
+        log.debug("[ACK] 推送延后到 ACK 重试, msgId: {}, receiver: {}", message.getId(), message.getReceiver());
+        return true;
+    }
+
+    public boolean isOfflineInboxEnabled() {
+        return offlineInbox != null;
+    }
+
+    /**
+     * 接收者离线，暂存到离线收件箱，重新订阅后补发
+     *
+     * @return 未配置离线收件箱时返回 false
+     */
+    public boolean storeOffline(NotifyMessage message) {
+        if (offlineInbox == null) {
+            return false;
+        }
+        if (message.getCreated() == 0L) {
+            message.setCreated(System.currentTimeMillis());
+        }
+        offlineInbox.offer(message);
+        metrics.inboxStored(message.getType());
+        log.debug("[INBOX] 用户离线, 暂存消息, msgId: {}, receiver: {}, type: {}",
+                message.getId(), message.getReceiver(), message.getType());
+        return true;
+    }
+
+    /**
+     * 批量暂存离线消息
+     *
+     * @return 未配置离线收件箱时返回 false
+     */
+    public boolean storeOffline(List<NotifyMessage> messages) {
+        if (offlineInbox == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        for (NotifyMessage message : messages) {
+            if (message.getCreated() == 0L) {
+                message.setCreated(now);
+            }
+            metrics.inboxStored(message.getType());
+        }
+        offlineInbox.offerAll(messages);
+        log.debug("[INBOX] 用户离线, 批量暂存消息, count: {}", messages.size());
+        return true;
+    }
+
+    /**
+     * 补发离线收件箱中的消息：合并状态更新后打包为一条 NOTIFY_REPLAY 推送到该 session 并追踪 ACK。
+     * 由 {@link StompWebsocketInterceptor} 在 /user/queue/msg 订阅生效后调用。
+     *
+     * @param userId    用户ID
+     * @param sessionId 刚完成订阅的 session
+     */
+    public void replayOffline(String userId, String sessionId) {
+        if (offlineInbox == null || userId == null || isBlank(sessionId)) {
+            return;
+        }
+        List<NotifyMessage> drained = offlineInbox.drain(userId);
+        if (drained.isEmpty()) {
+            return;
+        }
+        List<NotifyMessage> collapsed = InboxReplay.collapse(drained);
+        if (collapsed.isEmpty()) {
+            return;
+        }
+        NotifyMessage replay = InboxReplay.envelope(userId, collapsed);
+        EncodedMessage encoded = encode(replay);
+        addAckMessageRecord(replay, encoded, sessionId);
+        sendEncoded(replay, encoded, sessionId);
+        metrics.inboxReplayed(collapsed.size());
+        log.info("[INBOX] 补发离线消息, receiver {}, sessionId {}, stored {}, replayed {}",
+                userId, sessionId, drained.size(), collapsed.size());
+    }
+
     private boolean isBlank(String str) {
         return str == null || str.trim().isEmpty();
     }
@@ -105,38 +387,133 @@ public class StompWebSocketHandler {
                     message.getId(), message.getReceiver(), user);
             return;
         }
+        sendEncoded(message, encode(message), sessionId);
+    }
 
-        if (isBlank(sessionId)) {
-            simpMessagingTemplate.convertAndSendToUser(user.getName(), "/queue/msg", message);
-            log.debug("[ACK] 发送消息到所有session, msgId: {}, receiver: {}, sessionCount: {}",
-                    message.getId(), message.getReceiver(), user.getSessions().size());
+    /**
+     * 编码消息，使用 SimpMessagingTemplate 的消息转换器，与 convertAndSend 的编码结果一致
+     */
+    public EncodedMessage encode(NotifyMessage message) {
+        Message<?> converted = simpMessagingTemplate.getMessageConverter().toMessage(message, null);
+        if (converted == null || !(converted.getPayload() instanceof byte[] payload)) {
+            throw new IllegalStateException("[ACK] 消息编码失败, msgId: " + message.getId());
+        }
+        Object contentType = converted.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        return new EncodedMessage(payload, contentType instanceof MimeType mimeType ? mimeType
+                : contentType != null ? MimeType.valueOf(contentType.toString()) : MimeTypeUtils.APPLICATION_JSON);
+    }
+
+    /**
+     * 编码一次重发：带上当前的 ack_retry_count / ack_last_sent，客户端可据此识别重发。
+     * 原消息在同一用户的多个 session 间共享，不直接修改
+     */
+    protected EncodedMessage encodeResend(PendingAck pending) {
+        NotifyMessage message = pending.getMessage();
+        if (message.getData() == null) {
+            // Redis 模式还原的记录只有元数据，从保存的消息体解码
+            message = decode(pending.getEncoded(), message);
+        }
+        return encode(message.toBuilder()
+                .ackRetryCount(pending.getRetryCount())
+                .ackLastSent(pending.getLastSentAt())
+                .build());
+    }
+
+    private NotifyMessage decode(EncodedMessage encoded, NotifyMessage fallback) {
+        MessageHeaders headers = new MessageHeaders(Map.of(MessageHeaders.CONTENT_TYPE, encoded.contentType()));
+        Object decoded = simpMessagingTemplate.getMessageConverter()
+                .fromMessage(MessageBuilder.createMessage(encoded.payload(), headers), NotifyMessage.class);
+        return decoded instanceof NotifyMessage message ? message : fallback;
+    }
+
+    /**
+     * 发送已编码的消息到指定 session，不再重复序列化
+     *
+     * @param message   消息（用于确定接收者和日志）
+     * @param encoded   预编码的消息体
+     * @param sessionId 目标 session ID，如果为 null 则发送到用户的所有 session
+     */
+    public void sendEncoded(NotifyMessage message, EncodedMessage encoded, String sessionId) {
+        if (sessionOutbox != null && !isBlank(sessionId)) {
+            sessionOutbox.submit(message, encoded, sessionId);
         } else {
-            String destination = "/user/" + user.getName() + "/queue/msg";
-            final Principal principal = () -> user.getName();
-            simpMessagingTemplate.convertAndSend(destination, message, msg -> {
-                SimpMessageHeaderAccessor accessor =
-                        MessageHeaderAccessor.getAccessor(msg, SimpMessageHeaderAccessor.class);
-                if (accessor != null) {
-                    accessor.setSessionId(sessionId);
-                    accessor.setUser(principal);
-                }
-                return msg;
-            });
-            log.debug("[ACK] 发送消息到指定session, msgId: {}, receiver: {}, sessionId: {}",
-                    message.getId(), message.getReceiver(), sessionId);
+            sendEncoded(message.getReceiver(), encoded, sessionId);
+        }
+        log.debug("[ACK] 发送消息, msgId: {}, receiver: {}, sessionId: {}", message.getId(), message.getReceiver(), sessionId);
+    }
+
+    /**
+     * 发送已编码的消息到用户的指定 session
+     *
+     * @param receiver  接收者用户ID
+     * @param encoded   预编码的消息体
+     * @param sessionId 目标 session ID，如果为 null 则发送到用户的所有 session
+     */
+    public void sendEncoded(String receiver, EncodedMessage encoded, String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(encoded.contentType());
+        if (!isBlank(sessionId)) {
+            accessor.setSessionId(sessionId);
+            accessor.setUser(() -> receiver);
         }
+        accessor.setLeaveMutable(true);
+        simpMessagingTemplate.send(userDestination(receiver),
+                MessageBuilder.createMessage(encoded.payload(), accessor.getMessageHeaders()));
     }
 
     /**
-     * 广播消息到所有在线用户
+     * 用户队列目的地，与 {@link SimpMessagingTemplate#convertAndSendToUser} 一致，接收者中的 "/" 转义为 %2F
+     */
+    private String userDestination(String receiver) {
+        return simpMessagingTemplate.getUserDestinationPrefix() + receiver.replace("/", "%2F") + "/queue/msg";
+    }
+
+    /**
+     * 广播消息到本节点所有在线用户。
+     * 集群广播请使用 {@link io.stu.notify.NotifyManager#broadcast(io.stu.notify.repository.NotifyMessageLog)}。
      */
     public void broadcastMessage(NotifyMessage message) {
-        userRegistry.getUsers().forEach(user -> {
-            if (user.hasSessions()) {
-                message.setReceiver(user.getName());
-                sendMessage(message, null);
+        broadcastLocal(message);
+    }
+
+    /**
+     * 广播消息到本节点所有在线用户：只编码一次，按用户分片在广播线程池中推送，不修改传入的消息，不阻塞调用方
+     *
+     * @return 本节点全部推送完成后完成的结果
+     */
+    public CompletableFuture<BroadcastResult> broadcastLocal(NotifyMessage message) {
+        BroadcastEngine engine = broadcastEngine;
+        if (engine == null) {
+            synchronized (this) {
+                engine = broadcastEngine;
+                if (engine == null) {
+                    engine = new BroadcastEngine(this, userRegistry::getUsers, broadcastParallelism, broadcastChunkSize);
+                    broadcastEngine = engine;
+                }
             }
-        });
+        }
+        return engine.fanOut(message);
+    }
+
+    /**
+     * session 的出站深度（在途 + 排队），未开启出站队列或 session 不在本节点时返回 0
+     */
+    public int getOutboundDepth(String sessionId) {
+        return sessionOutbox != null ? sessionOutbox.depth(sessionId) : 0;
+    }
+
+    /**
+     * 本节点各 session 的出站深度，只包含深度大于 0 的 session
+     */
+    public Map<String, Integer> getOutboundDepths() {
+        return sessionOutbox != null ? sessionOutbox.depths() : Map.of();
+    }
+
+    /**
+     * session 出站拥塞时 ACK 重试跳过本轮，不计入重试次数
+     */
+    protected boolean isCongested(String sessionId) {
+        return sessionOutbox != null && sessionOutbox.isCongested(sessionId);
     }
 
     /**
@@ -151,15 +528,25 @@ public class StompWebSocketHandler {
      * 添加 ACK 消息记录
      */
     public void addAckMessageRecord(NotifyMessage message, String sessionId) {
+        if (message.getCreated() == 0L) {
+            message.setCreated(System.currentTimeMillis());
+        }
+        addAckMessageRecord(message, encode(message), sessionId);
+    }
+
+    /**
+     * 添加 ACK 消息记录，记录中缓存预编码的消息体，Redis 模式下重试时从中还原消息
+     */
+    public void addAckMessageRecord(NotifyMessage message, EncodedMessage encoded, String sessionId) {
         if (message.getId() == null || isBlank(sessionId)) {
             log.warn("[ACK] 无法创建ACK记录, msgId: {}, sessionId: {}", message.getId(), sessionId);
             return;
         }
 
         if (enableLocalAck) {
-            addToLocalCache(message, sessionId);
+            addToLocalCache(message, encoded, sessionId);
         } else {
-            addToRedis(message, sessionId);
+            addToRedis(message, encoded, sessionId);
         }
     }
 
@@ -186,158 +573,292 @@ public class StompWebSocketHandler {
 
     // ==================== 本地缓存实现 ====================
 
-    protected void addToLocalCache(NotifyMessage message, String sessionId) {
+    protected void addToLocalCache(NotifyMessage message, EncodedMessage encoded, String sessionId) {
         String ackKey = buildAckKey(message.getId(), sessionId);
-        if (localCache.containsKey(ackKey)) {
+        long now = System.currentTimeMillis();
+        PendingAck pending = new PendingAck(ackKey, sessionId, message, encoded, retryPolicyFor(message), now);
+        if (localCache.putIfAbsent(ackKey, pending) != null) {
             log.debug("[ACK-LOCAL] 消息已存在, msgId {}, sessionId {}", message.getId(), sessionId);
             return;
         }
-        if (message.getCreated() == 0L) message.setCreated(System.currentTimeMillis());
-        message.setAckRetryCount(0);
-        message.setAckLastSent(System.currentTimeMillis());
-        localCache.put(ackKey, message);
+        indexAck(sessionId, ackKey);
+        if (ackWheel == null) {
+            init();
+        }
+        pending.scheduled(ackWheel.schedule(pending, pending.nextDueAt(now)));
         log.info("[ACK-LOCAL] 消息入队, msgId {}, sessionId {}, receiver {}",
                 message.getId(), sessionId, message.getReceiver());
     }
 
     protected boolean ackFromLocalCache(String receiver, String messageId, String sessionId) {
         String ackKey = buildAckKey(messageId, sessionId);
-        NotifyMessage msg = localCache.get(ackKey);
-        if (msg == null) {
+        PendingAck pending = localCache.get(ackKey);
+        if (pending == null) {
             return false;
         }
-        if (!receiver.equals(msg.getReceiver())) {
+        if (!receiver.equals(pending.getMessage().getReceiver())) {
             return false;
         }
-        localCache.remove(ackKey);
+        if (localCache.remove(ackKey, pending)) {
+            unindexAck(sessionId, ackKey);
+            pending.cancelScheduled();
+        }
+        metrics.recordAck(pending.getMessage().getType(), pending.getMessage().getCreated());
         log.info("[ACK-LOCAL] 确认成功, msgId {}, sessionId {}, retryCount {}",
-                messageId, sessionId, msg.getAckRetryCount());
+                messageId, sessionId, pending.getRetryCount());
         return true;
     }
 
-    @Scheduled(fixedDelay = ACK_RETRY_INTERVAL_MS)
+    /**
+     * 推进 ACK 时间轮，只处理到期的记录（由时间轮线程每 stomp.ack.tick-ms 调用）
+     */
     public void retryLocalCache() {
-        if (!enableLocalAck) return;
-        if (localCache.isEmpty()) return;
-
-        int retry = 0, expired = 0, notOnline = 0;
-        for (val entry : localCache.entrySet()) {
-            val ackKey = entry.getKey();
-            val msg = entry.getValue();
-            if (msg == null || System.currentTimeMillis() - msg.getCreated() < ACK_CHECK_WAIT_MS) continue;
-
-            String[] parsed = parseAckKey(ackKey);
-            String sid = parsed[1];
-
-            if (msg.getAckRetryCount() >= ACK_MAX_RETRY_COUNT ||
-                    System.currentTimeMillis() - msg.getCreated() > ACK_MESSAGE_TTL_MS) {
-                localCache.remove(ackKey);
-                expired++;
-                log.warn("[ACK-LOCAL] 消息过期/超限, 移除, msgId {}, sessionId {}", parsed[0], sid);
-                continue;
+        if (!enableLocalAck || ackWheel == null) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            AckTickStats stats = new AckTickStats();
+            int due = ackWheel.advance(now, pending -> processDueAck(pending, now, stats));
+            if (due > 0) {
+                log.debug("[ACK-LOCAL] 定时处理完成, total {}, due {}, retried {}, expired {}, not online {}, congested {}",
+                        localCache.size(), due, stats.retried, stats.expired, stats.notOnline, stats.congested);
+            }
+        } catch (Exception e) {
+            log.error("[ACK-LOCAL] 时间轮处理异常", e);
+        }
+    }
+
+    /**
+     * 处理一条到期的待确认记录：过期则移除，会话在线则重发，然后按重试策略重新调度
+     */
+    protected void processDueAck(PendingAck pending, long now, AckTickStats stats) {
+        String ackKey = pending.getAckKey();
+        if (localCache.get(ackKey) != pending) {
+            // 已确认或已被替换
+            return;
+        }
+        NotifyMessage msg = pending.getMessage();
+        String sid = pending.getSessionId();
+
+        if (pending.isExhausted(now)) {
+            if (localCache.remove(ackKey, pending)) {
+                unindexAck(sid, ackKey);
             }
+            stats.expired++;
+            metrics.ackExpired(msg.getType());
+            log.warn("[ACK-LOCAL] 消息过期/超限, 移除, msgId {}, sessionId {}, retryCount {}",
+                    msg.getId(), sid, pending.getRetryCount());
+            return;
+        }
+
+        boolean online = sessionExists(msg.getReceiver(), sid);
+        if (online && isCongested(sid)) {
+            stats.congested++;
+            metrics.ackCongested(msg.getType());
+        } else if (online) {
+            pending.markResent(now);
+            sendEncoded(msg, encodeResend(pending), sid);
+            stats.retried++;
+            metrics.ackRetried(msg.getType());
+            log.debug("[ACK-LOCAL] 重发, msgId {}, sessionId {}, retryCount {}",
+                    msg.getId(), sid, pending.getRetryCount());
+        } else {
+            stats.notOnline++;
+            metrics.ackNotOnline(msg.getType());
+        }
+        pending.scheduled(ackWheel.schedule(pending, pending.nextDueAt(now)));
+    }
+
+    /**
+     * 检查用户的指定 session 是否在当前节点在线
+     */
+    protected boolean sessionExists(String receiver, String sessionId) {
+        return sessionId != null && receiver != null && receiver.equals(liveSessions.get(sessionId));
+    }
+
+    /**
+     * 单次时间轮推进的统计
+     */
+    protected static final class AckTickStats {
+        int retried;
+        int expired;
+        int notOnline;
+        int congested;
+    }
+
+    // ==================== Session 生命周期 ====================
 
-            if (hasSession(msg.getReceiver())) {
-                SimpUser user = userRegistry.getUser(msg.getReceiver());
-                boolean sessionExists = user.getSessions().stream()
-                        .anyMatch(s -> s.getId().equals(sid));
-
-                if (sessionExists) {
-                    sendMessage(msg, sid);
-                    msg.setAckRetryCount(msg.getAckRetryCount() + 1);
-                    msg.setAckLastSent(System.currentTimeMillis());
-                    retry++;
-                    log.debug("[ACK-LOCAL] 重发, msgId {}, sessionId {}, retryCount {}",
-                            parsed[0], sid, msg.getAckRetryCount());
-                    continue;
+    @EventListener
+    public void onSessionConnected(SessionConnectedEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        Principal user = event.getUser();
+        if (sessionId != null && user != null) {
+            liveSessions.put(sessionId, user.getName());
+        }
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        onSessionDisconnect(event.getSessionId());
+    }
+
+    /**
+     * session 断开：立即清理该 session 上的全部待确认记录，代价与该 session 的记录数相关。
+     * 可重复调用（DISCONNECT 帧与连接关闭事件都会触发）。
+     * 消息已持久化，客户端重连后可通过历史/未读接口补齐。
+     *
+     * @param sessionId session ID
+     */
+    public void onSessionDisconnect(String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+        liveSessions.remove(sessionId);
+        Set<String> ackKeys = sessionAckKeys.remove(sessionId);
+        if (ackKeys == null || ackKeys.isEmpty()) {
+            return;
+        }
+        if (enableLocalAck) {
+            for (String ackKey : ackKeys) {
+                PendingAck pending = localCache.remove(ackKey);
+                if (pending != null) {
+                    pending.cancelScheduled();
                 }
             }
-            notOnline++;
+            log.info("[ACK-LOCAL] session 断开, 清理待确认记录, sessionId {}, count {}", sessionId, ackKeys.size());
+        } else if (redisson != null) {
+            RedisAckStore.Batch batch = getRedisAckStore().batch();
+            ackKeys.forEach(batch::remove);
+            batch.execute();
+            log.info("[ACK-REDIS] session 断开, 清理待确认记录, sessionId {}, count {}", sessionId, ackKeys.size());
         }
-        log.info("[ACK-LOCAL] 定时处理完成, total {}, retried {}, expired {}, not online {}",
-                localCache.size(), retry, expired, notOnline);
+    }
+
+    private void indexAck(String sessionId, String ackKey) {
+        sessionAckKeys.compute(sessionId, (k, keys) -> {
+            if (keys == null) {
+                keys = ConcurrentHashMap.newKeySet();
+            }
+            keys.add(ackKey);
+            return keys;
+        });
+    }
+
+    private void unindexAck(String sessionId, String ackKey) {
+        sessionAckKeys.computeIfPresent(sessionId, (k, keys) -> {
+            keys.remove(ackKey);
+            return keys.isEmpty() ? null : keys;
+        });
     }
 
     // ==================== Redis 实现 ====================
 
-    protected void addToRedis(NotifyMessage message, String sessionId) {
+    protected void addToRedis(NotifyMessage message, EncodedMessage encoded, String sessionId) {
         String ackKey = buildAckKey(message.getId(), sessionId);
-        RMap<String, NotifyMessage> map = redisson.getMap(PENDING_MAP_KEY);
-        if (map.containsKey(ackKey)) {
+        long now = System.currentTimeMillis();
+        PendingAck pending = new PendingAck(ackKey, sessionId, message, encoded, retryPolicyFor(message), now);
+        if (!getRedisAckStore().add(pending, now)) {
             log.debug("[ACK-REDIS] 消息已存在, msgId {}, sessionId {}", message.getId(), sessionId);
             return;
         }
-        if (message.getCreated() == 0L) message.setCreated(System.currentTimeMillis());
-        message.setAckRetryCount(0);
-        message.setAckLastSent(System.currentTimeMillis());
-        map.put(ackKey, message);
+        indexAck(sessionId, ackKey);
         log.info("[ACK-REDIS] 消息入队, msgId {}, sessionId {}, receiver {}",
                 message.getId(), sessionId, message.getReceiver());
     }
 
     protected boolean ackFromRedis(String receiver, String messageId, String sessionId) {
         String ackKey = buildAckKey(messageId, sessionId);
-        RMap<String, NotifyMessage> map = redisson.getMap(PENDING_MAP_KEY);
-        NotifyMessage msg = map.get(ackKey);
-        if (msg == null) {
-            return false;
-        }
-        if (!receiver.equals(msg.getReceiver())) {
+        RedisAckStore.Acked acked = getRedisAckStore().ack(ackKey, receiver);
+        if (acked == null) {
             return false;
         }
-        map.remove(ackKey);
+        unindexAck(sessionId, ackKey);
+        metrics.recordAck(acked.type(), acked.created());
         log.info("[ACK-REDIS] 确认成功, msgId {}, sessionId {}, retryCount {}",
-                messageId, sessionId, msg.getAckRetryCount());
+                messageId, sessionId, acked.retryCount());
         return true;
     }
 
-    @Scheduled(fixedDelay = ACK_RETRY_INTERVAL_MS)
+    /**
+     * 处理当前节点到期的 Redis 待确认记录（由轮询线程每 stomp.ack.redis.poll-ms 调用）。
+     * 每批一次脚本取出到期记录、一次 pipeline 写回结果。
+     */
     public void retryRedisMessages() {
-        if (enableLocalAck) return;
-
-        RMap<String, NotifyMessage> map = redisson.getMap(PENDING_MAP_KEY);
-        if (map.isEmpty()) return;
-
-        log.info("[ACK-REDIS] 定时处理开始, total {}", map.size());
-
-        int retry = 0, expired = 0, notOnline = 0;
-        for (val entry : map.entrySet()) {
-            val ackKey = entry.getKey();
-            val msg = entry.getValue();
-            if (msg == null || System.currentTimeMillis() - msg.getCreated() < ACK_CHECK_WAIT_MS) continue;
-
-            if (msg.getAckRetryCount() >= ACK_MAX_RETRY_COUNT ||
-                    System.currentTimeMillis() - msg.getCreated() > ACK_MESSAGE_TTL_MS) {
-                map.remove(ackKey);
-                expired++;
-                String[] parsed = parseAckKey(ackKey);
-                log.warn("[ACK-REDIS] 消息过期/超限, 移除, msgId {}, sessionId {}",
-                        parsed[0], parsed[1]);
-                continue;
+        if (enableLocalAck || redisson == null) {
+            return;
+        }
+        try {
+            RedisAckStore store = getRedisAckStore();
+            int due, retry = 0, expired = 0, notOnline = 0, congested = 0;
+            do {
+                long now = System.currentTimeMillis();
+                List<PendingAck> batch = store.pollDue(now, ackRedisBatchSize);
+                due = batch.size();
+                RedisAckStore.Batch updates = store.batch();
+                for (PendingAck pending : batch) {
+                    NotifyMessage msg = pending.getMessage();
+                    String sid = pending.getSessionId();
+                    if (pending.isExhausted(now)) {
+                        updates.remove(pending.getAckKey());
+                        unindexAck(sid, pending.getAckKey());
+                        expired++;
+                        metrics.ackExpired(msg.getType());
+                        log.warn("[ACK-REDIS] 消息过期/超限, 移除, msgId {}, sessionId {}, retryCount {}",
+                                msg.getId(), sid, pending.getRetryCount());
+                        continue;
+                    }
+                    boolean online = sessionExists(msg.getReceiver(), sid);
+                    boolean resent = false;
+                    if (online && isCongested(sid)) {
+                        // 出站拥塞：本轮不重发，也不计入重试次数
+                        congested++;
+                        metrics.ackCongested(msg.getType());
+                    } else if (online) {
+                        pending.markResent(now);
+                        sendEncoded(msg, encodeResend(pending), sid);
+                        resent = true;
+                        retry++;
+                        metrics.ackRetried(msg.getType());
+                        log.debug("[ACK-REDIS] 重发, msgId: {}, sessionId: {}, receiver: {}, retryCount: {}",
+                                msg.getId(), sid, msg.getReceiver(), pending.getRetryCount());
+                    } else {
+                        notOnline++;
+                        metrics.ackNotOnline(msg.getType());
+                    }
+                    updates.reschedule(pending, pending.nextDueAt(now), resent);
+                }
+                updates.execute();
+            } while (due >= ackRedisBatchSize);
+            if (retry + expired + notOnline + congested > 0) {
+                log.info("[ACK-REDIS] 定时处理完成, node {}, retried {}, expired {}, not online {}, congested {}",
+                        getNodeId(), retry, expired, notOnline, congested);
             }
+        } catch (Exception e) {
+            log.error("[ACK-REDIS] 定时处理异常", e);
+        }
+    }
+
+    private double countRedisPending() {
+        try {
+            return getRedisAckStore().size();
+        } catch (Exception e) {
+            log.debug("[ACK-REDIS] 查询待确认记录数失败: {}", e.getMessage());
+            return Double.NaN;
+        }
+    }
 
-            if (hasSession(msg.getReceiver())) {
-                String[] parsed = parseAckKey(ackKey);
-                String sid = parsed[1];
-
-                SimpUser user = userRegistry.getUser(msg.getReceiver());
-                boolean sessionExists = user.getSessions().stream()
-                        .anyMatch(s -> s.getId().equals(sid));
-
-                if (sessionExists) {
-                    sendMessage(msg, sid);
-                    msg.setAckRetryCount(msg.getAckRetryCount() + 1);
-                    msg.setAckLastSent(System.currentTimeMillis());
-                    map.put(ackKey, msg);
-                    retry++;
-                    log.debug("[ACK-REDIS] 重发, msgId: {}, sessionId: {}, receiver: {}, retryCount: {}",
-                            parsed[0], sid, msg.getReceiver(), msg.getAckRetryCount());
-                    continue;
+    protected RedisAckStore getRedisAckStore() {
+        RedisAckStore store = redisAckStore;
+        if (store == null) {
+            synchronized (this) {
+                store = redisAckStore;
+                if (store == null) {
+                    store = new RedisAckStore(redisson, getNodeId(), this::retryPolicyFor);
+                    redisAckStore = store;
                 }
             }
-            notOnline++;
         }
-        log.info("[ACK-REDIS] 定时处理完成, total {}, retried {}, expired {}, not online {}",
-                map.size(), retry, expired, notOnline);
+        return store;
     }
 }
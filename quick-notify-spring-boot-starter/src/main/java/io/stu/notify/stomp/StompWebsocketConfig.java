@@ -1,16 +1,18 @@
 package io.stu.notify.stomp;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 /**
  * WebSocket STOMP 配置。
  * <p>
- * 默认配置：端点 /stomp-ws，心跳 10秒，30秒断连。
+ * 默认配置：端点 /stomp-ws，心跳 10秒，30秒断连；传输层限制见 stomp.transport.*。
  * <p>
  * 用户可覆盖方式：
  * <ul>
@@ -21,11 +23,30 @@ import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerCo
 public class StompWebsocketConfig implements WebSocketMessageBrokerConfigurer {
 
     private ChannelInterceptor channelInterceptor;
+    private SessionOutbox sessionOutbox;
+
+    // 传输层限制：单次发送超时、每个 session 的发送缓冲上限（超出任一项时 Spring 关闭该 session）、入站消息大小
+    @Value("${stomp.transport.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs = 10_000;
+    @Value("${stomp.transport.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit = 512 * 1024;
+    @Value("${stomp.transport.message-size-limit:65536}")
+    private int messageSizeLimit = 64 * 1024;
+    // 出站线程池大小，0 表示使用 Spring 默认值（CPU 核数 * 2）
+    @Value("${stomp.transport.outbound-threads:0}")
+    private int outboundThreads = 0;
 
     public void setChannelInterceptor(ChannelInterceptor interceptor) {
         this.channelInterceptor = interceptor;
     }
 
+    /**
+     * 设置出站队列，注册后统计每个 session 的在途消息
+     */
+    public void setSessionOutbox(SessionOutbox sessionOutbox) {
+        this.sessionOutbox = sessionOutbox;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         ThreadPoolTaskScheduler heartbeatScheduler = new ThreadPoolTaskScheduler();
@@ -49,10 +70,30 @@ public class StompWebsocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setDisconnectDelay(30000);
     }
 
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setMessageSizeLimit(messageSizeLimit);
+        if (sessionOutbox != null) {
+            registration.addDecoratorFactory(sessionOutbox::decorate);
+        }
+    }
+
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
         if (channelInterceptor != null) {
             registration.interceptors(channelInterceptor);
         }
     }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        if (outboundThreads > 0) {
+            registration.taskExecutor().corePoolSize(outboundThreads).maxPoolSize(outboundThreads);
+        }
+        if (sessionOutbox != null) {
+            registration.interceptors(sessionOutbox.outboundInterceptor());
+        }
+    }
 }
@@ -4,12 +4,17 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.simp.user.SimpSession;
 import org.springframework.messaging.simp.user.SimpUser;
 import org.springframework.messaging.simp.user.SimpUserRegistry;
-import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.simp.user.UserDestinationMessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
 
 import java.security.Principal;
@@ -19,16 +24,29 @@ import java.util.Optional;
 /**
  * WebSocket 连接拦截器。
  * 用户可继承此类重写 {@link #extractUserId(StompHeaderAccessor)} 或 {@link #preSend(Message, MessageChannel)}。
+ * <p>
+ * 订阅 {@value #USER_QUEUE} 生效后触发离线收件箱补发（见 {@link StompWebSocketHandler#replayOffline(String, String)}）。
  */
 @Slf4j
-public class StompWebsocketInterceptor implements ChannelInterceptor {
+public class StompWebsocketInterceptor implements ExecutorChannelInterceptor {
+
+    public static final String USER_QUEUE = "/user/queue/msg";
 
     private final ObjectProvider<SimpUserRegistry> userRegistryProvider;
+    private ObjectProvider<StompWebSocketHandler> stompWebSocketHandlerProvider;
 
     public StompWebsocketInterceptor(ObjectProvider<SimpUserRegistry> userRegistryProvider) {
         this.userRegistryProvider = userRegistryProvider;
     }
 
+    /**
+     * 设置消息处理器，DISCONNECT 时立即清理该 session 的待确认记录。
+     * 处理器依赖 SimpUserRegistry，而拦截器在 broker 配置阶段创建，因此延迟到 DISCONNECT 时再获取
+     */
+    public void setStompWebSocketHandlerProvider(ObjectProvider<StompWebSocketHandler> stompWebSocketHandlerProvider) {
+        this.stompWebSocketHandlerProvider = stompWebSocketHandlerProvider;
+    }
+
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
         StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
@@ -59,11 +77,44 @@ public class StompWebsocketInterceptor implements ChannelInterceptor {
             } else if(StompCommand.DISCONNECT.equals(accessor.getCommand())){
                 SimpUserRegistry registry = userRegistryProvider.getIfAvailable();
                 log.info("【{}】用户下线了, 当前会话：{}, 当前总用户数 {}", Optional.ofNullable(accessor.getUser()).map(Principal::getName).orElse(null), accessor.getSessionId(), registry != null ? registry.getUserCount() : -1);
+                StompWebSocketHandler handler = stompWebSocketHandlerProvider != null
+                        ? stompWebSocketHandlerProvider.getIfAvailable() : null;
+                if (handler != null) {
+                    handler.onSessionDisconnect(accessor.getSessionId());
+                }
             }
         }
         return message;
     }
 
+    /**
+     * 订阅消息由 UserDestinationMessageHandler 转换为 session 专属目的地并同步注册到 broker，
+     * 在其处理完成后补发，保证补发消息不会因订阅尚未生效而丢失
+     */
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        if (ex != null || !(handler instanceof UserDestinationMessageHandler)) {
+            return;
+        }
+        MessageHeaders headers = message.getHeaders();
+        Principal user = SimpMessageHeaderAccessor.getUser(headers);
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.SUBSCRIBE
+                || !USER_QUEUE.equals(SimpMessageHeaderAccessor.getDestination(headers)) || user == null) {
+            return;
+        }
+        StompWebSocketHandler stompHandler = stompWebSocketHandlerProvider != null
+                ? stompWebSocketHandlerProvider.getIfAvailable() : null;
+        if (stompHandler == null) {
+            return;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        try {
+            stompHandler.replayOffline(user.getName(), sessionId);
+        } catch (Exception e) {
+            log.error("[INBOX] 补发离线消息失败, user {}, sessionId {}", user.getName(), sessionId, e);
+        }
+    }
+
     /**
      * 从 StompHeaderAccessor 提取用户ID。
      * 子类可重写此方法实现自定义认证逻辑（如从 Cookie、JWT 等获取用户ID）。
@@ -8,5 +8,9 @@ CREATE TABLE IF NOT EXISTS notify_log (
     created BIGINT,
     last_modified BIGINT,
     version BIGINT DEFAULT 0,
-    INDEX idx_receiver_viewed_created (receiver, viewed, created)
+    INDEX idx_receiver_viewed_created (receiver, viewed, created),
+    -- 游标分页（seek）: WHERE receiver = ? AND (created, id) < (?, ?) ORDER BY created DESC, id DESC
+    INDEX idx_receiver_created_id (receiver, created, id),
+    -- 过期清理按策略分趟、按主键分段：WHERE viewed = ? AND created < ? AND (created, id) > (?, ?) ORDER BY created, id
+    INDEX idx_created_id (created, id)
 );
@@ -0,0 +1,170 @@
+package io.stu.notify;
+
+import io.stu.notify.counter.LocalUnreadCounter;
+import io.stu.notify.model.MessageTypeRegistry;
+import io.stu.notify.repository.NotifyMessageLog;
+import io.stu.notify.repository.NotifyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NotifyManagerUnreadTest {
+
+    private final InMemoryRepository repository = new InMemoryRepository();
+    private final TransactionTemplate outer = new TransactionTemplate(new NoopTransactionManager());
+    private NotifyManager manager;
+
+    @BeforeEach
+    void setUp() {
+        manager = new NotifyManager(repository, event -> {
+        });
+        manager.setTransactionTemplate(outer);
+        manager.setUnreadCounter(new LocalUnreadCounter(60_000, 100));
+        // 预先加载计数
+        assertThat(manager.countUnread("u1")).isZero();
+    }
+
+    @Test
+    void rolledBackSaveDoesNotLeaveCounterHigh() {
+        outer.executeWithoutResult(status -> {
+            manager.saveAndPublish(message("m1"));
+            assertThat(manager.countUnread("u1")).isEqualTo(1);
+            status.setRollbackOnly();
+        });
+
+        assertThat(manager.countUnread("u1")).isZero();
+    }
+
+    @Test
+    void rolledBackMarkAsReadDoesNotLeaveCounterLow() {
+        manager.saveAndPublish(message("m1"));
+        assertThat(manager.countUnread("u1")).isEqualTo(1);
+
+        outer.executeWithoutResult(status -> {
+            manager.markMessagesAsRead("u1", List.of("m1"));
+            assertThat(manager.countUnread("u1")).isZero();
+            status.setRollbackOnly();
+        });
+
+        assertThat(manager.countUnread("u1")).isEqualTo(1);
+    }
+
+    @Test
+    void committedChangesKeepCounterWithoutReload() {
+        outer.executeWithoutResult(status -> manager.saveAndPublish(message("m1")));
+        outer.executeWithoutResult(status -> manager.saveAndPublish(message("m2")));
+        outer.executeWithoutResult(status -> manager.markMessagesAsRead("u1", List.of("m1")));
+
+        assertThat(manager.countUnread("u1")).isEqualTo(1);
+        // 只有 setUp 中加载过一次
+        assertThat(repository.countQueries).isEqualTo(1);
+    }
+
+    private static NotifyMessageLog message(String id) {
+        return new NotifyMessageLog(id, MessageTypeRegistry.STRING_MSG, "u1", "data-" + id);
+    }
+
+    /**
+     * 只维护同步回调的事务管理器
+     */
+    private static class NoopTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected boolean isExistingTransaction(Object transaction) {
+            return TransactionSynchronizationManager.isActualTransactionActive();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+
+    /**
+     * 内存仓储，事务回滚时撤销写入
+     */
+    private static class InMemoryRepository implements NotifyRepository {
+
+        private final List<NotifyMessageLog> messages = new ArrayList<>();
+        private int countQueries;
+
+        @Override
+        public void save(NotifyMessageLog msg) {
+            messages.add(msg);
+            onRollback(() -> messages.remove(msg));
+        }
+
+        @Override
+        public List<NotifyMessageLog> findByReceiver(String userId, int offset, int limit) {
+            return List.of();
+        }
+
+        @Override
+        public List<NotifyMessageLog> findByReceiverBefore(String userId, long created, int offset, int limit) {
+            return List.of();
+        }
+
+        @Override
+        public long countUnread(String userId) {
+            countQueries++;
+            return messages.stream().filter(msg -> msg.getReceiver().equals(userId) && !msg.isViewed()).count();
+        }
+
+        @Override
+        public void markAsRead(String userId, List<String> ids) {
+            markAsReadCount(userId, ids);
+        }
+
+        @Override
+        public int markAsReadCount(String userId, List<String> ids) {
+            int updated = 0;
+            for (NotifyMessageLog msg : messages) {
+                if (msg.getReceiver().equals(userId) && !msg.isViewed() && ids.contains(msg.getId())) {
+                    msg.setViewed(true);
+                    onRollback(() -> msg.setViewed(false));
+                    updated++;
+                }
+            }
+            return updated;
+        }
+
+        @Override
+        public void delete(String userId, List<String> ids) {
+        }
+
+        private static void onRollback(Runnable undo) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == STATUS_ROLLED_BACK) {
+                            undo.run();
+                        }
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package io.stu.notify;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NotifyUpdateDebouncerTest {
+
+    private final List<Flushed> flushed = new CopyOnWriteArrayList<>();
+    private NotifyUpdateDebouncer debouncer;
+
+    @AfterEach
+    void stop() {
+        if (debouncer != null) {
+            debouncer.stop();
+        }
+    }
+
+    @Test
+    void mergesIdsInOrderWithoutDuplicates() {
+        debouncer = start(60_000, 100, 10);
+
+        assertThat(debouncer.viewed("u1", List.of("a", "b"))).isTrue();
+        assertThat(debouncer.viewed("u1", List.of("b", "c"))).isTrue();
+        assertThat(debouncer.deleted("u1", List.of("x"))).isTrue();
+        assertThat(flushed).isEmpty();
+
+        debouncer.flush("u1");
+
+        assertThat(flushed).containsExactly(new Flushed("u1", List.of("a", "b", "c"), List.of("x")));
+        assertThat(debouncer.size()).isZero();
+    }
+
+    @Test
+    void deletedIdsAreRemovedFromViewed() {
+        debouncer = start(60_000, 100, 10);
+
+        debouncer.viewed("u1", List.of("a", "b"));
+        debouncer.deleted("u1", List.of("a"));
+        // 已删除的 id 之后再被标记已读也不发布
+        debouncer.viewed("u1", List.of("a", "c"));
+        debouncer.flush("u1");
+
+        assertThat(flushed).containsExactly(new Flushed("u1", List.of("b", "c"), List.of("a")));
+    }
+
+    @Test
+    void usersAreMergedSeparately() {
+        debouncer = start(60_000, 100, 10);
+
+        debouncer.viewed("u1", List.of("a"));
+        debouncer.viewed("u2", List.of("b"));
+        debouncer.flush("u2");
+
+        assertThat(flushed).containsExactly(new Flushed("u2", List.of("b"), List.of()));
+        assertThat(debouncer.size()).isEqualTo(1);
+    }
+
+    @Test
+    void flushesImmediatelyWhenMaxIdsReached() {
+        debouncer = start(60_000, 3, 10);
+
+        debouncer.viewed("u1", List.of("a", "b"));
+        assertThat(flushed).isEmpty();
+        debouncer.deleted("u1", List.of("c"));
+
+        assertThat(flushed).containsExactly(new Flushed("u1", List.of("a", "b"), List.of("c")));
+        assertThat(debouncer.size()).isZero();
+    }
+
+    @Test
+    void flushesWhenWindowEnds() throws InterruptedException {
+        debouncer = start(50, 100, 10);
+
+        debouncer.viewed("u1", List.of("a"));
+        debouncer.viewed("u1", List.of("b"));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (flushed.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(flushed).containsExactly(new Flushed("u1", List.of("a", "b"), List.of()));
+    }
+
+    @Test
+    void refusesWhenFullOrStopped() {
+        debouncer = start(60_000, 100, 1);
+
+        assertThat(debouncer.viewed("u1", List.of("a"))).isTrue();
+        // 等待发布的用户数已满，新用户由调用方直接发布，已有用户仍可合并
+        assertThat(debouncer.viewed("u2", List.of("b"))).isFalse();
+        assertThat(debouncer.viewed("u1", List.of("c"))).isTrue();
+
+        debouncer.stop();
+        // 停止时发布剩余更新，之后不再接收
+        assertThat(flushed).containsExactly(new Flushed("u1", List.of("a", "c"), List.of()));
+        assertThat(debouncer.viewed("u1", List.of("d"))).isFalse();
+    }
+
+    private NotifyUpdateDebouncer start(long windowMs, int maxIds, int maxUsers) {
+        NotifyUpdateDebouncer debouncer = new NotifyUpdateDebouncer(windowMs, maxIds, maxUsers);
+        debouncer.setFlusher((userId, viewedIds, deletedIds) -> flushed.add(new Flushed(userId, viewedIds, deletedIds)));
+        debouncer.start();
+        return debouncer;
+    }
+
+    private record Flushed(String userId, List<String> viewedIds, List<String> deletedIds) {
+    }
+}
@@ -0,0 +1,83 @@
+package io.stu.notify.event;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NotifyDeliveryExecutorTest {
+
+    private NotifyDeliveryExecutor executor;
+
+    @AfterEach
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void keyedSubmitWaitsForPermitInsteadOfRejecting() throws InterruptedException {
+        executor = new NotifyDeliveryExecutor(NotifyDeliveryExecutor.Mode.POOL, 2, 2, 1, 10);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> ran = new CopyOnWriteArrayList<>();
+        assertThat(executor.execute("u1", () -> await(release))).isTrue();
+
+        // 唯一的空位被占用，第二个任务的提交方一直等待，超过 blockTimeoutMs 也不拒绝
+        AtomicBoolean accepted = new AtomicBoolean();
+        Thread submitter = Thread.ofPlatform().start(() -> accepted.set(executor.execute("u2", () -> ran.add("u2"))));
+        submitter.join(200);
+        assertThat(submitter.isAlive()).isTrue();
+
+        release.countDown();
+        submitter.join(5_000);
+        assertThat(accepted).isTrue();
+        awaitCompleted(2);
+        assertThat(ran).containsExactly("u2");
+        assertThat(executor.getRejected()).isZero();
+    }
+
+    @Test
+    void nonBlockingKeyedSubmitIsRejectedAndUnkeyedRunsOnCaller() throws InterruptedException {
+        executor = new NotifyDeliveryExecutor(NotifyDeliveryExecutor.Mode.POOL, 2, 2, 1, 10);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute("u1", () -> await(release));
+        Thread caller = Thread.currentThread();
+        AtomicBoolean accepted = new AtomicBoolean(true);
+        AtomicBoolean ranOnCaller = new AtomicBoolean();
+
+        NotifyDeliveryExecutor.runNonBlocking(() -> {
+            accepted.set(executor.execute("u2", () -> {
+            }));
+            executor.execute(() -> ranOnCaller.set(Thread.currentThread() == caller));
+        });
+
+        assertThat(accepted).isFalse();
+        assertThat(executor.getRejected()).isEqualTo(1);
+        assertThat(ranOnCaller).isTrue();
+        assertThat(executor.getCallerRuns()).isEqualTo(1);
+        release.countDown();
+    }
+
+    private void awaitCompleted(long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executor.getCompleted() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(executor.getCompleted()).isEqualTo(expected);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
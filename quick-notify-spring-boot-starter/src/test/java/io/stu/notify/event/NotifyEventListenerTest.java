@@ -0,0 +1,206 @@
+package io.stu.notify.event;
+
+import io.stu.notify.model.NotifyMessage;
+import io.stu.notify.repository.NotifyMessageLog;
+import io.stu.notify.stomp.StompWebSocketHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.messaging.DefaultSimpUserRegistry;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NotifyEventListenerTest {
+
+    private NotifyDeliveryExecutor executor;
+
+    @AfterEach
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void singleNodeSaturatedLanesRejectNothing() throws InterruptedException {
+        // 容量远小于并发发布数，推送较慢，车道持续占满
+        executor = new NotifyDeliveryExecutor(NotifyDeliveryExecutor.Mode.POOL, 4, 4, 4, 50);
+        RecordingHandler handler = new RecordingHandler(2);
+        NotifyEventListener listener = new NotifyEventListener();
+        listener.setStompWebSocketHandler(handler);
+        listener.setDeliveryExecutor(executor);
+
+        int publishers = 8;
+        int perPublisher = 25;
+        CountDownLatch done = new CountDownLatch(publishers);
+        for (int p = 0; p < publishers; p++) {
+            String receiver = "u" + p;
+            Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perPublisher; i++) {
+                    listener.handler(new NotifyMessageEvent(message(receiver, i)));
+                }
+                done.countDown();
+            });
+        }
+        assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+        awaitDelivered(handler, publishers * perPublisher);
+
+        assertThat(executor.getRejected()).isZero();
+        assertThat(executor.getCallerRuns()).isZero();
+        // 同一接收者按发布顺序推送
+        for (int p = 0; p < publishers; p++) {
+            assertThat(handler.sent.get("u" + p)).hasSize(perPublisher).isSorted();
+        }
+    }
+
+    @Test
+    void singleNodeBatchIsSplitOnPublisherThread() throws InterruptedException {
+        executor = new NotifyDeliveryExecutor(NotifyDeliveryExecutor.Mode.POOL, 2, 2, 2, 50);
+        RecordingHandler handler = new RecordingHandler(2);
+        NotifyEventListener listener = new NotifyEventListener();
+        listener.setStompWebSocketHandler(handler);
+        listener.setDeliveryExecutor(executor);
+
+        List<String> receivers = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            receivers.add("u" + i);
+        }
+        NotifyMessageLog template = message(null, 0);
+        listener.batchHandler(new NotifyBatchEvent(template, 0, receivers));
+        awaitDelivered(handler, receivers.size());
+
+        assertThat(executor.getRejected()).isZero();
+        assertThat(handler.sent.keySet()).containsExactlyInAnyOrderElementsOf(receivers);
+    }
+
+    @Test
+    void rejectedPushIsDeliveredLaterByAckRetry() throws InterruptedException {
+        executor = new NotifyDeliveryExecutor(NotifyDeliveryExecutor.Mode.POOL, 1, 1, 1, 10);
+        List<Message<?>> sent = new CopyOnWriteArrayList<>();
+        DefaultSimpUserRegistry registry = new DefaultSimpUserRegistry();
+        StompWebSocketHandler handler = localAckHandler(registry, sent);
+        connect(handler, registry, "u1", "s1");
+        NotifyEventListener listener = new NotifyEventListener();
+        listener.setStompWebSocketHandler(handler);
+        listener.setDeliveryExecutor(executor);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute("busy", () -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        try {
+            // 组提交刷写线程中发布：车道已满，推送被拒绝，转入 ACK 重试
+            NotifyDeliveryExecutor.runNonBlocking(() -> listener.handler(new NotifyMessageEvent(message("u1", 1))));
+            assertThat(executor.getRejected()).isEqualTo(1);
+            assertThat(sent).isEmpty();
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (sent.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(sent).hasSize(1);
+            assertThat(new String((byte[]) sent.get(0).getPayload(), StandardCharsets.UTF_8)).contains("m00001");
+        } finally {
+            release.countDown();
+            handler.destroy();
+        }
+    }
+
+    /**
+     * 单节点 ACK（本地时间轮）的处理器，重试间隔 100ms，发出的消息记录到 sent
+     */
+    private static StompWebSocketHandler localAckHandler(DefaultSimpUserRegistry registry, List<Message<?>> sent) {
+        StompWebSocketHandler handler = new StompWebSocketHandler();
+        ReflectionTestUtils.setField(handler, "enableLocalAck", true);
+        ReflectionTestUtils.setField(handler, "ackRetryIntervalMs", 100L);
+        ReflectionTestUtils.setField(handler, "ackTickMs", 10L);
+        SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> sent.add(message));
+        template.setMessageConverter(new MappingJackson2MessageConverter());
+        handler.setSimpMessagingTemplate(template);
+        handler.setUserRegistry(registry);
+        return handler;
+    }
+
+    private static void connect(StompWebSocketHandler handler, DefaultSimpUserRegistry registry,
+                                String userId, String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT_ACK);
+        accessor.setSessionId(sessionId);
+        accessor.setUser(() -> userId);
+        accessor.setLeaveMutable(true);
+        SessionConnectedEvent event = new SessionConnectedEvent(handler,
+                MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), () -> userId);
+        registry.onApplicationEvent(event);
+        handler.onSessionConnected(event);
+    }
+
+    private static void awaitDelivered(RecordingHandler handler, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (handler.total() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(handler.total()).isEqualTo(expected);
+    }
+
+    private static NotifyMessageLog message(String receiver, int seq) {
+        NotifyMessageLog msg = new NotifyMessageLog(String.format("m%05d", seq), null, receiver, "data-" + seq);
+        msg.setCreated(1000L + seq);
+        return msg;
+    }
+
+    /**
+     * 所有接收者都在当前节点在线，记录推送顺序，每次推送耗时 sendMillis
+     */
+    private static class RecordingHandler extends StompWebSocketHandler {
+
+        private final Map<String, List<String>> sent = new ConcurrentHashMap<>();
+        private final long sendMillis;
+
+        RecordingHandler(long sendMillis) {
+            this.sendMillis = sendMillis;
+        }
+
+        int total() {
+            return sent.values().stream().mapToInt(List::size).sum();
+        }
+
+        @Override
+        public boolean hasSession(String receiver) {
+            return true;
+        }
+
+        @Override
+        public void sendMessageWithAck(NotifyMessage message) {
+            try {
+                Thread.sleep(sendMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sent.computeIfAbsent(message.getReceiver(), k -> new CopyOnWriteArrayList<>()).add(message.getId());
+        }
+
+        @Override
+        public boolean isLocalAckEnabled() {
+            return true;
+        }
+    }
+}
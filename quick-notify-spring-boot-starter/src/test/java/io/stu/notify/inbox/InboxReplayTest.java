@@ -0,0 +1,108 @@
+package io.stu.notify.inbox;
+
+import io.stu.notify.model.MessageTypeRegistry;
+import io.stu.notify.model.MessageTypeRegistry.NotifyUpdateRsp;
+import io.stu.notify.model.NotifyMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InboxReplayTest {
+
+    @Test
+    void mergesUpdatesAfterRegularMessages() {
+        List<NotifyMessage> collapsed = InboxReplay.collapse(List.of(
+                update(MessageTypeRegistry.NOTIFY_VIEWED, 10L, "x", "y"),
+                regular("a"),
+                update(MessageTypeRegistry.NOTIFY_DELETED, 9L, "z"),
+                regular("b"),
+                update(MessageTypeRegistry.NOTIFY_VIEWED, 8L, "y", "w")));
+
+        assertThat(collapsed).extracting(NotifyMessage::getType).containsExactly(
+                MessageTypeRegistry.STRING_MSG, MessageTypeRegistry.STRING_MSG,
+                MessageTypeRegistry.NOTIFY_VIEWED, MessageTypeRegistry.NOTIFY_DELETED);
+        assertThat(collapsed.get(0).getId()).isEqualTo("a");
+        assertThat(collapsed.get(1).getId()).isEqualTo("b");
+        // id 按出现顺序去重，未读数取最后一条状态更新
+        assertThat(ids(collapsed.get(2))).containsExactly("x", "y", "w");
+        assertThat(collapsed.get(2).getUnreadCount()).isEqualTo(8L);
+        assertThat(ids(collapsed.get(3))).containsExactly("z");
+    }
+
+    @Test
+    void deletedMessagesAreNotReplayed() {
+        List<NotifyMessage> collapsed = InboxReplay.collapse(List.of(
+                regular("a"),
+                regular("b"),
+                update(MessageTypeRegistry.NOTIFY_VIEWED, null, "a", "b"),
+                update(MessageTypeRegistry.NOTIFY_DELETED, null, "a")));
+
+        // a 已删除：不补发，也从已读列表中去掉
+        assertThat(collapsed).hasSize(3);
+        assertThat(collapsed.get(0).getId()).isEqualTo("b");
+        assertThat(ids(collapsed.get(1))).containsExactly("b");
+        assertThat(ids(collapsed.get(2))).containsExactly("a");
+    }
+
+    @Test
+    void viewedMessagesAreReplayedAsViewedCopies() {
+        NotifyMessage a = regular("a");
+        List<NotifyMessage> collapsed = InboxReplay.collapse(List.of(
+                a, update(MessageTypeRegistry.NOTIFY_VIEWED, null, "a")));
+
+        assertThat(collapsed.get(0).isViewed()).isTrue();
+        assertThat(collapsed.get(0).getData()).isEqualTo(a.getData());
+        // 不修改暂存的原消息
+        assertThat(a.isViewed()).isFalse();
+    }
+
+    @Test
+    void withoutUpdatesMessagesAreUnchanged() {
+        List<NotifyMessage> messages = List.of(regular("a"), regular("b"));
+
+        assertThat(InboxReplay.collapse(messages)).containsExactlyElementsOf(messages);
+        assertThat(InboxReplay.collapse(List.of())).isEmpty();
+    }
+
+    @Test
+    void envelopeCarriesLastUnreadCount() {
+        NotifyMessage first = regular("a");
+        first.setUnreadCount(3L);
+        NotifyMessage second = regular("b");
+        second.setUnreadCount(4L);
+        NotifyMessage third = regular("c");
+
+        NotifyMessage envelope = InboxReplay.envelope("u1", List.of(first, second, third));
+
+        assertThat(envelope.getType()).isEqualTo(MessageTypeRegistry.NOTIFY_REPLAY);
+        assertThat(envelope.getReceiver()).isEqualTo("u1");
+        assertThat(envelope.getUnreadCount()).isEqualTo(4L);
+        assertThat(envelope.getData()).isEqualTo(List.of(first, second, third));
+    }
+
+    private static NotifyMessage regular(String id) {
+        return NotifyMessage.builder()
+                .id(id)
+                .type(MessageTypeRegistry.STRING_MSG)
+                .receiver("u1")
+                .data("data-" + id)
+                .created(1000L)
+                .build();
+    }
+
+    private static NotifyMessage update(String type, Long unreadCount, String... ids) {
+        return NotifyMessage.builder()
+                .type(type)
+                .receiver("u1")
+                .data(new NotifyUpdateRsp(List.of(ids)))
+                .created(1000L)
+                .unreadCount(unreadCount)
+                .build();
+    }
+
+    private static List<String> ids(NotifyMessage message) {
+        return ((NotifyUpdateRsp) message.getData()).ids();
+    }
+}
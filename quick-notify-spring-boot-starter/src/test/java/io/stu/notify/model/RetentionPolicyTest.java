@@ -0,0 +1,41 @@
+package io.stu.notify.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetentionPolicyTest {
+
+    private static final long NOW = 1_000_000L;
+
+    @Test
+    void cutoffMatchesIsExpiredAtBoundary() {
+        RetentionPolicy policy = new RetentionPolicy(100, 300);
+
+        // 创建时间早于上限（不含）的已过期，恰好满 ttl 的也过期
+        assertThat(policy.expiredBefore(true, NOW)).isEqualTo(NOW - 100 + 1);
+        assertThat(policy.isExpired(true, NOW - 100, NOW)).isTrue();
+        assertThat(policy.isExpired(true, NOW - 99, NOW)).isFalse();
+
+        assertThat(policy.expiredBefore(false, NOW)).isEqualTo(NOW - 300 + 1);
+        assertThat(policy.isExpired(false, NOW - 300, NOW)).isTrue();
+        assertThat(policy.isExpired(false, NOW - 299, NOW)).isFalse();
+    }
+
+    @Test
+    void zeroTtlKeepsForever() {
+        RetentionPolicy policy = new RetentionPolicy(100, 0);
+
+        assertThat(policy.expiredBefore(false, NOW)).isEqualTo(Long.MIN_VALUE);
+        assertThat(policy.isExpired(false, 0, NOW)).isFalse();
+        assertThat(RetentionPolicy.KEEP_FOREVER.expiredBefore(true, NOW)).isEqualTo(Long.MIN_VALUE);
+    }
+
+    @Test
+    void ofDaysAndValidation() {
+        assertThat(RetentionPolicy.ofDays(30, 180)).isEqualTo(
+                new RetentionPolicy(30 * 86_400_000L, 180 * 86_400_000L));
+        assertThatThrownBy(() -> new RetentionPolicy(-1, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
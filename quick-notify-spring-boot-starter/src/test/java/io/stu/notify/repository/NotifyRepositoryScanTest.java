@@ -0,0 +1,103 @@
+package io.stu.notify.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NotifyRepositoryScanTest {
+
+    @Test
+    void defaultScanIsAscendingAcrossPages() {
+        // 1300 条消息跨 3 页，每 3 条同一毫秒，覆盖页边界落在同一毫秒内的情况
+        InMemoryRepository repository = new InMemoryRepository();
+        for (int i = 0; i < 1300; i++) {
+            repository.add(String.format("m%05d", i), 1000 + i / 3);
+        }
+        List<String> scanned = new ArrayList<>();
+
+        long count = repository.scanByReceiver("u1", 0, Long.MAX_VALUE, msg -> scanned.add(msg.getId()));
+
+        assertThat(count).isEqualTo(1300);
+        assertThat(scanned).hasSize(1300).isSortedAccordingTo(Comparator.naturalOrder());
+        assertThat(scanned).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void defaultScanHonoursRangeBounds() {
+        InMemoryRepository repository = new InMemoryRepository();
+        for (int i = 0; i < 1200; i++) {
+            repository.add(String.format("m%05d", i), 1000 + i);
+        }
+        List<Long> created = new ArrayList<>();
+
+        // [1100, 2000) 含起点不含终点
+        long count = repository.scanRawByReceiver("u1", 1100, 2000, msg -> created.add(msg.getCreated()));
+
+        assertThat(count).isEqualTo(900);
+        assertThat(created.get(0)).isEqualTo(1100);
+        assertThat(created.get(created.size() - 1)).isEqualTo(1999);
+        assertThat(created).isSorted();
+    }
+
+    @Test
+    void defaultScanOfEmptyRangeCallsNothing() {
+        InMemoryRepository repository = new InMemoryRepository();
+        repository.add("m1", 1000);
+
+        assertThat(repository.scanByReceiver("u1", 2000, 3000, msg -> {
+            throw new AssertionError("不应回调");
+        })).isZero();
+    }
+
+    /**
+     * 只实现必需方法的内存仓储，扫描走接口默认实现
+     */
+    private static class InMemoryRepository implements NotifyRepository {
+
+        private final List<NotifyMessageLog> messages = new ArrayList<>();
+
+        void add(String id, long created) {
+            NotifyMessageLog msg = new NotifyMessageLog(id, null, "u1", id);
+            msg.setCreated(created);
+            messages.add(msg);
+        }
+
+        @Override
+        public void save(NotifyMessageLog msg) {
+            messages.add(msg);
+        }
+
+        @Override
+        public List<NotifyMessageLog> findByReceiver(String userId, int offset, int limit) {
+            return findByReceiverBefore(userId, Long.MAX_VALUE, offset, limit);
+        }
+
+        @Override
+        public List<NotifyMessageLog> findByReceiverBefore(String userId, long created, int offset, int limit) {
+            return messages.stream()
+                    .filter(msg -> msg.getReceiver().equals(userId) && msg.getCreated() < created)
+                    .sorted(Comparator.comparingLong(NotifyMessageLog::getCreated)
+                            .thenComparing(NotifyMessageLog::getId).reversed())
+                    .skip(offset)
+                    .limit(limit)
+                    .toList();
+        }
+
+        @Override
+        public long countUnread(String userId) {
+            return 0;
+        }
+
+        @Override
+        public void markAsRead(String userId, List<String> ids) {
+        }
+
+        @Override
+        public void delete(String userId, List<String> ids) {
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package io.stu.notify.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WriteBehindNotifyRepositoryTest {
+
+    private final InMemoryRepository delegate = new InMemoryRepository();
+    private final TransactionTemplate outer = new TransactionTemplate(new NoopTransactionManager());
+
+    @Test
+    void rolledBackMarkLeavesBufferEmpty() {
+        LocalReadMarkBuffer buffer = new LocalReadMarkBuffer(100);
+        WriteBehindNotifyRepository repository = writeBehind(buffer, "m1", "m2");
+
+        outer.executeWithoutResult(status -> {
+            assertThat(repository.markAsReadCount("u1", List.of("m1", "m2"))).isEqualTo(2);
+            // 提交前不记入缓冲
+            assertThat(buffer.size()).isZero();
+            status.setRollbackOnly();
+        });
+
+        assertThat(buffer.size()).isZero();
+        assertThat(repository.countUnread("u1")).isEqualTo(2);
+    }
+
+    @Test
+    void committedMarkIsBufferedAfterCommit() {
+        LocalReadMarkBuffer buffer = new LocalReadMarkBuffer(100);
+        WriteBehindNotifyRepository repository = writeBehind(buffer, "m1", "m2");
+
+        outer.executeWithoutResult(status -> repository.markAsReadCount("u1", List.of("m1")));
+
+        assertThat(buffer.get("u1")).containsExactly("m1");
+        assertThat(delegate.directWrites).isEmpty();
+        assertThat(repository.countUnread("u1")).isEqualTo(1);
+        // 已在缓冲中的消息不重复计入
+        Integer again = outer.execute(status -> repository.markAsReadCount("u1", List.of("m1")));
+        assertThat(again).isZero();
+    }
+
+    @Test
+    void fullBufferAfterCommitWritesDirectlyInNewTransaction() {
+        LocalReadMarkBuffer buffer = new LocalReadMarkBuffer(1);
+        WriteBehindNotifyRepository repository = writeBehind(buffer, "m1", "m2");
+
+        outer.executeWithoutResult(status -> repository.markAsReadCount("u1", List.of("m1", "m2")));
+
+        assertThat(buffer.size()).isZero();
+        assertThat(delegate.directWrites).containsExactly(List.of("m1", "m2"));
+        // 直接写库在新事务中执行
+        assertThat(delegate.writesInTransaction).isTrue();
+        assertThat(repository.countUnread("u1")).isZero();
+    }
+
+    private WriteBehindNotifyRepository writeBehind(ReadMarkBuffer buffer, String... unreadIds) {
+        delegate.unread.addAll(List.of(unreadIds));
+        WriteBehindNotifyRepository repository = new WriteBehindNotifyRepository(delegate, buffer, 60_000, 100);
+        repository.setTransactionTemplate(outer);
+        return repository;
+    }
+
+    /**
+     * 只维护同步回调的事务管理器
+     */
+    private static class NoopTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected boolean isExistingTransaction(Object transaction) {
+            return TransactionSynchronizationManager.isActualTransactionActive();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected Object doSuspend(Object transaction) {
+            return transaction;
+        }
+
+        @Override
+        protected void doResume(Object transaction, Object suspendedResources) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+
+    /**
+     * 单个用户 u1 的未读消息，记录直接写库的调用
+     */
+    private static class InMemoryRepository implements NotifyRepository {
+
+        private final List<String> unread = new ArrayList<>();
+        private final List<List<String>> directWrites = new ArrayList<>();
+        private boolean writesInTransaction;
+
+        @Override
+        public List<String> findUnreadIds(String userId, Collection<String> ids) {
+            return unread.stream().filter(ids::contains).toList();
+        }
+
+        @Override
+        public int markAsReadCount(String userId, List<String> ids) {
+            directWrites.add(List.copyOf(ids));
+            writesInTransaction = TransactionSynchronizationManager.isActualTransactionActive();
+            int before = unread.size();
+            unread.removeAll(ids);
+            return before - unread.size();
+        }
+
+        @Override
+        public long countUnread(String userId) {
+            return unread.size();
+        }
+
+        @Override
+        public void save(NotifyMessageLog msg) {
+        }
+
+        @Override
+        public List<NotifyMessageLog> findByReceiver(String userId, int offset, int limit) {
+            return List.of();
+        }
+
+        @Override
+        public List<NotifyMessageLog> findByReceiverBefore(String userId, long created, int offset, int limit) {
+            return List.of();
+        }
+
+        @Override
+        public void markAsRead(String userId, List<String> ids) {
+            markAsReadCount(userId, ids);
+        }
+
+        @Override
+        public void delete(String userId, List<String> ids) {
+        }
+    }
+}
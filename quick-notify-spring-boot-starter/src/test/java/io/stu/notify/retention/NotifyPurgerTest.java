@@ -0,0 +1,138 @@
+package io.stu.notify.retention;
+
+import io.stu.notify.model.RetentionPolicy;
+import io.stu.notify.repository.ExpiryFilter;
+import io.stu.notify.repository.NotifyMessageLog;
+import io.stu.notify.repository.NotifyRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NotifyPurgerTest {
+
+    private static final long NOW = 1_000_000L;
+
+    @Test
+    void filtersCoverEachPolicyAndState() {
+        Map<String, RetentionPolicy> policies = Map.of(
+                "SHORT", new RetentionPolicy(10, 20),
+                "KEEP_UNREAD", new RetentionPolicy(50, 0));
+
+        List<ExpiryFilter> filters = NotifyPurger.filters(new RetentionPolicy(100, 300), policies, NOW);
+
+        // 注册的类型按名称排序，永久保留的状态不生成；默认策略排除所有注册的类型
+        assertThat(filters).containsExactly(
+                ExpiryFilter.ofType("KEEP_UNREAD", true, NOW - 50 + 1),
+                ExpiryFilter.ofType("SHORT", true, NOW - 10 + 1),
+                ExpiryFilter.ofType("SHORT", false, NOW - 20 + 1),
+                ExpiryFilter.excluding(Set.of("SHORT", "KEEP_UNREAD"), true, NOW - 100 + 1),
+                ExpiryFilter.excluding(Set.of("SHORT", "KEEP_UNREAD"), false, NOW - 300 + 1));
+    }
+
+    @Test
+    void keepForeverDefaultOnlyPurgesRegisteredTypes() {
+        List<ExpiryFilter> filters = NotifyPurger.filters(RetentionPolicy.KEEP_FOREVER,
+                Map.of("SHORT", new RetentionPolicy(10, 0)), NOW);
+
+        assertThat(filters).containsExactly(ExpiryFilter.ofType("SHORT", true, NOW - 10 + 1));
+        assertThat(NotifyPurger.filters(RetentionPolicy.KEEP_FOREVER, Map.of(), NOW)).isEmpty();
+    }
+
+    @Test
+    void filterMatchesStateTypeAndCutoff() {
+        ExpiryFilter byDefault = ExpiryFilter.excluding(Set.of("SHORT"), false, 500);
+
+        assertThat(byDefault.matches(message("a", "OTHER", false, 499))).isTrue();
+        assertThat(byDefault.matches(message("b", "OTHER", false, 500))).isFalse();
+        assertThat(byDefault.matches(message("c", "OTHER", true, 100))).isFalse();
+        assertThat(byDefault.matches(message("d", "SHORT", false, 100))).isFalse();
+        assertThat(ExpiryFilter.ofType("SHORT", false, 500).matches(message("d", "SHORT", false, 100))).isTrue();
+    }
+
+    @Test
+    void purgeDeletesOnlyExpiredRowsAcrossChunks() {
+        InMemoryRepository repository = new InMemoryRepository();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 25; i++) {
+            repository.messages.add(message("read-old-" + i, "OTHER", true, now - 10_000 - i));
+        }
+        repository.messages.add(message("unread-mid", "OTHER", false, now - 10_000));
+        repository.messages.add(message("read-new", "OTHER", true, now - 10));
+        NotifyPurger purger = new NotifyPurger(repository, new RetentionPolicy(1_000, 100_000), 60_000, 10, 0);
+
+        assertThat(purger.purge()).isEqualTo(25);
+        assertThat(repository.messages).extracting(NotifyMessageLog::getId)
+                .containsExactlyInAnyOrder("unread-mid", "read-new");
+        // 每段 10 条，读到不满一段为止；只有已读一趟有结果，未读一趟查询一次
+        assertThat(repository.queries).isEqualTo(4);
+    }
+
+    private static NotifyMessageLog message(String id, String type, boolean viewed, long created) {
+        NotifyMessageLog msg = new NotifyMessageLog(id, type, "u1", null);
+        msg.setViewed(viewed);
+        msg.setCreated(created);
+        return msg;
+    }
+
+    /**
+     * 按过期条件在内存中查询的仓储
+     */
+    private static class InMemoryRepository implements NotifyRepository {
+
+        private final List<NotifyMessageLog> messages = new ArrayList<>();
+        private int queries;
+
+        @Override
+        public boolean supportsExpiredQuery() {
+            return true;
+        }
+
+        @Override
+        public List<NotifyMessageLog> findExpired(ExpiryFilter filter, boolean withData, long afterCreated,
+                                                  String afterId, int limit) {
+            queries++;
+            return messages.stream()
+                    .filter(filter::matches)
+                    .filter(msg -> afterId == null || msg.getCreated() > afterCreated
+                            || (msg.getCreated() == afterCreated && msg.getId().compareTo(afterId) > 0))
+                    .sorted(Comparator.comparingLong(NotifyMessageLog::getCreated).thenComparing(NotifyMessageLog::getId))
+                    .limit(limit)
+                    .toList();
+        }
+
+        @Override
+        public void save(NotifyMessageLog msg) {
+            messages.add(msg);
+        }
+
+        @Override
+        public List<NotifyMessageLog> findByReceiver(String userId, int offset, int limit) {
+            return List.of();
+        }
+
+        @Override
+        public List<NotifyMessageLog> findByReceiverBefore(String userId, long created, int offset, int limit) {
+            return List.of();
+        }
+
+        @Override
+        public long countUnread(String userId) {
+            return 0;
+        }
+
+        @Override
+        public void markAsRead(String userId, List<String> ids) {
+        }
+
+        @Override
+        public void delete(String userId, List<String> ids) {
+            messages.removeIf(msg -> msg.getReceiver().equals(userId) && ids.contains(msg.getId()));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package io.stu.notify.stomp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AckTimingWheelTest {
+
+    private static final long START = 1_000_000L;
+
+    @Test
+    void firesInTheTickContainingTheDeadline() {
+        AckTimingWheel<String> wheel = new AckTimingWheel<>(100, 8, START);
+        wheel.schedule("a", START + 250);
+        List<String> fired = new ArrayList<>();
+
+        // 250ms 向上取整到第 3 个 tick，不早于到期时间触发
+        assertThat(wheel.advance(START + 299, fired::add)).isZero();
+        assertThat(wheel.advance(START + 300, fired::add)).isEqualTo(1);
+        assertThat(fired).containsExactly("a");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void pastDeadlineFiresOnNextTick() {
+        AckTimingWheel<String> wheel = new AckTimingWheel<>(100, 8, START);
+        List<String> fired = new ArrayList<>();
+        wheel.advance(START + 500, fired::add);
+
+        // 已处理过的 tick 不再回看，过期任务放入下一个 tick
+        wheel.schedule("late", START + 100);
+
+        assertThat(wheel.advance(START + 500, fired::add)).isZero();
+        assertThat(wheel.advance(START + 600, fired::add)).isEqualTo(1);
+        assertThat(fired).containsExactly("late");
+    }
+
+    @Test
+    void deadlineBeyondOneRotationWaitsForItsRound() {
+        // 8 个槽位 * 100ms，一圈 800ms；1050ms 与 250ms 落入同一槽位
+        AckTimingWheel<String> wheel = new AckTimingWheel<>(100, 8, START);
+        wheel.schedule("near", START + 250);
+        wheel.schedule("far", START + 1050);
+        List<String> fired = new ArrayList<>();
+
+        wheel.advance(START + 300, fired::add);
+        assertThat(fired).containsExactly("near");
+        assertThat(wheel.size()).isEqualTo(1);
+
+        wheel.advance(START + 1000, fired::add);
+        assertThat(fired).containsExactly("near");
+
+        wheel.advance(START + 1100, fired::add);
+        assertThat(fired).containsExactly("near", "far");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void wheelSizeIsRoundedUpToPowerOfTwo() {
+        // 5 个槽位按 8 个处理，600ms 不应与 100ms 落入同一槽位而提前触发
+        AckTimingWheel<String> wheel = new AckTimingWheel<>(100, 5, START);
+        wheel.schedule("a", START + 600);
+        List<String> fired = new ArrayList<>();
+
+        wheel.advance(START + 500, fired::add);
+        assertThat(fired).isEmpty();
+        wheel.advance(START + 600, fired::add);
+        assertThat(fired).containsExactly("a");
+    }
+
+    @Test
+    void callbackMayReschedule() {
+        AckTimingWheel<String> wheel = new AckTimingWheel<>(100, 8, START);
+        wheel.schedule("a", START + 100);
+        List<String> fired = new ArrayList<>();
+
+        wheel.advance(START + 100, task -> {
+            fired.add(task);
+            if (fired.size() < 3) {
+                wheel.schedule(task, START + 100L * (fired.size() + 1));
+            }
+        });
+        assertThat(fired).containsExactly("a");
+
+        wheel.advance(START + 300, fired::add);
+        assertThat(fired).containsExactly("a", "a");
+    }
+
+    @Test
+    void cancelledTaskDoesNotFire() {
+        AckTimingWheel<String> wheel = new AckTimingWheel<>(100, 8, START);
+        AckTimingWheel.Timeout<String> a = wheel.schedule("a", START + 200);
+        wheel.schedule("b", START + 200);
+
+        assertThat(a.cancel()).isTrue();
+        assertThat(a.isCancelled()).isTrue();
+        assertThat(wheel.size()).isEqualTo(1);
+
+        List<String> fired = new ArrayList<>();
+        assertThat(wheel.advance(START + 200, fired::add)).isEqualTo(1);
+        assertThat(fired).containsExactly("b");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void cancelAfterFireOrTwiceReturnsFalse() {
+        AckTimingWheel<String> wheel = new AckTimingWheel<>(100, 8, START);
+        AckTimingWheel.Timeout<String> fired = wheel.schedule("a", START + 100);
+        AckTimingWheel.Timeout<String> cancelled = wheel.schedule("b", START + 500);
+        wheel.advance(START + 100, task -> {
+        });
+
+        assertThat(fired.cancel()).isFalse();
+        assertThat(fired.isCancelled()).isFalse();
+        assertThat(cancelled.cancel()).isTrue();
+        assertThat(cancelled.cancel()).isFalse();
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void rejectsIllegalArguments() {
+        assertThatThrownBy(() -> new AckTimingWheel<>(0, 8, START)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AckTimingWheel<>(100, 0, START)).isInstanceOf(IllegalArgumentException.class);
+    }
+}